@@ -0,0 +1,65 @@
+package org.threethan.universalreader.lib;
+
+import org.openjdk.jmh.annotations.*;
+import org.threethan.universalreader.TestImage;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of checking whether a copied image changed, as the clipboard monitor does on every poll:
+ * the sampling check it used to use, compared to the exact fingerprint it uses now, and hashing through getRGB.
+ * Each check compares a fresh copy of the image, as the clipboard hands out.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FingerprintBenchmark {
+    @Param({"quick_brown_fox.png", "fruits.png"})
+    public String imageName;
+
+    private BufferedImage previous;
+    private BufferedImage copied;
+    private long previousFingerprint;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        previous = TestImage.get(imageName);
+        copied = TestImage.get(imageName);
+        previousFingerprint = ImageTools.fingerprint(previous);
+    }
+
+    /** The sampling check the clipboard monitor used to use, which may miss small changes */
+    @Benchmark
+    public boolean isIdenticalFast() {
+        return ImageTools.isIdenticalFast(previous, copied);
+    }
+
+    /** Fingerprinting only the new image, since the previous image's fingerprint is kept, as the monitor does */
+    @Benchmark
+    public boolean fingerprint() {
+        return ImageTools.fingerprint(copied) == previousFingerprint;
+    }
+
+    /** Fingerprinting both images */
+    @Benchmark
+    public boolean isIdentical() {
+        return ImageTools.isIdentical(previous, copied);
+    }
+
+    /** Hashing every pixel through getRGB, one row at a time, rather than reading the raster directly */
+    @Benchmark
+    public long getRgbHash() {
+        final int w = copied.getWidth();
+        final int[] row = new int[w];
+        long hash = 0;
+        for (int y = 0; y < copied.getHeight(); y++) {
+            copied.getRGB(0, y, w, 1, row, 0, w);
+            for (int pixel : row) hash = (hash ^ pixel) * 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,60 @@
+package org.threethan.universalreader.ocr;
+
+import javafx.scene.image.Image;
+import org.openjdk.jmh.annotations.*;
+import org.threethan.universalreader.TestImage;
+
+import java.awt.image.BufferedImage;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the latency of the first call of each part of the OCR path in a fresh JVM, which is what the first
+ * image read after launching the reader waits for. Each fork runs each benchmark exactly once,
+ * without warmup, so classes are loaded & code is interpreted as it would be on launch.
+ * Trained data is downloaded during setup if needed, so it isn't measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(5)
+public class ColdStartBenchmark {
+    private Image fxImage;
+    private BufferedImage image;
+    private String language;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        fxImage = ConversionBenchmark.load(TestImage.QUICK_BROWN_FOX_FILE);
+        image = TestImage.get(TestImage.QUICK_BROWN_FOX_FILE);
+        language = new TesseractOcrProcessor().getLanguage(Locale.ENGLISH, OcrProfile.DEFAULT);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        TesseractOcrProcessor.getEnginePool().clear();
+    }
+
+    @Benchmark
+    public void firstEngine() throws Exception {
+        TesseractOcrProcessor.getEnginePool().acquire(OcrProfile.DEFAULT, language).close();
+    }
+
+    @Benchmark
+    public BufferedImage firstConversion() {
+        return ConversionBenchmark.toFrame(fxImage, true);
+    }
+
+    @Benchmark
+    public ImagePreprocessor.Output firstPreprocessing() {
+        return ImagePreprocessor.of(ImagePreprocessor.DEFAULT_STEPS).process(image);
+    }
+
+    /** A full request, including engine creation, as the first read after launch makes it */
+    @Benchmark
+    public OcrProcessor.Result firstRecognition() throws Exception {
+        return new TesseractOcrProcessor().submit(new OcrProcessor.Request(image, Locale.ENGLISH), null).get();
+    }
+}
@@ -0,0 +1,74 @@
+package org.threethan.universalreader.ocr;
+
+import javafx.embed.swing.SwingFXUtils;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelReader;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the steady-state throughput of converting a JavaFX image, as read from a file or the clipboard,
+ * into the image passed to preprocessing: through {@link SwingFXUtils}, as the reader used to,
+ * compared to reading it straight into a packed frame, as it does now.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConversionBenchmark {
+    @Param({"quick_brown_fox.png", "fruits.png"})
+    public String imageName;
+
+    private Image image;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        image = load(imageName);
+    }
+
+    /**
+     * Loads a JavaFX image from the test images
+     * @param imageName File name of the image in test/resources/images
+     */
+    static Image load(String imageName) {
+        return new Image(Objects.requireNonNull(Thread.currentThread().getContextClassLoader()
+                .getResourceAsStream("images/" + imageName)));
+    }
+
+    /**
+     * Reads a JavaFX image into a packed frame, as the reader does
+     * @param gray True to read it as 8-bit gray
+     */
+    static BufferedImage toFrame(Image image, boolean gray) {
+        final PixelReader pixelReader = image.getPixelReader();
+        final int w = (int) image.getWidth();
+        return ImagePreprocessor.toFrame(w, (int) image.getHeight(), gray,
+                (y, row) -> pixelReader.getPixels(0, y, w, 1, PixelFormat.getIntArgbInstance(), row, 0, w));
+    }
+
+    @Benchmark
+    public BufferedImage swingFxUtils() {
+        return SwingFXUtils.fromFXImage(image, null);
+    }
+
+    @Benchmark
+    public BufferedImage swingFxUtilsThenGray() {
+        return ImagePreprocessor.toGray(SwingFXUtils.fromFXImage(image, null));
+    }
+
+    @Benchmark
+    public BufferedImage frame() {
+        return toFrame(image, false);
+    }
+
+    @Benchmark
+    public BufferedImage grayFrame() {
+        return toFrame(image, true);
+    }
+}
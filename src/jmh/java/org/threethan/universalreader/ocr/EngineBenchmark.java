@@ -0,0 +1,65 @@
+package org.threethan.universalreader.ocr;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the steady-state throughput of creating a Tesseract engine & loading its model, compared to borrowing
+ * one which is already loaded from a pool. Trained data is downloaded during setup if needed, so it isn't measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EngineBenchmark {
+    @Param({"ACCURATE", "FAST"})
+    public OcrProfile profile;
+
+    String language;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        language = new TesseractOcrProcessor().getLanguage(Locale.ENGLISH, profile);
+    }
+
+    /** A pool whose idle engines are disposed of before each invocation, so that every borrow creates an engine */
+    @State(Scope.Benchmark)
+    public static class EmptyPool {
+        final TesseractEnginePool pool = new TesseractEnginePool(TesseractOcrProcessor.DATA_PATH);
+
+        @Setup(Level.Invocation)
+        public void disposeIdle() {
+            pool.clear();
+        }
+    }
+
+    /** A pool which keeps an engine loaded */
+    @State(Scope.Benchmark)
+    public static class WarmPool {
+        final TesseractEnginePool pool = new TesseractEnginePool(TesseractOcrProcessor.DATA_PATH);
+
+        @Setup(Level.Trial)
+        public void setUp(EngineBenchmark benchmark) throws Exception {
+            pool.acquire(benchmark.profile, benchmark.language).close();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            pool.clear();
+        }
+    }
+
+    @Benchmark
+    public void create(EmptyPool empty) throws Exception {
+        empty.pool.acquire(profile, language).close();
+    }
+
+    @Benchmark
+    public void reuse(WarmPool warm) throws Exception {
+        warm.pool.acquire(profile, language).close();
+    }
+}
@@ -0,0 +1,51 @@
+package org.threethan.universalreader.ocr;
+
+import org.openjdk.jmh.annotations.*;
+import org.threethan.universalreader.TestImage;
+
+import java.awt.image.BufferedImage;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the steady-state throughput of each preprocessing stage on its own, and of the default steps together.
+ * Stages run on a gray copy of the image, as they do after {@link ImagePreprocessor.Step#GRAYSCALE},
+ * except for the grayscale conversion itself.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PreprocessBenchmark {
+    @Param({"quick_brown_fox.png", "sphinx_of_black.png", "fruits.png"})
+    public String imageName;
+
+    @Param({"GRAYSCALE", "CROP_BORDERS", "NORMALIZE_SCALE", "DESKEW", "BINARIZE"})
+    public ImagePreprocessor.Step step;
+
+    private BufferedImage original;
+    private BufferedImage image;
+    private ImagePreprocessor stage;
+    private ImagePreprocessor defaultSteps;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        original = TestImage.get(imageName);
+        image = step == ImagePreprocessor.Step.GRAYSCALE ? original : ImagePreprocessor.toGray(original);
+        stage = ImagePreprocessor.of(EnumSet.of(step));
+        defaultSteps = ImagePreprocessor.of(ImagePreprocessor.DEFAULT_STEPS);
+    }
+
+    @Benchmark
+    public ImagePreprocessor.Output stage() {
+        return stage.process(image);
+    }
+
+    /** The default steps, from the unconverted image. The same for every step parameter. */
+    @Benchmark
+    public ImagePreprocessor.Output defaultSteps() {
+        return defaultSteps.process(original);
+    }
+}
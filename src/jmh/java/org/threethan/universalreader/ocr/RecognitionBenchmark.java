@@ -0,0 +1,86 @@
+package org.threethan.universalreader.ocr;
+
+import org.openjdk.jmh.annotations.*;
+import org.threethan.universalreader.TestImage;
+
+import java.awt.image.BufferedImage;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the steady-state throughput of recognizing the test images with a loaded engine: a plain doOCR call,
+ * the block by block recognition of a preprocessed image which the reader uses, and a full request to the processor
+ * including scheduling, preprocessing & script detection. The result cache is cleared before each request,
+ * so that every request is recognized.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RecognitionBenchmark {
+    @Param({"quick_brown_fox.png", "sphinx_of_black.png"})
+    public String imageName;
+
+    @Param({"ACCURATE", "FAST"})
+    public OcrProfile profile;
+
+    private BufferedImage image;
+    private BufferedImage prepared;
+    private TesseractOcrProcessor processor;
+
+    /**
+     * An engine held for the whole trial, only by the benchmarks which use it directly, so that requests
+     * submitted to the processor never wait for it, even when the pool only allows one engine
+     */
+    @State(Scope.Benchmark)
+    public static class Engine {
+        private TesseractEnginePool.Lease lease;
+
+        @Setup(Level.Trial)
+        public void setUp(RecognitionBenchmark benchmark) throws Exception {
+            lease = TesseractOcrProcessor.getEnginePool().acquire(benchmark.profile,
+                    benchmark.processor.getLanguage(Locale.ENGLISH, benchmark.profile));
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            lease.close();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        image = TestImage.get(imageName);
+        prepared = ImagePreprocessor.of(ImagePreprocessor.DEFAULT_STEPS).process(image).image();
+        processor = new TesseractOcrProcessor();
+        processor.setIncremental(false);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        TesseractOcrProcessor.getEnginePool().clear();
+    }
+
+    @Setup(Level.Invocation)
+    public void clearCache() {
+        TesseractOcrProcessor.getResultCache().clear();
+    }
+
+    @Benchmark
+    public String doOcr(Engine engine) throws Exception {
+        return engine.lease.engine().doOCR(image);
+    }
+
+    @Benchmark
+    public String recognizeBlocks(Engine engine) throws Exception {
+        return engine.lease.recognizeBlocks(prepared, block -> {}, new WordBoxes.Builder());
+    }
+
+    @Benchmark
+    public OcrProcessor.Result submit() throws Exception {
+        return processor.submit(new OcrProcessor.Request(image, Locale.ENGLISH, ImagePreprocessor.DEFAULT_STEPS,
+                profile), null).get();
+    }
+}
@@ -0,0 +1,57 @@
+package org.threethan.universalreader.ocr;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of recognizing the same text rendered at display scales of 1, 2 and 3,
+ * with and without {@link ImagePreprocessor.Step#NORMALIZE_SCALE}, from preprocessing to the result.
+ * The result cache is cleared before each request, so that every request is recognized.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ScaleBenchmark {
+    @Param({"1", "2", "3"})
+    public int scale;
+
+    @Param({"false", "true"})
+    public boolean normalized;
+
+    private BufferedImage image;
+    private Set<ImagePreprocessor.Step> steps;
+    private TesseractOcrProcessor processor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        image = ImagePreprocessorTest.scaledText(scale);
+        steps = EnumSet.of(ImagePreprocessor.Step.GRAYSCALE, ImagePreprocessor.Step.CROP_BORDERS);
+        if (normalized) steps.add(ImagePreprocessor.Step.NORMALIZE_SCALE);
+        processor = new TesseractOcrProcessor();
+        processor.setIncremental(false);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        TesseractOcrProcessor.getEnginePool().clear();
+    }
+
+    @Setup(Level.Invocation)
+    public void clearCache() {
+        TesseractOcrProcessor.getResultCache().clear();
+    }
+
+    @Benchmark
+    public OcrProcessor.Result submit() throws Exception {
+        return processor.submit(new OcrProcessor.Request(image, Locale.ENGLISH, steps, OcrProfile.DEFAULT), null)
+                .get();
+    }
+}
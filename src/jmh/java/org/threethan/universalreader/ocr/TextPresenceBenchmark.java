@@ -0,0 +1,38 @@
+package org.threethan.universalreader.ocr;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of checking whether a full 1080p screenshot may contain text, which is paid for every image
+ * before it's recognized, so should stay within single-digit milliseconds.
+ * A screenshot of a photo is checked in full before being skipped, while one of text may stop early.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextPresenceBenchmark {
+    @Param({"photo", "text"})
+    public String content;
+
+    private final TextPresenceDetector detector = new TextPresenceDetector();
+    private BufferedImage screen;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        screen = content.equals("photo")
+                ? TextPresenceDetectorTest.photoScreenshot()
+                : TextPresenceDetectorTest.text(1920, 1080, BufferedImage.TYPE_3BYTE_BGR, Color.WHITE, Color.BLACK, 16);
+    }
+
+    @Benchmark
+    public boolean mayContainText() {
+        return detector.mayContainText(screen);
+    }
+}
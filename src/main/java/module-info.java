@@ -3,15 +3,20 @@ module org.threethan.universalreader {
     requires javafx.fxml;
     requires java.datatransfer;
     requires java.desktop;
+    requires java.net.http;
+    requires java.management;
     requires javafx.swing;
     requires jAdapterForNativeTTS;
     requires com.jthemedetector;
     requires com.pixelduke.fxthemes;
     requires tess4j;
+    requires com.sun.jna;
     requires org.slf4j;
 
     opens org.threethan.universalreader.reader to javafx.fxml;
     exports org.threethan.universalreader.reader;
     exports org.threethan.universalreader;
+    // Lets JMX read the OCR metrics MXBean
+    exports org.threethan.universalreader.ocr to java.management;
     opens org.threethan.universalreader to javafx.fxml;
 }
\ No newline at end of file
@@ -0,0 +1,209 @@
+package org.threethan.universalreader;
+
+import org.threethan.universalreader.helper.SpeechHelper;
+import org.threethan.universalreader.ocr.ImagePreprocessor;
+import org.threethan.universalreader.ocr.OcrProcessor;
+import org.threethan.universalreader.ocr.OcrProfile;
+import org.threethan.universalreader.ocr.OcrServer;
+import org.threethan.universalreader.ocr.RemoteOcrProcessor;
+import org.threethan.universalreader.ocr.TesseractOcrProcessor;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A command-line entry point which recognizes image files (or an image from stdin) and prints their text,
+ * optionally speaking it. It never touches JavaFX, so it starts quickly and can be used in scripts and pipelines.
+ * Exits as soon as it's done.
+ */
+public class HeadlessReader {
+    /** Argument which {@link UniversalReaderDesktop} passes on to this class instead of opening a window */
+    public static final String HEADLESS_ARG = "--headless";
+    private static final String USAGE = """
+            Usage: [--headless] [options] [files...]
+            Recognizes the text of each image file, or of an image from stdin if no files (or "-") are given,
+            and prints it to stdout.
+
+            Options:
+              --lang <tag>        Language of the text as a BCP 47 tag, such as "en" or "de" (default: system)
+              --profile <name>    Accurate, Balanced or Fast (default: Accurate)
+              --no-preprocessing  Don't clean up images before recognition
+              --speak             Speak the text once recognized
+              --voice <name>      Voice to speak with (default: first available)
+              --stats             Print startup time and memory use to stderr
+              --help              Print this message""";
+
+    /**
+     * Options from the command line
+     * @param files Image files, where "-" is stdin
+     * @param locale Locale of the text
+     * @param profile OCR profile
+     * @param preprocess Whether to run the default preprocessing steps
+     * @param speak Whether to speak the text
+     * @param voice Name of the voice to speak with, or null for the default
+     * @param stats Whether to print startup time and memory use
+     */
+    record Options(List<String> files, Locale locale, OcrProfile profile, boolean preprocess,
+                   boolean speak, String voice, boolean stats) {
+        /**
+         * Parses command line arguments
+         * @param args Arguments, optionally starting with {@link #HEADLESS_ARG}
+         * @return Parsed options, or null if help was requested
+         * @throws IllegalArgumentException If an argument isn't valid
+         */
+        static Options parse(String[] args) {
+            final List<String> files = new ArrayList<>();
+            Locale locale = Locale.getDefault();
+            OcrProfile profile = OcrProfile.DEFAULT;
+            boolean preprocess = true, speak = false, stats = false;
+            String voice = null;
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case HEADLESS_ARG -> {}
+                    case "--help", "-h" -> { return null; }
+                    case "--lang" -> locale = Locale.forLanguageTag(value(args, ++i));
+                    case "--profile" -> profile = parseProfile(value(args, ++i));
+                    case "--no-preprocessing" -> preprocess = false;
+                    case "--speak" -> speak = true;
+                    case "--voice" -> voice = value(args, ++i);
+                    case "--stats" -> stats = true;
+                    default -> {
+                        if (args[i].startsWith("--")) throw new IllegalArgumentException("Unknown option " + args[i]);
+                        files.add(args[i]);
+                    }
+                }
+            }
+            if (files.isEmpty()) files.add("-");
+            return new Options(files, locale, profile, preprocess, speak, voice, stats);
+        }
+
+        private static String value(String[] args, int i) {
+            if (i >= args.length) throw new IllegalArgumentException(args[i - 1] + " needs a value");
+            return args[i];
+        }
+
+        private static OcrProfile parseProfile(String name) {
+            for (OcrProfile profile : OcrProfile.values())
+                if (profile.name().equalsIgnoreCase(name)) return profile;
+            throw new IllegalArgumentException("Unknown profile " + name);
+        }
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args, System.in, System.out, System.err));
+    }
+
+    /**
+     * Runs the command line, without exiting
+     * @return Exit code; 0 on success, 1 if any image failed, 2 if the arguments were invalid
+     */
+    static int run(String[] args, InputStream in, PrintStream out, PrintStream err) {
+        final Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.println(USAGE);
+            return 2;
+        }
+        if (options == null) {
+            out.println(USAGE);
+            return 0;
+        }
+        final Instant readyTime = Instant.now();
+
+        // A running OCR server already has its models loaded
+        final OcrProcessor processor =
+                new RemoteOcrProcessor(OcrServer.DEFAULT_ADDRESS, TesseractOcrProcessor::new);
+        final StringBuilder allText = new StringBuilder();
+        int exitCode = 0;
+        for (String file : options.files()) {
+            try {
+                final BufferedImage image = file.equals("-") ? ImageIO.read(in) : ImageIO.read(Path.of(file).toFile());
+                if (image == null) throw new IOException("Not a readable image");
+                final String text = recognize(processor, image, options);
+                if (options.files().size() > 1) out.println("==> " + file + " <==");
+                out.println(text);
+                out.flush();
+                if (!allText.isEmpty()) allText.append("\n\n");
+                allText.append(text);
+            } catch (IOException e) {
+                err.println(file + ": " + e.getMessage());
+                exitCode = 1;
+            } catch (ExecutionException e) {
+                err.println(file + ": " + e.getCause().getMessage());
+                exitCode = 1;
+            } catch (InterruptedException e) {
+                return 1;
+            }
+        }
+        final Instant recognizedTime = Instant.now();
+
+        if (options.speak() && !allText.isEmpty()) {
+            try {
+                SpeechHelper.speakAndWait(allText.toString(), options.voice(), SpeechHelper.VoiceSpeed.DEFAULT);
+            } catch (IOException e) {
+                err.println("Failed to speak: " + e.getMessage());
+                exitCode = 1;
+            } catch (InterruptedException e) {
+                return 1;
+            }
+        }
+        if (options.stats()) printStats(err, readyTime, recognizedTime);
+        return exitCode;
+    }
+
+    /** Recognizes an image, waiting for its result */
+    private static String recognize(OcrProcessor processor, BufferedImage image, Options options)
+            throws ExecutionException, InterruptedException {
+        return processor.submit(new OcrProcessor.Request(image, options.locale(),
+                options.preprocess() ? ImagePreprocessor.DEFAULT_STEPS : Set.of(), options.profile()), null)
+                .get().ocrText();
+    }
+
+    /**
+     * Prints how long the JVM took to start and to recognize the images, and how much memory is resident
+     * @param readyTime When the arguments had been parsed, and recognition was about to start
+     * @param recognizedTime When all images had been recognized
+     */
+    private static void printStats(PrintStream err, Instant readyTime, Instant recognizedTime) {
+        final Instant startTime = ProcessHandle.current().info().startInstant().orElse(readyTime);
+        final Runtime runtime = Runtime.getRuntime();
+        final long heapUsed = runtime.totalMemory() - runtime.freeMemory();
+        final long resident = residentMemory();
+        err.printf("Startup: %dms, recognition: %dms, resident memory: %s, heap used: %dMB%n",
+                Duration.between(startTime, readyTime).toMillis(),
+                Duration.between(readyTime, recognizedTime).toMillis(),
+                resident < 0 ? "unknown" : (resident >> 20) + "MB", heapUsed >> 20);
+    }
+
+    /**
+     * Gets the resident set size of this process, where the platform makes it available
+     * @return Resident memory in bytes, or -1 if unknown
+     */
+    static long residentMemory() {
+        final Path status = Path.of("/proc/self/status");
+        if (!Files.isReadable(status)) return -1;
+        try {
+            for (String line : Files.readAllLines(status, StandardCharsets.UTF_8)) {
+                if (!line.startsWith("VmRSS:")) continue;
+                final String[] parts = line.substring("VmRSS:".length()).trim().split("\\s+");
+                return Long.parseLong(parts[0]) * 1024;
+            }
+        } catch (IOException | NumberFormatException ignored) {}
+        return -1;
+    }
+}
@@ -1,10 +1,25 @@
 package org.threethan.universalreader;
 
+import org.threethan.universalreader.ocr.OcrServer;
 import org.threethan.universalreader.reader.Application;
 
-/** Simply calls Application.main() as a workaround for build issues on some platforms */
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Simply calls Application.main() as a workaround for build issues on some platforms,
+ * or {@link HeadlessReader#main(String[])} if the first argument is {@value HeadlessReader#HEADLESS_ARG},
+ * or {@link OcrServer#main(String[])} if it's {@value #SERVER_ARG}
+ */
 public class UniversalReaderDesktop {
-    public static void main(String[] args) {
-        Application.main(args);
+    /** Argument which runs a shared OCR server instead of opening a window */
+    public static final String SERVER_ARG = "--ocr-server";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals(HeadlessReader.HEADLESS_ARG))
+            HeadlessReader.main(Arrays.copyOfRange(args, 1, args.length));
+        else if (args.length > 0 && args[0].equals(SERVER_ARG))
+            OcrServer.main(Arrays.copyOfRange(args, 1, args.length));
+        else Application.main(args);
     }
 }
@@ -16,8 +16,6 @@ import org.threethan.universalreader.reader.Controller;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
 
 /**
@@ -42,11 +40,11 @@ public abstract class SpeechHelper {
     public static boolean collapseEntries = false;
 
     private static final List<Voice> FALLBACK = new ArrayList<>();
-    private static Runnable finishPartsRunnable = null;
+    /** The text currently being spoken in parts, if any */
+    private static PartsSession partsSession = null;
 
-    private static final BooleanProperty speakingProperty = new SimpleBooleanProperty();
     public static ReadOnlyBooleanProperty speakingProperty() {
-        return speakingProperty;
+        return Fx.speakingProperty();
     }
 
     static {
@@ -97,44 +95,101 @@ public abstract class SpeechHelper {
      * @param voiceSpeed VoiceSpeed object for the speed of the voice
      * @param onPart Run for each part, with the start and end indices of the fragment
      */
-    public static synchronized void speak(String string, String name, VoiceSpeed voiceSpeed, BiConsumer<Integer, Integer> onPart) {
+    public static void speak(String string, String name, VoiceSpeed voiceSpeed, BiConsumer<Integer, Integer> onPart) {
+        speak(string, name, voiceSpeed, onPart, false);
+    }
+
+    /**
+     * Speak a string out loud using with a particular voice and speed, split into parts
+     * @param string String to speak aloud
+     * @param name Name of the voice to use
+     * @param voiceSpeed VoiceSpeed object for the speed of the voice
+     * @param onPart Run for each part, with the start and end indices of the fragment
+     * @param expectMore If true, more text may be added with {@link #append(String)} until {@link #endAppending()}
+     *                   is called. Speech waits for more text rather than finishing if it runs out.
+     */
+    public static synchronized void speak(String string, String name, VoiceSpeed voiceSpeed,
+                                          BiConsumer<Integer, Integer> onPart, boolean expectMore) {
         if (checkUnsupported()) return;
         stop();
 
         speechEngine.setRate(voiceSpeed.speed());
         setVoice(name);
 
-        finishPartsRunnable = null;
-
-        String[] parts = toParts(string);
+        final PartsSession session = new PartsSession(voiceSpeed, onPart, expectMore);
+        session.parts.addAll(Arrays.asList(toParts(string)));
+        partsSession = session;
+        speakNextPart(session);
+    }
 
-        final AtomicReference<Runnable> speakNextPart = new AtomicReference<>();
-        finishPartsRunnable = () -> {
-            speakNextPart.set(() -> {});
-            speakingProperty.set(false);
-        };
+    /**
+     * Adds text to be spoken after the text currently being spoken in parts, without interrupting it
+     * @param string String to speak aloud once the current text has been spoken
+     * @return True if the text was added, false if speech which expects more text isn't in progress
+     *         (such as if it was stopped)
+     */
+    public static synchronized boolean append(String string) {
+        final PartsSession session = partsSession;
+        if (session == null || !session.open) return false;
+        session.parts.addAll(Arrays.asList(toParts(string)));
+        if (session.waiting) {
+            session.waiting = false;
+            speakNextPart(session);
+        }
+        return true;
+    }
 
-        AtomicInteger partIndex = new AtomicInteger(0);
-        AtomicInteger charIndex = new AtomicInteger(0);
+    /** Marks that no more text will be appended, so speech in parts finishes once it runs out */
+    public static synchronized void endAppending() {
+        final PartsSession session = partsSession;
+        if (session == null || !session.open) return;
+        session.open = false;
+        if (session.waiting) speakNextPart(session);
+    }
 
-        speakNextPart.set(() -> {
-            if (partIndex.get() >= parts.length) {
-                finishPartsRunnable.run();
+    /** Speaks the next part of a session, or finishes it if there are none left */
+    private static synchronized void speakNextPart(PartsSession session) {
+        if (session != partsSession) return; // Stopped or replaced
+        if (session.partIndex >= session.parts.size()) {
+            if (session.open) {
+                // Keep speaking state while waiting for more text
+                session.waiting = true;
+                Fx.setSpeaking(true);
             } else {
-                int prevCharIndex = charIndex.get();
-                String part = parts[partIndex.get()];
-                charIndex.getAndAdd(part.length());
-                Platform.runLater(() -> onPart.accept(prevCharIndex, charIndex.get()));
-                if (part.isBlank()) Platform.runLater(speakNextPart.get());
-                else {
-                    if (voiceSpeed.noPause()) part = part.replaceAll(LINE_MID_PAUSE_REGEX, ", ");
-                    speakInternal(part.replaceAll(LINE_END_PAUSE_REGEX, ""), () -> speakNextPart.get().run());
-                }
+                partsSession = null;
+                Fx.setSpeaking(false);
             }
-            partIndex.getAndAdd(1);
-        });
+            return;
+        }
+        final int prevCharIndex = session.charIndex;
+        String part = session.parts.get(session.partIndex++);
+        session.charIndex += part.length();
+        final int charIndex = session.charIndex;
+        Platform.runLater(() -> session.onPart.accept(prevCharIndex, charIndex));
+        if (part.isBlank()) Platform.runLater(() -> speakNextPart(session));
+        else {
+            if (session.voiceSpeed.noPause()) part = part.replaceAll(LINE_MID_PAUSE_REGEX, ", ");
+            speakInternal(part.replaceAll(LINE_END_PAUSE_REGEX, ""), () -> speakNextPart(session));
+        }
+    }
 
-        speakNextPart.get().run();
+    /** Text being spoken in parts, and how far through it speech is */
+    private static class PartsSession {
+        final List<String> parts = new ArrayList<>();
+        final VoiceSpeed voiceSpeed;
+        final BiConsumer<Integer, Integer> onPart;
+        /** True while more text may be appended */
+        boolean open;
+        /** True if all parts have been spoken, but more may be appended */
+        boolean waiting = false;
+        int partIndex = 0;
+        int charIndex = 0;
+
+        PartsSession(VoiceSpeed voiceSpeed, BiConsumer<Integer, Integer> onPart, boolean open) {
+            this.voiceSpeed = voiceSpeed;
+            this.onPart = onPart;
+            this.open = open;
+        }
     }
 
     /**
@@ -149,7 +204,24 @@ public abstract class SpeechHelper {
         speechEngine.setRate(voiceSpeed.speed());
         setVoice(name);
         if (voiceSpeed.noPause()) string = string.replaceAll(LINE_MID_PAUSE_REGEX,", ");
-        speakInternal(string, () -> speakingProperty.set(false));
+        speakInternal(string, () -> Fx.setSpeaking(false));
+    }
+
+    /**
+     * Speak a string out loud using with a particular voice and speed, waiting until it's done.
+     * Doesn't use JavaFX in any way, so it may be used without a window.
+     * @param string String to speak aloud
+     * @param name Name of the voice to use, or null for the default voice
+     * @param voiceSpeed VoiceSpeed object for the speed of the voice
+     * @throws IOException If text-to-speech isn't available or fails
+     */
+    public static void speakAndWait(String string, String name, VoiceSpeed voiceSpeed)
+            throws IOException, InterruptedException {
+        if (speechEngine == null) throw new IOException("Text-to-speech could not start");
+        speechEngine.setRate(voiceSpeed.speed());
+        setVoice(name);
+        if (voiceSpeed.noPause()) string = string.replaceAll(LINE_MID_PAUSE_REGEX,", ");
+        speechEngine.say(string.replaceAll("\\$", " dollars ").replaceAll(QUOTES_REGEX, "\"")).waitFor();
     }
 
     /**
@@ -159,7 +231,7 @@ public abstract class SpeechHelper {
      */
     private static void speakInternal(String string, Runnable then) {
         try {
-            speakingProperty.set(true);
+            Fx.setSpeaking(true);
             Process process = speechEngine.say(string.replaceAll("\\$", " dollars ")
                     .replaceAll(QUOTES_REGEX, "\""));
             if (then != null) process.onExit().thenRun(() -> Platform.runLater(then));
@@ -199,26 +271,46 @@ public abstract class SpeechHelper {
     public static synchronized void stop() {
         if (checkUnsupported()) return;
         speechEngine.stopTalking();
-        if (finishPartsRunnable != null) finishPartsRunnable.run();
-        speakingProperty.set(false);
+        partsSession = null;
+        Fx.setSpeaking(false);
     }
 
     /** Warn the user, including with a popup */
     private static void alert(String string) {
-        Alert alert = new Alert(Alert.AlertType.ERROR);
-        alert.setTitle("Text-to-Speech Error");
-        alert.setHeaderText("Critical Error");
-        alert.setContentText(string);
-
-        Scene scene = alert.getDialogPane().getScene();
-        StyleHelper styleHelper = new StyleHelper(scene.getWindow());
-        styleHelper.setStyles(scene);
-        styleHelper.setBackgrounds(scene);
-
-        if (Controller.getMostRecentController() != null)
-            alert.initOwner(Controller.getMostRecentController().getStage());
-        alert.initModality(Modality.WINDOW_MODAL);
-        alert.show();
+        Fx.alert(string);
+    }
+
+    /**
+     * Parts of the helper which use JavaFX types. These are kept apart so that they're only loaded once used,
+     * which lets {@link #speakAndWait(String, String, VoiceSpeed)} run without loading JavaFX at all.
+     */
+    private static class Fx {
+        private static final BooleanProperty speakingProperty = new SimpleBooleanProperty();
+
+        static ReadOnlyBooleanProperty speakingProperty() {
+            return speakingProperty;
+        }
+
+        static void setSpeaking(boolean speaking) {
+            speakingProperty.set(speaking);
+        }
+
+        static void alert(String string) {
+            Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.setTitle("Text-to-Speech Error");
+            alert.setHeaderText("Critical Error");
+            alert.setContentText(string);
+
+            Scene scene = alert.getDialogPane().getScene();
+            StyleHelper styleHelper = new StyleHelper(scene.getWindow());
+            styleHelper.setStyles(scene);
+            styleHelper.setBackgrounds(scene);
+
+            if (Controller.getMostRecentController() != null)
+                alert.initOwner(Controller.getMostRecentController().getStage());
+            alert.initModality(Modality.WINDOW_MODAL);
+            alert.show();
+        }
     }
 
     /** Get the list of all available voices */
@@ -8,27 +8,49 @@ import java.awt.datatransfer.DataFlavor;
 import java.awt.datatransfer.UnsupportedFlavorException;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * A thread which regularly polls the system clipboard for images and text.
  * Note: Despite what people on stack say, flavorListener does not work consistently for this!
+ * <p/>
+ * Polling follows a {@link PollingSchedule}: it's fast right after a change, and backs off to a multi-second interval
+ * while nothing changes, so an idle app rarely wakes up to decode the clipboard. Call {@link #wake()} when the user
+ * does something which may be followed by a copy (such as focusing a window) to return to fast polling.
  *
  * @author Ethan Medeiros
  * */
 public class ClipboardMonitorThread extends Thread {
-    /** How frequently to check the clipboard, in ms */
-    private static final long POLLING_INTERVAL = 250;
     private final Clipboard systemClipboard;
+    /** The previous copied text, for comparing changes against */
     private String prevText = null;
 
     /** Runnable action on updates */
     private final List<Runnable> updateActions = new ArrayList<>();
     /** The previous copied image, for comparing changes against */
     private BufferedImage prevCopiedImage = null;
+    /** Fingerprint of the previous copied image, or null until an image of the same size needs comparing */
+    private Long prevImageFingerprint = null;
+
+    /** Decides how long to wait between polls; only used by this thread */
+    private final PollingSchedule schedule = new PollingSchedule();
+    /** Waited on between polls, and notified to end the wait early */
+    private final Object lock = new Object();
+    /** Set by {@link #wake()} until this thread returns to fast polling */
+    private boolean wakeRequested = false;
+
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private final LongAdder polls = new LongAdder();
+    private final LongAdder idlePolls = new LongAdder();
+    private final LongAdder pollCpuNanos = new LongAdder();
+    private volatile long startTime;
 
     /**
      * Creates a new thread which monitors the clipboards
@@ -50,44 +72,155 @@ public class ClipboardMonitorThread extends Thread {
     }
 
     /** Whether the thread is active. Set to false when it may be stopped. */
-    private boolean active = true;
+    private volatile boolean active = true;
 
     /** Runs the thread and starts monitoring the clipboard; continues until done() is called */
     @Override
     public void run() {
+        startTime = System.nanoTime();
         while (active) {
+            final long pollTime = System.nanoTime();
+            final long cpuTime = getCpuTime();
+            long delay;
             try {
-                BufferedImage copiedImage =
-                        ImageTools.toBuffered((Image) systemClipboard.getData(DataFlavor.imageFlavor));
-                if (!ImageTools.isIdenticalFast(copiedImage, prevCopiedImage)) {
-                    prevCopiedImage = copiedImage;
-                    updateActions.forEach(Platform::runLater);
-                    prevText = null;
-                }
-            } catch (UnsupportedFlavorException | IOException e) {
-                String copiedText = null;
-                try {
-                    copiedText = (String) systemClipboard.getData(DataFlavor.stringFlavor);
-                } catch (UnsupportedFlavorException | IOException ignored) {}
-
-                if (!Objects.equals(copiedText, prevText)) {
+                if (poll()) {
                     updateActions.forEach(Platform::runLater);
-                    prevText = copiedText;
+                    delay = schedule.changed();
+                } else {
+                    if (schedule.isIdle()) idlePolls.increment();
+                    delay = schedule.unchanged();
                 }
-            } catch (IllegalStateException ignored) {
-                // Happens if we poll the clipboard too fast
+            } catch (IllegalStateException e) {
+                // Happens if we poll the clipboard too fast, or while another app holds it
+                delay = schedule.busy();
             }
+            polls.increment();
+            if (cpuTime >= 0) pollCpuNanos.add(getCpuTime() - cpuTime);
             try {
-                //noinspection BusyWait
-                Thread.sleep(POLLING_INTERVAL);
+                waitForNextPoll(pollTime, delay);
             } catch (InterruptedException e) {
                 throw new RuntimeException(e);
             }
         }
     }
 
+    /**
+     * Reads the clipboard once
+     * @return True if its image or text changed since the previous poll
+     * @throws IllegalStateException If the clipboard is currently unavailable
+     */
+    private boolean poll() {
+        try {
+            BufferedImage copiedImage =
+                    ImageTools.toBuffered((Image) systemClipboard.getData(DataFlavor.imageFlavor));
+            if (isNewImage(copiedImage)) {
+                prevText = null;
+                return true;
+            }
+        } catch (UnsupportedFlavorException | IOException e) {
+            String copiedText = null;
+            try {
+                copiedText = (String) systemClipboard.getData(DataFlavor.stringFlavor);
+            } catch (UnsupportedFlavorException | IOException ignored) {}
+
+            if (!Objects.equals(copiedText, prevText)) {
+                prevText = copiedText;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether a copied image differs from the previous one, and remembers it if so.
+     * Images of another size or type are new without being hashed.
+     * @param copiedImage Image currently on the clipboard
+     * @return True if its content changed
+     */
+    private boolean isNewImage(BufferedImage copiedImage) {
+        final BufferedImage prev = prevCopiedImage;
+        if (prev == null || prev.getWidth() != copiedImage.getWidth() || prev.getHeight() != copiedImage.getHeight()
+                || prev.getType() != copiedImage.getType()) {
+            prevCopiedImage = copiedImage;
+            prevImageFingerprint = null;
+            return true;
+        }
+        if (prevImageFingerprint == null) prevImageFingerprint = ImageTools.fingerprint(prev);
+        final long fingerprint = ImageTools.fingerprint(copiedImage);
+        // The newest image is kept either way, so that the old one can be collected
+        prevCopiedImage = copiedImage;
+        if (fingerprint == prevImageFingerprint) return false;
+        prevImageFingerprint = fingerprint;
+        return true;
+    }
+
+    /**
+     * Waits until the next poll is due. If woken in the meantime, polling returns to the fast interval,
+     * and the wait ends early, though never sooner than the fast interval after the previous poll.
+     * @param pollTime Value of {@link System#nanoTime()} when the previous poll started
+     * @param delay Delay after the previous poll, in ms
+     */
+    private void waitForNextPoll(long pollTime, long delay) throws InterruptedException {
+        long deadline = pollTime + TimeUnit.MILLISECONDS.toNanos(delay);
+        synchronized (lock) {
+            while (active) {
+                if (wakeRequested) {
+                    wakeRequested = false;
+                    schedule.reset();
+                    deadline = Math.min(deadline,
+                            pollTime + TimeUnit.MILLISECONDS.toNanos(PollingSchedule.MIN_INTERVAL));
+                }
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) return;
+                lock.wait(Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining)));
+            }
+        }
+    }
+
+    /**
+     * Returns to fast polling, such as when the user focused a window or did something else which may be followed
+     * by a copy. Cheap enough to call on every input event. May be called from any thread.
+     */
+    public void wake() {
+        synchronized (lock) {
+            wakeRequested = true;
+            lock.notifyAll();
+        }
+    }
+
+    /** Gets the CPU time of the current thread, in ns, or -1 if it can't be measured */
+    private long getCpuTime() {
+        return threadBean.isCurrentThreadCpuTimeSupported() ? threadBean.getCurrentThreadCpuTime() : -1;
+    }
+
+    /** Gets the number of times the clipboard has been polled */
+    public long getPollCount() {
+        return polls.sum();
+    }
+
+    /** Gets the number of polls made after polling had backed off, which found nothing new */
+    public long getIdlePollCount() {
+        return idlePolls.sum();
+    }
+
+    /** Gets the average number of idle polls per minute since the thread started */
+    public double getIdleWakeupsPerMinute() {
+        final long startTime = this.startTime;
+        if (startTime == 0) return 0;
+        final double minutes = (System.nanoTime() - startTime) / (double) TimeUnit.MINUTES.toNanos(1);
+        return minutes > 0 ? idlePolls.sum() / minutes : 0;
+    }
+
+    /** Gets the total CPU time spent polling, in ns, or 0 if the JVM can't measure thread CPU time */
+    public long getPollCpuNanos() {
+        return pollCpuNanos.sum();
+    }
+
     /** Ends the thread; a safer alternative to thread.stop() */
     public void done() {
         active = false;
+        synchronized (lock) {
+            lock.notifyAll();
+        }
     }
 }
@@ -2,9 +2,25 @@ package org.threethan.universalreader.lib;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
 
 /**
  * Helper class for quickly comparing images
+ * <p/>
+ * Fingerprints are 64-bit non-cryptographic hashes of an image's raster data, which identify its content
+ * exactly for change detection & cache keys (barring a 1 in 2^64 collision). Image data is read straight from
+ * the raster's {@link DataBuffer} in four independent lanes, rather than pixel by pixel through
+ * {@link BufferedImage#getRGB}, so hashing is limited by memory bandwidth rather than color conversion.
  * @author Ethan Medeiros
  * */
 public abstract class ImageTools {
@@ -54,4 +70,155 @@ public abstract class ImageTools {
         }
         return true;
     }
-}
\ No newline at end of file
+
+    private static final long PRIME_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME_3 = 0x165667B19E3779F9L;
+    private static final long PRIME_4 = 0x85EBCA77C2B2AE63L;
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * Exactly checks if two awt BufferedImages are identical, comparing their dimensions before their fingerprints
+     * @param a First image
+     * @param b Second image
+     * @return True if images have the same type, size & pixels
+     */
+    public static boolean isIdentical(BufferedImage a, BufferedImage b) {
+        if (a == null || b == null) return false;
+        if (a == b) return true;
+        // If dimensions don't match, images are necessarily different
+        if (a.getWidth() != b.getWidth() || a.getHeight() != b.getHeight() || a.getType() != b.getType()) return false;
+        return fingerprint(a) == fingerprint(b);
+    }
+
+    /**
+     * Hashes the type, size & pixels of an image. Images with the same pixels in a different type get a different
+     * fingerprint, so images should be converted to one type before their fingerprints are compared.
+     * Reading the raster's data directly may stop Java2D from accelerating later drawing of the image.
+     * @param image Image to hash
+     * @return 64-bit hash of the image's content
+     */
+    public static long fingerprint(BufferedImage image) {
+        final int w = image.getWidth();
+        final int h = image.getHeight();
+        long hash = mix(mix(PRIME_4, image.getType()), ((long) w << 32) | h);
+        final Raster raster = image.getRaster();
+        final DataBuffer buffer = raster.getDataBuffer();
+        final SampleModel model = raster.getSampleModel();
+        // Rows of packed & interleaved rasters each lie in one range of a single bank, which is hashed directly
+        final int pixelStride;
+        final int scanlineStride;
+        final int bandOffset;
+        if (buffer.getNumBanks() != 1 || !(buffer instanceof DataBufferInt || buffer instanceof DataBufferByte
+                || buffer instanceof DataBufferUShort)) {
+            return fingerprintRgb(image, hash);
+        } else if (model instanceof SinglePixelPackedSampleModel packed) {
+            pixelStride = 1;
+            scanlineStride = packed.getScanlineStride();
+            bandOffset = 0;
+        } else if (model instanceof ComponentSampleModel component && component.getNumBands() > 0) {
+            int minBandOffset = Integer.MAX_VALUE;
+            for (int offset : component.getBandOffsets()) minBandOffset = Math.min(minBandOffset, offset);
+            pixelStride = component.getPixelStride();
+            scanlineStride = component.getScanlineStride();
+            bandOffset = minBandOffset;
+        } else {
+            return fingerprintRgb(image, hash);
+        }
+        final int rowLength = w * pixelStride;
+        final int start = buffer.getOffset() + bandOffset - raster.getSampleModelTranslateY() * scanlineStride
+                - raster.getSampleModelTranslateX() * pixelStride;
+        for (int y = 0; y < h; y++) {
+            final int from = start + y * scanlineStride;
+            if (buffer instanceof DataBufferInt ints) hash = mix(hash, hash(ints.getData(), from, rowLength));
+            else if (buffer instanceof DataBufferByte bytes) hash = mix(hash, hash(bytes.getData(), from, rowLength));
+            else hash = mix(hash, hash(((DataBufferUShort) buffer).getData(), from, rowLength));
+        }
+        return avalanche(hash);
+    }
+
+    /** Hashes the pixels of images whose raster layout isn't read directly, such as multi-bank or 1-bit images */
+    private static long fingerprintRgb(BufferedImage image, long hash) {
+        final int w = image.getWidth();
+        final int[] row = new int[w];
+        for (int y = 0; y < image.getHeight(); y++) {
+            image.getRGB(0, y, w, 1, row, 0, w);
+            hash = mix(hash, hash(row, 0, w));
+        }
+        return avalanche(hash);
+    }
+
+    /** Hashes a range of ints, two to a lane at a time */
+    private static long hash(int[] data, int from, int length) {
+        long v1 = PRIME_1 + PRIME_2, v2 = PRIME_2, v3 = 0, v4 = -PRIME_1;
+        int i = from;
+        final int end = from + length;
+        for (; i + 8 <= end; i += 8) {
+            v1 = round(v1, (data[i] & 0xFFFFFFFFL) | ((long) data[i + 1] << 32));
+            v2 = round(v2, (data[i + 2] & 0xFFFFFFFFL) | ((long) data[i + 3] << 32));
+            v3 = round(v3, (data[i + 4] & 0xFFFFFFFFL) | ((long) data[i + 5] << 32));
+            v4 = round(v4, (data[i + 6] & 0xFFFFFFFFL) | ((long) data[i + 7] << 32));
+        }
+        for (; i < end; i++) v1 = round(v1, data[i]);
+        return merge(v1, v2, v3, v4, length);
+    }
+
+    /** Hashes a range of bytes, eight to a lane at a time */
+    private static long hash(byte[] data, int from, int length) {
+        long v1 = PRIME_1 + PRIME_2, v2 = PRIME_2, v3 = 0, v4 = -PRIME_1;
+        int i = from;
+        final int end = from + length;
+        for (; i + 32 <= end; i += 32) {
+            v1 = round(v1, (long) LONGS.get(data, i));
+            v2 = round(v2, (long) LONGS.get(data, i + 8));
+            v3 = round(v3, (long) LONGS.get(data, i + 16));
+            v4 = round(v4, (long) LONGS.get(data, i + 24));
+        }
+        for (; i < end; i++) v1 = round(v1, data[i]);
+        return merge(v1, v2, v3, v4, length);
+    }
+
+    /** Hashes a range of shorts, one to a lane at a time */
+    private static long hash(short[] data, int from, int length) {
+        long v1 = PRIME_1 + PRIME_2, v2 = PRIME_2, v3 = 0, v4 = -PRIME_1;
+        int i = from;
+        final int end = from + length;
+        for (; i + 4 <= end; i += 4) {
+            v1 = round(v1, data[i]);
+            v2 = round(v2, data[i + 1]);
+            v3 = round(v3, data[i + 2]);
+            v4 = round(v4, data[i + 3]);
+        }
+        for (; i < end; i++) v1 = round(v1, data[i]);
+        return merge(v1, v2, v3, v4, length);
+    }
+
+    /** Mixes a value into one lane */
+    private static long round(long lane, long value) {
+        return Long.rotateLeft(lane + value * PRIME_2, 31) * PRIME_1;
+    }
+
+    /** Combines the lanes of a range & its length */
+    private static long merge(long v1, long v2, long v3, long v4, int length) {
+        long hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+        hash = mix(hash, v1);
+        hash = mix(hash, v2);
+        hash = mix(hash, v3);
+        hash = mix(hash, v4);
+        return hash + length;
+    }
+
+    /** Mixes a value into a running hash */
+    private static long mix(long hash, long value) {
+        return (hash ^ round(0, value)) * PRIME_1 + PRIME_4;
+    }
+
+    /** Spreads every bit of a hash across all others */
+    private static long avalanche(long hash) {
+        hash ^= hash >>> 33;
+        hash *= PRIME_2;
+        hash ^= hash >>> 29;
+        hash *= PRIME_3;
+        return hash ^ hash >>> 32;
+    }
+}
@@ -0,0 +1,98 @@
+package org.threethan.universalreader.lib;
+
+import java.util.Random;
+
+/**
+ * Decides how long to wait between polls of something which rarely changes, such as the system clipboard.
+ * <p/>
+ * Polls are fast right after a change or a {@link #reset()}, and while nothing changes they back off exponentially
+ * to a much longer interval, so that an idle app barely wakes up. Polls which find the resource busy are retried
+ * after a short, randomly jittered delay which grows with each consecutive failure, so that retries don't keep
+ * colliding with whatever else is using it.
+ * <p/>
+ * Not thread-safe; it's meant to be used by the polling thread only.
+ */
+public class PollingSchedule {
+    /** Interval right after a change, in ms */
+    public static final long MIN_INTERVAL = 250;
+    /** Interval once idle for a while, in ms */
+    public static final long MAX_INTERVAL = 4000;
+    /** Unchanged polls at the fast interval before backing off, so that a burst of activity stays responsive */
+    static final int FAST_POLLS = 8;
+    /** Factor the interval grows by with each unchanged poll after the fast ones */
+    static final double BACKOFF = 1.5;
+    /** Average delay before the first retry of a busy poll, in ms */
+    static final long BUSY_RETRY = 50;
+    /** Consecutive busy polls after which the retry delay stops doubling */
+    static final int MAX_BUSY_DOUBLINGS = 4;
+
+    private final long minInterval;
+    private final long maxInterval;
+    private final Random random;
+    private long interval;
+    private int unchangedPolls;
+    private int busyPolls;
+
+    /** Creates a schedule with the default intervals */
+    public PollingSchedule() {
+        this(MIN_INTERVAL, MAX_INTERVAL, new Random());
+    }
+
+    /**
+     * Creates a schedule
+     * @param minInterval Interval right after a change, in ms
+     * @param maxInterval Longest interval once idle, in ms
+     * @param random Source of the jitter of busy retries
+     */
+    PollingSchedule(long minInterval, long maxInterval, Random random) {
+        this.minInterval = minInterval;
+        this.maxInterval = maxInterval;
+        this.random = random;
+        this.interval = minInterval;
+    }
+
+    /**
+     * Gets the delay after a poll which found a change
+     * @return Delay before the next poll, in ms
+     */
+    public long changed() {
+        reset();
+        return interval;
+    }
+
+    /**
+     * Gets the delay after a poll which found nothing new, backing off once there have been several in a row
+     * @return Delay before the next poll, in ms
+     */
+    public long unchanged() {
+        busyPolls = 0;
+        if (++unchangedPolls > FAST_POLLS) interval = Math.min(maxInterval, Math.round(interval * BACKOFF));
+        return interval;
+    }
+
+    /**
+     * Gets the delay after a poll which failed because the resource was busy, without changing the interval
+     * @return Delay before retrying, in ms, randomly between half and one and a half times the base delay
+     */
+    public long busy() {
+        final long base = BUSY_RETRY << Math.min(busyPolls++, MAX_BUSY_DOUBLINGS);
+        return Math.min(maxInterval, base / 2 + random.nextLong(base + 1));
+    }
+
+    /** Returns to the fast interval, such as after the user did something which may be followed by a change */
+    public void reset() {
+        interval = minInterval;
+        unchangedPolls = 0;
+        busyPolls = 0;
+    }
+
+    /** Gets whether polling has backed off from the fast interval */
+    public boolean isIdle() {
+        return interval > minInterval;
+    }
+
+    /** Gets the current interval between polls which find nothing new, in ms */
+    public long getInterval() {
+        return interval;
+    }
+}
@@ -0,0 +1,164 @@
+package org.threethan.universalreader.ocr;
+
+import java.beans.ConstructorProperties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of non-negative values which may be recorded from any thread without locking.
+ * <p/>
+ * Values are counted in buckets whose width grows with their magnitude: each power of two is split into
+ * {@value #SUB_BUCKETS} buckets, so percentiles are accurate to within 25% of the value, across the full range
+ * of a long. Recording a value is a single atomic increment plus a few adder updates, so it can be done on the
+ * hot path without perturbing it.
+ */
+public class Histogram {
+    /** Buckets each power of two is split into */
+    static final int SUB_BUCKETS = 4;
+    private static final int SUB_BUCKET_BITS = 2;
+    /** Values below this are counted exactly, each in its own bucket */
+    private static final int LINEAR_LIMIT = SUB_BUCKETS;
+    private static final int BUCKET_COUNT = bucketOf(Long.MAX_VALUE) + 1;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * A summary of the values recorded by a histogram at some point
+     */
+    public static class Snapshot {
+        private final long count;
+        private final double mean;
+        private final long median;
+        private final long percentile90;
+        private final long percentile99;
+        private final long max;
+
+        /**
+         * Creates a snapshot
+         * @param count Number of values
+         * @param mean Mean of the values
+         * @param median Approximate 50th percentile
+         * @param percentile90 Approximate 90th percentile
+         * @param percentile99 Approximate 99th percentile
+         * @param max Largest value
+         */
+        @ConstructorProperties({"count", "mean", "median", "percentile90", "percentile99", "max"})
+        public Snapshot(long count, double mean, long median, long percentile90, long percentile99, long max) {
+            this.count = count;
+            this.mean = mean;
+            this.median = median;
+            this.percentile90 = percentile90;
+            this.percentile99 = percentile99;
+            this.max = max;
+        }
+
+        /** Gets the number of values */
+        public long getCount() {
+            return count;
+        }
+
+        /** Gets the mean of the values, or 0 if there are none */
+        public double getMean() {
+            return mean;
+        }
+
+        /** Gets the approximate 50th percentile */
+        public long getMedian() {
+            return median;
+        }
+
+        /** Gets the approximate 90th percentile */
+        public long getPercentile90() {
+            return percentile90;
+        }
+
+        /** Gets the approximate 99th percentile */
+        public long getPercentile99() {
+            return percentile99;
+        }
+
+        /** Gets the largest value */
+        public long getMax() {
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return "n=%d mean=%.1f p50=%d p90=%d p99=%d max=%d"
+                    .formatted(count, mean, median, percentile90, percentile99, max);
+        }
+    }
+
+    /**
+     * Records a value
+     * @param value Value to record, where negative values are counted as 0
+     */
+    public void record(long value) {
+        if (value < 0) value = 0;
+        buckets.incrementAndGet(bucketOf(value));
+        count.increment();
+        sum.add(value);
+        // Only contended when a new maximum is set, which quickly becomes rare
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) current = max.get();
+    }
+
+    /**
+     * Summarizes the recorded values. Values recorded during the call may be partly included.
+     * @return Count, mean, percentiles & max of the values
+     */
+    public Snapshot snapshot() {
+        final long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) total += counts[i] = buckets.get(i);
+        final long max = this.max.get();
+        final double mean = total == 0 ? 0 : (double) sum.sum() / count.sum();
+        return new Snapshot(total, mean, percentile(counts, total, 0.5, max), percentile(counts, total, 0.9, max),
+                percentile(counts, total, 0.99, max), max);
+    }
+
+    /** Clears all recorded values. Values recorded during the call may be partly kept. */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) buckets.set(i, 0);
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    /**
+     * Finds the value at a percentile of bucket counts
+     * @param fraction Fraction of values which are at or below the result
+     * @param max Largest recorded value, which the result never exceeds
+     * @return Upper bound of the bucket containing the percentile
+     */
+    private static long percentile(long[] counts, long total, double fraction, long max) {
+        if (total == 0) return 0;
+        final long rank = Math.max(1, (long) Math.ceil(total * fraction));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return Math.min(max, upperBound(i));
+        }
+        return max;
+    }
+
+    /** Gets the bucket a value is counted in */
+    static int bucketOf(long value) {
+        if (value < LINEAR_LIMIT) return (int) value;
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /** Gets the largest value counted in a bucket */
+    static long upperBound(int bucket) {
+        if (bucket < LINEAR_LIMIT) return bucket;
+        final int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        final long sub = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + sub) << (exponent - SUB_BUCKET_BITS)) + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
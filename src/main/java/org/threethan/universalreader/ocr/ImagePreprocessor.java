@@ -0,0 +1,666 @@
+package org.threethan.universalreader.ocr;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a configurable series of stages on an image before it's passed to the OCR engine.
+ * <p/>
+ * Feeding the engine fewer, cleaner pixels noticeably cuts recognition time,
+ * especially on large and mostly blank screenshots, and on screenshots of high-DPI displays. Each stage is timed,
+ * and any cropping or scaling is recorded so that positions can be mapped back to the original image.
+ */
+public class ImagePreprocessor {
+    private static final Logger logger = LoggerFactory.getLogger(ImagePreprocessor.class);
+
+    /** Steps used if none have been configured */
+    public static final Set<Step> DEFAULT_STEPS = Collections.unmodifiableSet(
+            EnumSet.of(Step.GRAYSCALE, Step.CROP_BORDERS, Step.NORMALIZE_SCALE));
+
+    /** Luminance difference from the background at which a pixel counts as content when cropping */
+    private static final int CROP_TOLERANCE = 24;
+    /** Blank space left around content when cropping, since Tesseract works best with some margin */
+    private static final int CROP_MARGIN = 10;
+    /** Largest skew which will be detected & corrected, in degrees */
+    private static final double MAX_SKEW = 5;
+    /** Skews smaller than this are left alone, in degrees */
+    private static final double MIN_SKEW = 0.3;
+    /** Fraction below the local mean at which a pixel becomes black when binarizing */
+    private static final int BINARIZE_THRESHOLD_PERCENT = 15;
+    /**
+     * Height of lowercase letters which text is scaled to, in pixels. Tesseract's line recognizer
+     * shrinks or stretches every line to about 36 pixels tall, which this gives for typical text.
+     */
+    static final int TARGET_X_HEIGHT = 16;
+    /** Text with a smaller x-height is enlarged, since the engine misreads letters this small */
+    static final int MIN_X_HEIGHT = 10;
+    /** Text with a larger x-height is shrunk, since its extra pixels only slow the engine down */
+    static final int MAX_X_HEIGHT = 22;
+    /** Most an image is enlarged by, however small its text */
+    private static final double MAX_UPSCALE = 3;
+    /** Largest image produced by enlarging, in pixels */
+    private static final long MAX_UPSCALED_PIXELS = 24_000_000;
+    /** Narrowest vertical strip in which lines are measured, so that columns of text are measured separately */
+    private static final int MIN_STRIP_WIDTH = 128;
+    /** Most vertical strips in which lines are measured */
+    private static final int MAX_STRIPS = 16;
+    /** Fewest lines which must be measured for the x-height estimate to be trusted */
+    private static final int MIN_MEASURED_LINES = 3;
+
+    private final List<Stage> stages;
+
+    /**
+     * A single preprocessing stage, which may be one of the built-in {@link Step}s or a custom implementation
+     */
+    public interface Stage {
+        /**
+         * Applies this stage to an image
+         * @param image Image output by the previous stage
+         * @param mapping Mapping back to the original image, which must be updated if the image is cropped or scaled
+         * @return Processed image, which may be the same instance if nothing was changed
+         */
+        BufferedImage apply(BufferedImage image, Mapping mapping);
+
+        /** Gets the name of the stage, used when reporting timings */
+        String name();
+    }
+
+    /** Built-in preprocessing steps, declared in the order they are run */
+    public enum Step implements Stage {
+        GRAYSCALE("Convert to Grayscale") {
+            @Override
+            public BufferedImage apply(BufferedImage image, Mapping mapping) {
+                return toGray(image);
+            }
+        },
+        CROP_BORDERS("Crop Blank Borders") {
+            @Override
+            public BufferedImage apply(BufferedImage image, Mapping mapping) {
+                return cropBorders(image, mapping);
+            }
+        },
+        NORMALIZE_SCALE("Normalize Text Size") {
+            @Override
+            public BufferedImage apply(BufferedImage image, Mapping mapping) {
+                return normalizeScale(image, mapping);
+            }
+        },
+        DESKEW("Straighten Skewed Text") {
+            @Override
+            public BufferedImage apply(BufferedImage image, Mapping mapping) {
+                return deskew(image, mapping);
+            }
+        },
+        BINARIZE("Convert to Black & White") {
+            @Override
+            public BufferedImage apply(BufferedImage image, Mapping mapping) {
+                return binarize(image);
+            }
+        };
+
+        private final String label;
+
+        Step(String label) {
+            this.label = label;
+        }
+
+        /** Returns a label which may be shown to the user */
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    /**
+     * Maps coordinates in a processed image back to coordinates in the original image
+     */
+    public static class Mapping {
+        /** Transforms current coordinates to original coordinates */
+        private final AffineTransform toOriginal = new AffineTransform();
+        private double scale = 1;
+
+        /**
+         * Records that the image was cropped
+         * @param x Left edge of the crop, in current coordinates
+         * @param y Top edge of the crop, in current coordinates
+         */
+        public void crop(int x, int y) {
+            toOriginal.translate(x, y);
+        }
+
+        /**
+         * Records that the image was scaled
+         * @param factor Factor by which the image was scaled
+         */
+        public void scale(double factor) {
+            scale *= factor;
+            toOriginal.scale(1 / factor, 1 / factor);
+        }
+
+        /**
+         * Records that the image was rotated about a point
+         * @param degrees Angle by which the image was rotated, clockwise
+         * @param x Horizontal position of the point, in current coordinates
+         * @param y Vertical position of the point, in current coordinates
+         */
+        public void rotate(double degrees, double x, double y) {
+            toOriginal.rotate(Math.toRadians(-degrees), x, y);
+        }
+
+        /** Gets the total factor by which the image was scaled */
+        public double getScale() {
+            return scale;
+        }
+
+        /**
+         * Maps a rectangle in the processed image to the original image
+         * @param rectangle Rectangle in processed coordinates
+         * @return Rectangle in original coordinates, around the whole rectangle if the image was rotated
+         */
+        public Rectangle toOriginal(Rectangle rectangle) {
+            final Rectangle2D bounds = toOriginal.createTransformedShape(new Rectangle2D.Double(
+                    rectangle.x, rectangle.y, rectangle.width, rectangle.height)).getBounds2D();
+            // Rounded slightly inwards first, so that floating point error never grows a box by a pixel
+            final int x = (int) Math.floor(bounds.getMinX() + 1e-9);
+            final int y = (int) Math.floor(bounds.getMinY() + 1e-9);
+            final int right = (int) Math.ceil(bounds.getMaxX() - 1e-9);
+            final int bottom = (int) Math.ceil(bounds.getMaxY() - 1e-9);
+            return new Rectangle(x, y, right - x, bottom - y);
+        }
+    }
+
+    /**
+     * The result of preprocessing an image
+     * @param image Processed image
+     * @param mapping Mapping from the processed image back to the original
+     * @param stageNanos Time taken by each stage, by name, in the order they ran
+     */
+    public record Output(BufferedImage image, Mapping mapping, Map<String, Long> stageNanos) {}
+
+    /**
+     * Creates a preprocessor which runs stages in the given order
+     * @param stages Stages to run
+     */
+    public ImagePreprocessor(Collection<? extends Stage> stages) {
+        this.stages = List.copyOf(stages);
+    }
+
+    /**
+     * Creates a preprocessor which runs a set of built-in steps, in their natural order
+     * @param steps Steps to run
+     */
+    public static ImagePreprocessor of(Set<Step> steps) {
+        return new ImagePreprocessor(steps.isEmpty() ? EnumSet.noneOf(Step.class) : EnumSet.copyOf(steps));
+    }
+
+    /**
+     * Runs all stages on an image
+     * @param image Original image
+     * @return Processed image, along with the mapping back to the original and the time taken by each stage
+     */
+    public Output process(BufferedImage image) {
+        final Mapping mapping = new Mapping();
+        final Map<String, Long> stageNanos = new LinkedHashMap<>();
+        for (Stage stage : stages) {
+            final long startTime = System.nanoTime();
+            image = stage.apply(image, mapping);
+            stageNanos.put(stage.name(), System.nanoTime() - startTime);
+        }
+        if (logger.isDebugEnabled() && !stageNanos.isEmpty()) {
+            StringJoiner joiner = new StringJoiner(", ");
+            stageNanos.forEach((name, nanos) ->
+                    joiner.add(name + " " + TimeUnit.NANOSECONDS.toMicros(nanos) / 1000f + "ms"));
+            logger.debug("Preprocessed image to {}x{}: {}", image.getWidth(), image.getHeight(), joiner);
+        }
+        return new Output(image, mapping, stageNanos);
+    }
+
+    /**
+     * Converts an image to 8-bit grayscale, compositing any transparency onto white
+     * @param image Image of any type
+     * @return Grayscale image, or the same image if it already was one
+     */
+    static BufferedImage toGray(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_BYTE_GRAY) return image;
+        final int w = image.getWidth();
+        final int h = image.getHeight();
+        final BufferedImage gray = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_GRAY);
+        toLuminance(image, ((DataBufferByte) gray.getRaster().getDataBuffer()).getData());
+        return gray;
+    }
+
+    /**
+     * Gets the luminance of each pixel of an image as a compact array
+     * @param image Image of any type
+     * @return Luminance values, row by row. May be the image's own backing array; do not modify.
+     */
+    static byte[] grayPixels(BufferedImage image) {
+        final int w = image.getWidth();
+        final int h = image.getHeight();
+        if (image.getType() == BufferedImage.TYPE_BYTE_GRAY) {
+            final Raster raster = image.getRaster();
+            final byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+            if (raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0
+                    && raster.getSampleModel() instanceof ComponentSampleModel sampleModel
+                    && sampleModel.getScanlineStride() == w && data.length == w * h)
+                return data;
+            // A sub-image, such as a cropped image, so copy out only the relevant pixels
+            return (byte[]) raster.getDataElements(0, 0, w, h, null);
+        }
+        final byte[] luminance = new byte[w * h];
+        toLuminance(image, luminance);
+        return luminance;
+    }
+
+    /** Writes the luminance of each pixel of an image to an array */
+    private static void toLuminance(BufferedImage image, byte[] out) {
+        final int w = image.getWidth();
+        final int h = image.getHeight();
+        final int[] row = new int[w];
+        for (int y = 0; y < h; y++) {
+            image.getRGB(0, y, w, 1, row, 0, w);
+            toLuminance(row, out, y * w);
+        }
+    }
+
+    /** Writes the luminance of a row of ARGB pixels to an array, compositing any transparency onto white */
+    static void toLuminance(int[] row, byte[] out, int offset) {
+        for (int x = 0; x < row.length; x++) {
+            final int pixel = row[x];
+            final int a = pixel >>> 24;
+            int luminance = (((pixel >> 16) & 0xFF) * 77 + ((pixel >> 8) & 0xFF) * 150 + (pixel & 0xFF) * 29) >> 8;
+            if (a != 0xFF) luminance = (luminance * a + 0xFF * (0xFF - a)) / 0xFF;
+            out[offset + x] = (byte) luminance;
+        }
+    }
+
+    /**
+     * Supplies the pixels of an image one row at a time, such as from a JavaFX PixelReader,
+     * so that it can be converted without first copying all of it
+     */
+    @FunctionalInterface
+    public interface RowReader {
+        /**
+         * Reads one row of pixels
+         * @param y Index of the row
+         * @param row Receives the ARGB value of each pixel in the row
+         */
+        void read(int y, int[] row);
+    }
+
+    /**
+     * Creates an image to be recognized from rows of pixels, packed into a single buffer of bytes.
+     * Later stages and the engine use this buffer as-is, so no other full-size copy of the image is made.
+     * @param w Width of the image
+     * @param h Height of the image
+     * @param gray True to store 8-bit luminance, as {@link Step#GRAYSCALE} would, or false to store 24-bit color
+     * @param reader Supplies the pixels of each row
+     * @return Image of type {@link BufferedImage#TYPE_BYTE_GRAY} or {@link BufferedImage#TYPE_3BYTE_BGR},
+     *         with any transparency composited onto white
+     */
+    public static BufferedImage toFrame(int w, int h, boolean gray, RowReader reader) {
+        final BufferedImage frame =
+                new BufferedImage(w, h, gray ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_3BYTE_BGR);
+        final byte[] out = ((DataBufferByte) frame.getRaster().getDataBuffer()).getData();
+        final int[] row = new int[w];
+        for (int y = 0; y < h; y++) {
+            reader.read(y, row);
+            if (gray) {
+                toLuminance(row, out, y * w);
+                continue;
+            }
+            for (int x = 0, i = y * w * 3; x < w; x++, i += 3) {
+                final int pixel = row[x];
+                final int a = pixel >>> 24;
+                int r = (pixel >> 16) & 0xFF, g = (pixel >> 8) & 0xFF, b = pixel & 0xFF;
+                if (a != 0xFF) {
+                    r = (r * a + 0xFF * (0xFF - a)) / 0xFF;
+                    g = (g * a + 0xFF * (0xFF - a)) / 0xFF;
+                    b = (b * a + 0xFF * (0xFF - a)) / 0xFF;
+                }
+                out[i] = (byte) b;
+                out[i + 1] = (byte) g;
+                out[i + 2] = (byte) r;
+            }
+        }
+        return frame;
+    }
+
+    /**
+     * Finds the most common luminance along the edges of an image, which is assumed to be the background
+     * @param pixels Luminance values
+     * @param w Width of the image
+     * @param h Height of the image
+     * @return Background luminance, 0-255
+     */
+    static int backgroundLuminance(byte[] pixels, int w, int h) {
+        final int[] histogram = new int[256];
+        for (int x = 0; x < w; x++) {
+            histogram[pixels[x] & 0xFF]++;
+            histogram[pixels[(h - 1) * w + x] & 0xFF]++;
+        }
+        for (int y = 0; y < h; y++) {
+            histogram[pixels[y * w] & 0xFF]++;
+            histogram[pixels[y * w + w - 1] & 0xFF]++;
+        }
+        int background = 0;
+        for (int i = 1; i < 256; i++) if (histogram[i] > histogram[background]) background = i;
+        return background;
+    }
+
+    /**
+     * Crops away uniform borders & margins, leaving a small margin around the content
+     * @param image Image of any type
+     * @param mapping Mapping to record the crop in
+     * @return Cropped image, sharing data with the input, or the same image if there was nothing to crop
+     */
+    static BufferedImage cropBorders(BufferedImage image, Mapping mapping) {
+        final int w = image.getWidth();
+        final int h = image.getHeight();
+        final byte[] pixels = grayPixels(image);
+        final int background = backgroundLuminance(pixels, w, h);
+
+        int top = h, bottom = -1, left = w, right = -1;
+        for (int y = 0; y < h; y++) {
+            final int offset = y * w;
+            int rowLeft = -1;
+            for (int x = 0; x < w; x++) {
+                if (Math.abs((pixels[offset + x] & 0xFF) - background) > CROP_TOLERANCE) {
+                    rowLeft = x;
+                    break;
+                }
+            }
+            if (rowLeft < 0) continue;
+            int rowRight = rowLeft;
+            for (int x = w - 1; x > rowLeft; x--) {
+                if (Math.abs((pixels[offset + x] & 0xFF) - background) > CROP_TOLERANCE) {
+                    rowRight = x;
+                    break;
+                }
+            }
+            if (top == h) top = y;
+            bottom = y;
+            left = Math.min(left, rowLeft);
+            right = Math.max(right, rowRight);
+        }
+        if (bottom < 0) return image; // Entirely uniform, nothing to crop to
+
+        left = Math.max(0, left - CROP_MARGIN);
+        top = Math.max(0, top - CROP_MARGIN);
+        right = Math.min(w - 1, right + CROP_MARGIN);
+        bottom = Math.min(h - 1, bottom + CROP_MARGIN);
+        if (left == 0 && top == 0 && right == w - 1 && bottom == h - 1) return image;
+
+        mapping.crop(left, top);
+        return image.getSubimage(left, top, right - left + 1, bottom - top + 1);
+    }
+
+    /**
+     * Scales an image so that its text has about the x-height the engine reads best, such as to shrink
+     * screenshots of high-DPI displays, whose text has many times more pixels than the engine needs.
+     * Images whose text is already a good size, or whose text size can't be estimated, are left alone.
+     * @param image Image of any type
+     * @param mapping Mapping to record the scale in
+     * @return Scaled image, or the same image if it wasn't scaled
+     */
+    static BufferedImage normalizeScale(BufferedImage image, Mapping mapping) {
+        final double xHeight = estimateXHeight(image);
+        if (xHeight <= 0 || (xHeight >= MIN_X_HEIGHT && xHeight <= MAX_X_HEIGHT)) return image;
+        final long pixels = (long) image.getWidth() * image.getHeight();
+        double factor = TARGET_X_HEIGHT / xHeight;
+        if (factor > 1) {
+            // The pixel cap only limits enlarging, so small text in a huge image is left alone, never shrunk
+            factor = Math.min(factor, Math.min(MAX_UPSCALE, Math.sqrt((double) MAX_UPSCALED_PIXELS / pixels)));
+            if (factor <= 1) return image;
+        }
+        final int w = Math.max(1, (int) Math.round(image.getWidth() * factor));
+        final int h = Math.max(1, (int) Math.round(image.getHeight() * factor));
+        if (w == image.getWidth() && h == image.getHeight()) return image;
+        logger.debug("Scaling {}x{} image with x-height {} to {}x{}", image.getWidth(), image.getHeight(),
+                xHeight, w, h);
+        mapping.scale((double) w / image.getWidth());
+        return resize(image, w, h);
+    }
+
+    /**
+     * Estimates the x-height of the text in an image, from the lines found in narrow vertical strips.
+     * Each strip's rows are split into lines at blank rows, and within each line,
+     * the rows with at least a third as much ink as its densest row are counted as the x-height,
+     * since only a few letters reach above or below it.
+     * Lines which are mostly ink, such as those through photos, are ignored.
+     * @param image Image of any type
+     * @return Median x-height of the lines in pixels, or 0 if too few lines were found
+     */
+    static double estimateXHeight(BufferedImage image) {
+        final int w = image.getWidth();
+        final int h = image.getHeight();
+        final byte[] pixels = grayPixels(image);
+        final int background = backgroundLuminance(pixels, w, h);
+        final int strips = Math.max(1, Math.min(MAX_STRIPS, w / MIN_STRIP_WIDTH));
+        final int stripWidth = (w + strips - 1) / strips;
+
+        // Content pixels in each row of each strip
+        final int[][] ink = new int[strips][h];
+        for (int y = 0; y < h; y++) {
+            final int offset = y * w;
+            for (int strip = 0; strip < strips; strip++) {
+                final int end = Math.min(w, (strip + 1) * stripWidth);
+                int count = 0;
+                for (int x = strip * stripWidth; x < end; x++)
+                    if (Math.abs((pixels[offset + x] & 0xFF) - background) > CROP_TOLERANCE) count++;
+                ink[strip][y] = count;
+            }
+        }
+
+        int[] xHeights = new int[64];
+        int lines = 0;
+        for (int[] rows : ink) {
+            for (int start = 0; start < h; ) {
+                if (rows[start] == 0) {
+                    start++;
+                    continue;
+                }
+                int end = start;
+                int peak = 0;
+                while (end < h && rows[end] > 0) peak = Math.max(peak, rows[end++]);
+                int xHeight = 0;
+                long xInk = 0;
+                for (int y = start; y < end; y++) {
+                    if (rows[y] * 3 < peak) continue;
+                    xHeight++;
+                    xInk += rows[y];
+                }
+                start = end;
+                // Strokes of text leave most of the pixels of its lines blank, unlike photos & filled shapes
+                if (xHeight < 3 || xInk * 4 > (long) xHeight * stripWidth * 3) continue;
+                if (lines == xHeights.length) xHeights = Arrays.copyOf(xHeights, lines * 2);
+                xHeights[lines++] = xHeight;
+            }
+        }
+        if (lines < MIN_MEASURED_LINES) return 0;
+        Arrays.sort(xHeights, 0, lines);
+        return lines % 2 == 1 ? xHeights[lines / 2] : (xHeights[lines / 2 - 1] + xHeights[lines / 2]) / 2.0;
+    }
+
+    /**
+     * Resizes an image, smoothing it so that thin strokes survive shrinking
+     * @param image Image of any type
+     * @param w Width of the resized image
+     * @param h Height of the resized image
+     * @return Resized image, of the same type as the input unless that was a custom type
+     */
+    static BufferedImage resize(BufferedImage image, int w, int h) {
+        final int type = image.getType() == BufferedImage.TYPE_CUSTOM ? BufferedImage.TYPE_INT_RGB : image.getType();
+        BufferedImage current = image;
+        // Bilinear filtering skips pixels when shrinking by more than half, so shrink by halves first
+        while (current.getWidth() / 2 >= w && current.getHeight() / 2 >= h)
+            current = draw(current, current.getWidth() / 2, current.getHeight() / 2, type);
+        if (current.getWidth() == w && current.getHeight() == h) return current;
+        return draw(current, w, h, type);
+    }
+
+    /** Draws an image at another size onto a new image, with bilinear filtering */
+    private static BufferedImage draw(BufferedImage image, int w, int h, int type) {
+        final BufferedImage resized = new BufferedImage(w, h, type);
+        final Graphics2D g = resized.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(image, 0, 0, w, h, null);
+        g.dispose();
+        return resized;
+    }
+
+    /**
+     * Converts an image to pure black & white using a threshold relative to the local mean,
+     * which copes with uneven backgrounds. Light text on a dark background is inverted.
+     * @param image Image of any type
+     * @return Grayscale image containing only black & white pixels
+     */
+    static BufferedImage binarize(BufferedImage image) {
+        final int w = image.getWidth();
+        final int h = image.getHeight();
+        final byte[] pixels = grayPixels(image);
+        final boolean invert = backgroundLuminance(pixels, w, h) < 0x80;
+        final int radius = Math.max(8, Math.min(50, Math.max(w, h) / 48));
+
+        final BufferedImage binary = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_GRAY);
+        final byte[] out = ((DataBufferByte) binary.getRaster().getDataBuffer()).getData();
+
+        // Sums of each column over the rows within the window, updated as the window slides down
+        final int[] columnSums = new int[w];
+        for (int y = 0; y <= Math.min(radius, h - 1); y++) addRow(pixels, w, y, columnSums, invert, 1);
+
+        for (int y = 0; y < h; y++) {
+            final int rowCount = Math.min(h - 1, y + radius) - Math.max(0, y - radius) + 1;
+            // Slide a window across the column sums to get the sum of each pixel's neighbourhood
+            long sum = 0;
+            for (int x = 0; x <= Math.min(radius, w - 1); x++) sum += columnSums[x];
+            final int offset = y * w;
+            for (int x = 0; x < w; x++) {
+                final int columnCount = Math.min(w - 1, x + radius) - Math.max(0, x - radius) + 1;
+                int value = pixels[offset + x] & 0xFF;
+                if (invert) value = 0xFF - value;
+                final long area = (long) rowCount * columnCount;
+                final boolean black = value * area * 100 < sum * (100 - BINARIZE_THRESHOLD_PERCENT);
+                out[offset + x] = black ? 0 : (byte) 0xFF;
+                if (x + radius + 1 < w) sum += columnSums[x + radius + 1];
+                if (x - radius >= 0) sum -= columnSums[x - radius];
+            }
+            if (y + radius + 1 < h) addRow(pixels, w, y + radius + 1, columnSums, invert, 1);
+            if (y - radius >= 0) addRow(pixels, w, y - radius, columnSums, invert, -1);
+        }
+        return binary;
+    }
+
+    /** Adds (or subtracts) a row of pixels to running column sums */
+    private static void addRow(byte[] pixels, int w, int y, int[] columnSums, boolean invert, int sign) {
+        final int offset = y * w;
+        for (int x = 0; x < w; x++) {
+            int value = pixels[offset + x] & 0xFF;
+            if (invert) value = 0xFF - value;
+            columnSums[x] += sign * value;
+        }
+    }
+
+    /**
+     * Rotates an image so that skewed lines of text become horizontal
+     * @param image Image of any type
+     * @param mapping Mapping to record the rotation in
+     * @return Straightened image, or the same image if it wasn't noticeably skewed
+     */
+    static BufferedImage deskew(BufferedImage image, Mapping mapping) {
+        final double skew = estimateSkew(image);
+        if (Math.abs(skew) < MIN_SKEW) return image;
+
+        final int w = image.getWidth();
+        final int h = image.getHeight();
+        final int background = backgroundLuminance(grayPixels(image), w, h);
+        final int type = image.getType() == BufferedImage.TYPE_CUSTOM ? BufferedImage.TYPE_INT_RGB : image.getType();
+        final BufferedImage straightened = new BufferedImage(w, h, type);
+        final Graphics2D g = straightened.createGraphics();
+        g.setColor(new Color(background, background, background));
+        g.fillRect(0, 0, w, h);
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(image, AffineTransform.getRotateInstance(Math.toRadians(-skew), w / 2.0, h / 2.0), null);
+        g.dispose();
+        mapping.rotate(-skew, w / 2.0, h / 2.0);
+        return straightened;
+    }
+
+    /**
+     * Estimates the angle of lines of text, by finding the angle at which
+     * the horizontal projection of content pixels is most sharply peaked
+     * @param image Image of any type
+     * @return Angle of the text in degrees; positive if lines slope downwards to the right
+     */
+    static double estimateSkew(BufferedImage image) {
+        final int w = image.getWidth();
+        final int h = image.getHeight();
+        final byte[] pixels = grayPixels(image);
+        final int background = backgroundLuminance(pixels, w, h);
+
+        // Sample content pixels on a sparse grid, which is plenty to find the angle
+        final int step = Math.max(1, (int) Math.sqrt((double) w * h / 400_000));
+        int count = 0;
+        int[] xs = new int[1024];
+        int[] ys = new int[1024];
+        for (int y = 0; y < h; y += step) {
+            for (int x = 0; x < w; x += step) {
+                if (Math.abs((pixels[y * w + x] & 0xFF) - background) > CROP_TOLERANCE * 2) {
+                    if (count == xs.length) {
+                        xs = Arrays.copyOf(xs, count * 2);
+                        ys = Arrays.copyOf(ys, count * 2);
+                    }
+                    xs[count] = x;
+                    ys[count] = y;
+                    count++;
+                }
+            }
+        }
+        if (count < 32) return 0;
+
+        double best = 0;
+        double bestScore = projectionScore(xs, ys, count, w, h, step, 0);
+        // Coarse search, then refine around the best coarse angle
+        for (double angle = -MAX_SKEW; angle <= MAX_SKEW; angle += 0.5) {
+            final double score = projectionScore(xs, ys, count, w, h, step, angle);
+            if (score > bestScore) {
+                bestScore = score;
+                best = angle;
+            }
+        }
+        final double coarse = best;
+        for (double angle = coarse - 0.45; angle <= coarse + 0.45; angle += 0.05) {
+            final double score = projectionScore(xs, ys, count, w, h, step, angle);
+            if (score > bestScore) {
+                bestScore = score;
+                best = angle;
+            }
+        }
+        return best;
+    }
+
+    /** Sum of squared row counts when points are projected along an angle; higher means sharper lines */
+    private static double projectionScore(int[] xs, int[] ys, int count, int w, int h, int step, double angle) {
+        final double tan = Math.tan(Math.toRadians(angle));
+        final int margin = (int) Math.ceil(Math.abs(tan) * w / step) + 1;
+        final int[] bins = new int[h / step + margin * 2 + 2];
+        for (int i = 0; i < count; i++) {
+            final int bin = (int) Math.round((ys[i] - xs[i] * tan) / step) + margin;
+            if (bin >= 0 && bin < bins.length) bins[bin]++;
+        }
+        double score = 0;
+        for (int bin : bins) score += (double) bin * bin;
+        return score;
+    }
+}
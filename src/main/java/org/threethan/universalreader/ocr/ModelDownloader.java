@@ -0,0 +1,357 @@
+package org.threethan.universalreader.ocr;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Downloads model files in the background, safely.
+ * <p/>
+ * Files are downloaded in several parts at once using HTTP range requests, where the server supports them.
+ * Parts are written next to the target as {@code .part} files, so an interrupted download resumes where it
+ * left off. Once complete, the file's length and (if known) SHA-256 checksum are verified before it's atomically
+ * moved into place, so a truncated file is never mistaken for a complete one.
+ * <p/>
+ * The checksum of each verified file is stored beside it in a {@code .sha256} file. Existing files are used as they
+ * are when downloading, and only checked against it for corruption when {@link #verify verified}, which is meant
+ * to be done in the background, such as while warming up.
+ * <p/>
+ * The upstream model repositories don't publish checksums, so unless a caller passes one, a download is only
+ * checked against its length, and later verification only catches files corrupted after they were downloaded.
+ */
+public class ModelDownloader {
+    private static final Logger logger = LoggerFactory.getLogger(ModelDownloader.class);
+    /** Default number of parts downloaded at once */
+    public static final int DEFAULT_PARALLELISM = 4;
+    /** Files smaller than this are downloaded in a single part, in bytes */
+    private static final long MIN_PART_SIZE = 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    static final String PART_EXT = ".part";
+    static final String CHECKSUM_EXT = ".sha256";
+    /** Time to wait for the server when checking the length of an existing file, which is kept if it's exceeded */
+    private static final Duration PROBE_TIMEOUT = Duration.ofSeconds(5);
+
+    /** Receives the progress of downloads */
+    @FunctionalInterface
+    public interface ProgressListener {
+        /**
+         * Called whenever more of a file has been downloaded, from any thread
+         * @param target File being downloaded
+         * @param bytesDone Bytes downloaded so far, including any resumed from an earlier attempt
+         * @param bytesTotal Total size of the file, or -1 if unknown
+         */
+        void onProgress(Path target, long bytesDone, long bytesTotal);
+    }
+
+    private final HttpClient client;
+    private final int parallelism;
+    private final ExecutorService executor;
+    /** Downloads in progress, by target, so that concurrent requests for the same file share one download */
+    private final Map<Path, CompletableFuture<Path>> inProgress = new ConcurrentHashMap<>();
+    private final List<ProgressListener> listeners = new CopyOnWriteArrayList<>();
+    /** Files which have already been verified, so they needn't be checked again */
+    private final Set<Path> verified = ConcurrentHashMap.newKeySet();
+
+    /** Creates a downloader with a default client & parallelism */
+    public ModelDownloader() {
+        this(HttpClient.newBuilder()
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(Duration.ofSeconds(15))
+                .build(), DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * Creates a downloader
+     * @param client Client used for all requests
+     * @param parallelism Maximum number of parts of a file downloaded at once
+     */
+    public ModelDownloader(HttpClient client, int parallelism) {
+        this.client = client;
+        this.parallelism = Math.max(1, parallelism);
+        final AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "Model Download " + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Adds a listener which receives the progress of all downloads
+     * @param listener Listener to add
+     */
+    public void addProgressListener(ProgressListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener previously added
+     * @param listener Listener to remove
+     */
+    public void removeProgressListener(ProgressListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Downloads a file if it isn't already present. An existing file is used without being checked.
+     * @param uri Location to download from
+     * @param target Path to download to
+     * @param expectedSha256 Expected SHA-256 checksum as hex, or null if unknown
+     * @return Future which completes with the target once it's present
+     */
+    public CompletableFuture<Path> download(URI uri, Path target, String expectedSha256) {
+        return download(uri, target, expectedSha256, false);
+    }
+
+    /**
+     * Checks that a file is present and intact, downloading it again if it's missing, truncated or corrupted.
+     * This reads the whole file, or asks the server for its length if no checksum was stored,
+     * so it's meant to be run in the background. If the server can't be reached, the file is kept.
+     * @param uri Location to download from
+     * @param target Path to download to
+     * @param expectedSha256 Expected SHA-256 checksum as hex, or null if unknown
+     * @return Future which completes with the target once it's present and verified
+     */
+    public CompletableFuture<Path> verify(URI uri, Path target, String expectedSha256) {
+        return download(uri, target, expectedSha256, true);
+    }
+
+    /** Downloads a file if it isn't present, or if checking it is requested and it isn't intact */
+    private CompletableFuture<Path> download(URI uri, Path target, String expectedSha256, boolean check) {
+        final Path key = target.toAbsolutePath().normalize();
+        if ((!check || verified.contains(key)) && Files.exists(target))
+            return CompletableFuture.completedFuture(target);
+        final CompletableFuture<Path> future = new CompletableFuture<>();
+        final CompletableFuture<Path> existing = inProgress.putIfAbsent(key, future);
+        if (existing != null) return existing;
+        executor.execute(() -> {
+            try {
+                final boolean present = check ? isIntact(uri, target, expectedSha256) : Files.exists(target);
+                if (!present) fetch(uri, target, expectedSha256);
+                verified.add(key);
+                future.complete(target);
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            } finally {
+                inProgress.remove(key, future);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Checks whether an existing file is complete and uncorrupted.
+     * Files without a stored checksum are compared against the remote length, if the server is reachable.
+     */
+    private boolean isIntact(URI uri, Path target, String expectedSha256) throws IOException {
+        if (!Files.exists(target)) return false;
+        final Path checksumFile = sibling(target, CHECKSUM_EXT);
+        if (Files.exists(checksumFile)) {
+            final String stored = Files.readString(checksumFile, StandardCharsets.US_ASCII).strip();
+            final String expected = expectedSha256 != null ? expectedSha256 : stored;
+            if (expected.equalsIgnoreCase(sha256(target))) return true;
+            logger.warn("{} doesn't match its checksum, downloading it again", target);
+            return false;
+        }
+        // A file from before checksums were stored, so check it's at least the right length
+        final long remoteLength;
+        try {
+            remoteLength = probe(uri, PROBE_TIMEOUT).length();
+        } catch (IOException | InterruptedException e) {
+            logger.info("Couldn't reach {} to verify {}, assuming it's intact", uri, target);
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            return true;
+        }
+        if (remoteLength >= 0 && remoteLength != Files.size(target)) {
+            logger.warn("{} is {} bytes but should be {}, downloading it again",
+                    target, Files.size(target), remoteLength);
+            return false;
+        }
+        final String actual = sha256(target);
+        if (expectedSha256 != null && !expectedSha256.equalsIgnoreCase(actual)) return false;
+        Files.writeString(checksumFile, actual, StandardCharsets.US_ASCII);
+        return true;
+    }
+
+    /** Size of a remote file, and whether its server accepts range requests */
+    private record Probe(long length, boolean acceptsRanges) {}
+
+    /**
+     * Finds the size of a remote file without downloading it
+     * @param timeout Time to wait for a response, or null to wait as long as the client allows
+     */
+    private Probe probe(URI uri, Duration timeout) throws IOException, InterruptedException {
+        final HttpRequest.Builder request = HttpRequest.newBuilder(uri)
+                .method("HEAD", HttpRequest.BodyPublishers.noBody());
+        if (timeout != null) request.timeout(timeout);
+        final HttpResponse<Void> response = client.send(request.build(), HttpResponse.BodyHandlers.discarding());
+        // Some servers don't support HEAD, in which case the file is downloaded without knowing its size
+        if (response.statusCode() == 405 || response.statusCode() == 501) return new Probe(-1, false);
+        if (response.statusCode() != 200) throw new IOException("HTTP " + response.statusCode() + " from " + uri);
+        final HttpHeaders headers = response.headers();
+        return new Probe(headers.firstValueAsLong("Content-Length").orElse(-1),
+                headers.firstValue("Accept-Ranges").map(v -> v.equalsIgnoreCase("bytes")).orElse(false));
+    }
+
+    /** Downloads a file to its partial files, then verifies it and moves it into place */
+    private void fetch(URI uri, Path target, String expectedSha256) throws Exception {
+        final Probe probe = probe(uri, null);
+        final long length = probe.length();
+        final int parts = !probe.acceptsRanges() || length < 0 ? 1
+                : (int) Math.max(1, Math.min(parallelism, length / MIN_PART_SIZE));
+        final long partSize = length < 0 ? -1 : (length + parts - 1) / parts;
+        final List<Path> partFiles = new ArrayList<>(parts);
+        for (int i = 0; i < parts; i++)
+            partFiles.add(sibling(target, "." + length + "." + i + "of" + parts + PART_EXT));
+        deleteStaleParts(target, partFiles);
+
+        final AtomicLong done = new AtomicLong();
+        final List<CompletableFuture<Void>> futures = new ArrayList<>(parts);
+        for (int i = 0; i < parts; i++) {
+            final Path partFile = partFiles.get(i);
+            final long start = i * Math.max(partSize, 0);
+            final long end = length < 0 ? -1 : Math.min(length, start + partSize) - 1;
+            // Only parts of a known length can be resumed
+            final long resumed = probe.acceptsRanges() && Files.exists(partFile) ? Files.size(partFile) : 0;
+            done.addAndGet(resumed);
+            futures.add(CompletableFuture.runAsync(() -> {
+                try {
+                    fetchPart(uri, target, partFile, start + resumed, end, resumed > 0 || parts > 1, done, length);
+                } catch (IOException | InterruptedException e) {
+                    throw new CompletionException(e);
+                }
+            }, executor));
+        }
+        try {
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        }
+
+        // Join the parts, verify the whole, then move it into place in one step
+        final Path joined = sibling(target, PART_EXT);
+        try (OutputStream out = Files.newOutputStream(joined)) {
+            for (Path partFile : partFiles) Files.copy(partFile, out);
+        }
+        final long actualLength = Files.size(joined);
+        if (length >= 0 && actualLength != length) {
+            Files.delete(joined);
+            for (Path partFile : partFiles) Files.deleteIfExists(partFile);
+            throw new IOException("Downloaded " + actualLength + " bytes of " + uri + " but expected " + length);
+        }
+        final String actualSha256 = sha256(joined);
+        if (expectedSha256 != null && !expectedSha256.equalsIgnoreCase(actualSha256)) {
+            Files.delete(joined);
+            for (Path partFile : partFiles) Files.deleteIfExists(partFile);
+            throw new IOException("Checksum of " + uri + " was " + actualSha256 + " but expected " + expectedSha256);
+        }
+        Files.writeString(sibling(target, CHECKSUM_EXT), actualSha256, StandardCharsets.US_ASCII);
+        try {
+            Files.move(joined, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(joined, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        for (Path partFile : partFiles) Files.deleteIfExists(partFile);
+        logger.info("Downloaded {} ({} bytes in {} parts)", target, actualLength, parts);
+    }
+
+    /**
+     * Downloads a range of a file, appending it to a partial file
+     * @param start First byte to download
+     * @param end Last byte to download (inclusive), or -1 for the rest of the file
+     * @param useRange True to request only the range, false to request the whole file
+     */
+    private void fetchPart(URI uri, Path target, Path partFile, long start, long end, boolean useRange,
+                           AtomicLong done, long length) throws IOException, InterruptedException {
+        if (end >= 0 && start > end) return; // Already complete
+        final HttpRequest.Builder request = HttpRequest.newBuilder(uri).GET();
+        if (useRange) request.header("Range", "bytes=" + start + "-" + (end >= 0 ? end : ""));
+        final HttpResponse<InputStream> response = client.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+        final int expectedStatus = useRange ? 206 : 200;
+        try (InputStream in = response.body()) {
+            if (response.statusCode() != expectedStatus)
+                throw new IOException("HTTP " + response.statusCode() + " from " + uri);
+            final StandardOpenOption mode = useRange ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING;
+            try (OutputStream out = Files.newOutputStream(partFile, StandardOpenOption.CREATE, mode)) {
+                final byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                    final long bytesDone = done.addAndGet(read);
+                    for (ProgressListener listener : listeners) listener.onProgress(target, bytesDone, length);
+                }
+            }
+        }
+    }
+
+    /** Deletes partial files of the target from earlier attempts which can't be resumed by this attempt */
+    private static void deleteStaleParts(Path target, List<Path> keep) throws IOException {
+        final Path directory = target.toAbsolutePath().getParent();
+        final String prefix = target.getFileName().toString() + ".";
+        // Compared by name, since listed paths are absolute while the target may be relative
+        final Set<String> keepNames = new HashSet<>();
+        for (Path path : keep) keepNames.add(path.getFileName().toString());
+        try (var stream = Files.list(directory)) {
+            for (Path path : (Iterable<Path>) stream::iterator) {
+                final String name = path.getFileName().toString();
+                if (name.startsWith(prefix) && name.endsWith(PART_EXT) && !keepNames.contains(name))
+                    Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    /** Gets the path of a file beside the target, with an extra extension */
+    private static Path sibling(Path target, String extension) {
+        return target.resolveSibling(target.getFileName() + extension);
+    }
+
+    /**
+     * Computes the SHA-256 checksum of a file
+     * @return Checksum as lowercase hex
+     */
+    static String sha256(Path file) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (InputStream in = Files.newInputStream(file)) {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) digest.update(buffer, 0, read);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
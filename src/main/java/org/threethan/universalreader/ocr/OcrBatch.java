@@ -0,0 +1,410 @@
+package org.threethan.universalreader.ocr;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Recognizes many image files at once, such as a folder of screenshots, on a bounded number of workers.
+ * <p/>
+ * Each worker has its own {@link OcrProcessor}, since a processor only delivers the result of its latest request.
+ * Files are handed to the workers through a small bounded queue, so no more images are loaded than the workers
+ * can take on. Text is written to a file next to each image, or appended to a single JSON lines file.
+ * Files which already have output are skipped, so an interrupted batch resumes where it left off.
+ */
+public class OcrBatch {
+    private static final Logger logger = LoggerFactory.getLogger(OcrBatch.class);
+    /** Extensions of the files picked up when listing a directory */
+    private static final Set<String> IMAGE_EXTENSIONS = Set.of("png", "gif", "jpg", "jpeg", "bmp");
+    /** Extension appended to the name of an image for its text file */
+    public static final String TEXT_EXT = ".txt";
+    /** Extension of text files which are still being written */
+    private static final String PART_EXT = ".part";
+    /** Marks the end of the queue of files */
+    private static final Path END = Path.of("");
+
+    private final Supplier<? extends OcrProcessor> processorFactory;
+    private final int parallelism;
+    private Locale locale = Locale.getDefault();
+    private Set<ImagePreprocessor.Step> preprocessing = ImagePreprocessor.DEFAULT_STEPS;
+    private OcrProfile profile = OcrProfile.DEFAULT;
+    private Path jsonLinesFile = null;
+
+    /**
+     * Summary of a finished batch
+     * @param processed Number of images recognized
+     * @param skipped Number of images skipped since they already had output
+     * @param failed Number of images which couldn't be read or recognized
+     * @param elapsedNanos Time taken by the whole batch, in ns
+     * @param p50Nanos Median time taken to load, recognize and write out a single image, in ns
+     * @param p95Nanos 95th percentile time taken for a single image, in ns
+     */
+    public record Report(int processed, int skipped, int failed, long elapsedNanos, long p50Nanos, long p95Nanos) {
+        /** Gets the number of images recognized per second over the whole batch */
+        public double imagesPerSecond() {
+            return elapsedNanos == 0 ? 0 : processed * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Recognized %d images (%d skipped, %d failed) in %.1fs: " +
+                            "%.2f images/s, p50 %dms, p95 %dms",
+                    processed, skipped, failed, elapsedNanos / 1e9, imagesPerSecond(),
+                    TimeUnit.NANOSECONDS.toMillis(p50Nanos), TimeUnit.NANOSECONDS.toMillis(p95Nanos));
+        }
+    }
+
+    /** Creates a batch which uses Tesseract, with as many workers as the engine pool allows by default */
+    public OcrBatch() {
+        this(TesseractOcrProcessor::new, TesseractEnginePool.DEFAULT_MAX_ENGINES);
+    }
+
+    /**
+     * Creates a batch
+     * @param processorFactory Creates the processor used by each worker
+     * @param parallelism Number of images recognized at once
+     */
+    public OcrBatch(Supplier<? extends OcrProcessor> processorFactory, int parallelism) {
+        this.processorFactory = processorFactory;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Sets the locale to recognize images with
+     * @param locale Locale of the text in the images
+     */
+    public void setLocale(Locale locale) {
+        this.locale = locale;
+    }
+
+    /**
+     * Sets the steps run on each image before recognition
+     * @param preprocessing Preprocessing steps
+     */
+    public void setPreprocessing(Set<ImagePreprocessor.Step> preprocessing) {
+        this.preprocessing = Set.copyOf(preprocessing);
+    }
+
+    /**
+     * Sets the trade-off between recognition speed and accuracy
+     * @param profile Profile to recognize images with
+     */
+    public void setProfile(OcrProfile profile) {
+        this.profile = profile;
+    }
+
+    /**
+     * Sets a file to append all text to as JSON lines, instead of writing a text file next to each image.
+     * Each line is an object with the image's "file" path, its "text", and the "millis" it took.
+     * @param jsonLinesFile File to append to, or null to write text files next to each image (the default)
+     */
+    public void setJsonLinesFile(Path jsonLinesFile) {
+        this.jsonLinesFile = jsonLinesFile;
+    }
+
+    /**
+     * Recognizes all images of a batch, skipping those which already have output.
+     * Blocks until all images are done.
+     * @param files Image files to recognize
+     * @return Summary of the batch
+     * @throws InterruptedException If interrupted, after which the batch may be resumed by running it again
+     */
+    public Report run(List<Path> files) throws IOException, InterruptedException {
+        final long startTime = System.nanoTime();
+        final Run run;
+        try (JsonLines jsonLines = jsonLinesFile == null ? null : new JsonLines(jsonLinesFile)) {
+            run = new Run(jsonLines);
+            final AtomicInteger threadCount = new AtomicInteger();
+            final ExecutorService executor = Executors.newFixedThreadPool(parallelism, r -> {
+                Thread thread = new Thread(r, "OCR Batch Worker " + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            try {
+                final List<Future<?>> workers = new ArrayList<>(parallelism);
+                for (int i = 0; i < parallelism; i++) workers.add(executor.submit(run::work));
+                run.feed(files);
+                for (Future<?> worker : workers) {
+                    try {
+                        worker.get();
+                    } catch (ExecutionException e) {
+                        throw new IOException(e.getCause());
+                    }
+                }
+            } finally {
+                // Stops the workers if interrupted, and waits for them so nothing is written after returning
+                executor.shutdownNow();
+                //noinspection ResultOfMethodCallIgnored
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            }
+        }
+
+        final long[] sorted = run.getSortedLatencies();
+        final Report report = new Report(sorted.length, run.skipped.get(), run.failed.get(),
+                System.nanoTime() - startTime, percentile(sorted, 0.5), percentile(sorted, 0.95));
+        logger.info("{}", report);
+        return report;
+    }
+
+    /** State of a single run of the batch, shared by its workers */
+    private class Run {
+        /** Files waiting for a worker; small so that files are only picked up as fast as the workers go */
+        private final BlockingQueue<Path> queue = new ArrayBlockingQueue<>(parallelism * 2);
+        private final List<Long> latencies = new ArrayList<>();
+        private final AtomicInteger skipped = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final JsonLines jsonLines;
+
+        Run(JsonLines jsonLines) {
+            this.jsonLines = jsonLines;
+        }
+
+        /** Queues each file which doesn't have output yet, blocking while the queue is full */
+        void feed(List<Path> files) throws IOException, InterruptedException {
+            for (Path file : files) {
+                if (jsonLines != null ? jsonLines.contains(file) : hasTextFile(file)) skipped.incrementAndGet();
+                else queue.put(file);
+            }
+            for (int i = 0; i < parallelism; i++) queue.put(END);
+        }
+
+        /** Recognizes queued files with a processor of its own, until the end of the queue */
+        Void work() throws InterruptedException {
+            final OcrProcessor processor = processorFactory.get();
+            for (Path file = queue.take(); file != END; file = queue.take()) {
+                final long imageStartTime = System.nanoTime();
+                try {
+                    final String text = recognize(processor, file);
+                    final long latency = System.nanoTime() - imageStartTime;
+                    if (jsonLines != null) jsonLines.write(file, text, latency);
+                    else writeTextFile(file, text);
+                    synchronized (latencies) {
+                        latencies.add(latency);
+                    }
+                } catch (IOException | ExecutionException | RuntimeException e) {
+                    logger.warn("Failed to recognize {}: {}", file,
+                            e instanceof ExecutionException ? e.getCause().getMessage() : e.getMessage());
+                    failed.incrementAndGet();
+                }
+            }
+            return null;
+        }
+
+        /** Gets the time taken by each recognized image, in ascending order */
+        long[] getSortedLatencies() {
+            synchronized (latencies) {
+                return latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+            }
+        }
+    }
+
+    /** Loads and recognizes a single image, waiting for its result */
+    private String recognize(OcrProcessor processor, Path file)
+            throws IOException, ExecutionException, InterruptedException {
+        final BufferedImage image = ImageIO.read(file.toFile());
+        if (image == null) throw new IOException("Not a readable image");
+        // Batches run behind any interactive requests of open windows sharing the same workers
+        return processor.submit(new OcrProcessor.Request(image, locale, preprocessing, profile, OcrPriority.AUTO),
+                null).get().ocrText();
+    }
+
+    /**
+     * Gets the text file written next to an image
+     * @param file Image file
+     * @return Path of the text file, which is the image's file name with {@link #TEXT_EXT} appended
+     */
+    public static Path getTextFile(Path file) {
+        return file.resolveSibling(file.getFileName() + TEXT_EXT);
+    }
+
+    /** Checks whether an image already has a text file at least as new as itself */
+    private static boolean hasTextFile(Path file) throws IOException {
+        final Path textFile = getTextFile(file);
+        return Files.exists(textFile)
+                && Files.getLastModifiedTime(textFile).compareTo(Files.getLastModifiedTime(file)) >= 0;
+    }
+
+    /** Writes the text file for an image, moving it into place only once complete */
+    private static void writeTextFile(Path file, String text) throws IOException {
+        final Path textFile = getTextFile(file);
+        final Path partFile = textFile.resolveSibling(textFile.getFileName() + PART_EXT);
+        Files.writeString(partFile, text, StandardCharsets.UTF_8);
+        Files.move(partFile, textFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Gets a value from sorted values by nearest rank
+     * @param sorted Values in ascending order
+     * @param fraction Fraction of values which should be less than or equal to the result
+     * @return The value, or 0 if there are none
+     */
+    static long percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) return 0;
+        final int rank = (int) Math.ceil(fraction * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+    }
+
+    /**
+     * Lists all images within a directory, including its subdirectories
+     * @param directory Directory to search
+     * @return Image files, in order of path
+     */
+    public static List<Path> listImages(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            return paths.filter(Files::isRegularFile)
+                    .filter(path -> {
+                        final String name = path.getFileName().toString();
+                        final int dot = name.lastIndexOf('.');
+                        return dot > 0 && IMAGE_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase());
+                    })
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    /**
+     * Lists all files within a directory matching a glob pattern, such as {@code "**.png"} or {@code "2024-*.jpg"}
+     * @param directory Directory to search, which the pattern is relative to
+     * @param pattern Glob pattern, as described by {@link FileSystems#getPathMatcher(String)}
+     * @return Matching files, in order of path
+     */
+    public static List<Path> glob(Path directory, String pattern) throws IOException {
+        final PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        try (Stream<Path> paths = Files.walk(directory)) {
+            return paths.filter(Files::isRegularFile)
+                    .filter(path -> matcher.matches(directory.relativize(path)))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    /**
+     * Appends results to a JSON lines file, remembering which images it already contains.
+     * A partial line left by an interrupted batch is removed before anything is appended.
+     */
+    private static class JsonLines implements Closeable {
+        private final Set<String> done = ConcurrentHashMap.newKeySet();
+        private final Writer writer;
+
+        JsonLines(Path file) throws IOException {
+            if (Files.exists(file)) {
+                final String content = Files.readString(file, StandardCharsets.UTF_8);
+                final String complete = content.substring(0, content.lastIndexOf('\n') + 1);
+                if (complete.length() < content.length()) {
+                    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                        channel.truncate(complete.getBytes(StandardCharsets.UTF_8).length);
+                    }
+                }
+                Arrays.stream(complete.split("\n")).map(OcrBatch::readFileField)
+                        .filter(Objects::nonNull).forEach(done::add);
+            }
+            writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+
+        boolean contains(Path file) {
+            return done.contains(key(file));
+        }
+
+        synchronized void write(Path file, String text, long latencyNanos) throws IOException {
+            writer.write("{\"file\":" + jsonString(key(file)) + ",\"text\":" + jsonString(text)
+                    + ",\"millis\":" + TimeUnit.NANOSECONDS.toMillis(latencyNanos) + "}\n");
+            writer.flush();
+            done.add(key(file));
+        }
+
+        private static String key(Path file) {
+            return file.toAbsolutePath().normalize().toString();
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            writer.close();
+        }
+    }
+
+    /**
+     * Quotes and escapes a string for JSON
+     * @param string String to quote
+     * @return JSON string literal
+     */
+    static String jsonString(String string) {
+        final StringBuilder builder = new StringBuilder(string.length() + 2).append('"');
+        for (char c : string.toCharArray()) {
+            switch (c) {
+                case '"' -> builder.append("\\\"");
+                case '\\' -> builder.append("\\\\");
+                case '\n' -> builder.append("\\n");
+                case '\r' -> builder.append("\\r");
+                case '\t' -> builder.append("\\t");
+                default -> {
+                    if (c < 0x20) builder.append(String.format("\\u%04x", (int) c));
+                    else builder.append(c);
+                }
+            }
+        }
+        return builder.append('"').toString();
+    }
+
+    /**
+     * Reads the "file" field of a line written by this class, which is always first
+     * @param line A JSON line
+     * @return Unescaped path, or null if the line has no file field
+     */
+    static String readFileField(String line) {
+        final String prefix = "{\"file\":\"";
+        if (!line.startsWith(prefix)) return null;
+        final StringBuilder builder = new StringBuilder();
+        for (int i = prefix.length(); i < line.length(); i++) {
+            final char c = line.charAt(i);
+            if (c == '"') return builder.toString();
+            if (c != '\\' || i + 1 >= line.length()) {
+                builder.append(c);
+                continue;
+            }
+            final char escaped = line.charAt(++i);
+            switch (escaped) {
+                case 'n' -> builder.append('\n');
+                case 'r' -> builder.append('\r');
+                case 't' -> builder.append('\t');
+                case 'u' -> {
+                    if (i + 4 >= line.length()) return null;
+                    builder.append((char) Integer.parseInt(line.substring(i + 1, i + 5), 16));
+                    i += 4;
+                }
+                default -> builder.append(escaped);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,50 @@
+package org.threethan.universalreader.ocr;
+
+/**
+ * Why an image couldn't be recognized. Futures returned by {@link OcrProcessor#submit(OcrProcessor.Request,
+ * java.time.Duration)} fail with this, while cancelled & timed out requests fail with the usual
+ * {@link java.util.concurrent.CancellationException} & {@link java.util.concurrent.TimeoutException}.
+ * <p/>
+ * The message is short and suitable to be shown or spoken to the user.
+ */
+public class OcrException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    /** Kinds of failure, which callers may handle differently */
+    public enum Reason {
+        /** No trained data could be found or downloaded for any language */
+        LANGUAGE_UNAVAILABLE,
+        /** The engine failed while recognizing the image */
+        ENGINE_FAILED,
+        /** The OCR server couldn't be reached, or the connection to it was lost */
+        SERVER_UNAVAILABLE
+    }
+
+    private final Reason reason;
+
+    /**
+     * Creates an exception
+     * @param reason Kind of failure
+     * @param message Short description, suitable to be shown to the user
+     */
+    public OcrException(Reason reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+
+    /**
+     * Creates an exception caused by another
+     * @param reason Kind of failure
+     * @param message Short description, suitable to be shown to the user
+     * @param cause Underlying exception
+     */
+    public OcrException(Reason reason, String message, Throwable cause) {
+        super(message, cause);
+        this.reason = reason;
+    }
+
+    /** Gets the kind of failure */
+    public Reason getReason() {
+        return reason;
+    }
+}
@@ -0,0 +1,155 @@
+package org.threethan.universalreader.ocr;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records where OCR time goes, so that slow recognitions can be diagnosed: the latency of each stage,
+ * how long requests waited to be run, and how large their images and results were.
+ * <p/>
+ * Every measurement goes into a lock-free {@link Histogram}, so recording doesn't perturb the code being measured.
+ * Once {@link #register() registered}, the histograms can be read through JMX as {@link OcrMetricsMXBean}.
+ */
+public class OcrMetrics implements OcrMetricsMXBean {
+    private static final Logger logger = LoggerFactory.getLogger(OcrMetrics.class);
+    /** Name of the MBean once registered */
+    public static final String NAME = "org.threethan.universalreader:type=OcrMetrics";
+
+    /** A stage of OCR, whose latency is recorded separately */
+    public enum Stage {
+        /** Downloading trained data which wasn't available yet */
+        MODEL_DOWNLOAD,
+        /** Creating an engine & loading its model */
+        ENGINE_INIT,
+        /** Reading a displayed or copied image into the frame submitted for OCR */
+        IMAGE_CONVERSION,
+        /** Checking whether an image is likely to contain text */
+        TEXT_DETECTION,
+        /** Detecting the script of an image to choose its language */
+        SCRIPT_DETECTION,
+        /** Running all preprocessing steps */
+        PREPROCESSING,
+        /** Recognizing a preprocessed image, across all its tiles */
+        RECOGNITION,
+        /** A whole request, from when a worker took it to its result, including cache hits */
+        TOTAL
+    }
+
+    private final Map<Stage, Histogram> stageLatencies = new EnumMap<>(Stage.class);
+    private final Histogram queueWait = new Histogram();
+    private final Histogram imageSize = new Histogram();
+    private final Histogram outputLength = new Histogram();
+
+    /** Creates metrics with empty histograms */
+    public OcrMetrics() {
+        for (Stage stage : Stage.values()) stageLatencies.put(stage, new Histogram());
+    }
+
+    /**
+     * Records the latency of a stage
+     * @param stage Stage which ran
+     * @param nanos Time it took, in ns
+     */
+    public void recordStage(Stage stage, long nanos) {
+        stageLatencies.get(stage).record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    /**
+     * Records the latency of a stage which started at some time & just finished
+     * @param stage Stage which ran
+     * @param startTime Value of {@link System#nanoTime()} when it started
+     */
+    public void recordStageSince(Stage stage, long startTime) {
+        recordStage(stage, System.nanoTime() - startTime);
+    }
+
+    /**
+     * Records how long a request waited before a worker took it
+     * @param nanos Time between submission & the start of work, in ns
+     */
+    public void recordQueueWait(long nanos) {
+        queueWait.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    /**
+     * Records the size of a submitted image
+     * @param width Width in pixels
+     * @param height Height in pixels
+     */
+    public void recordImageSize(int width, int height) {
+        imageSize.record((long) width * height);
+    }
+
+    /**
+     * Records the length of a result
+     * @param text Recognized text
+     */
+    public void recordOutput(String text) {
+        outputLength.record(text.length());
+    }
+
+    @Override
+    public Map<String, Histogram.Snapshot> getStageLatencies() {
+        final Map<String, Histogram.Snapshot> snapshots = new LinkedHashMap<>();
+        stageLatencies.forEach((stage, histogram) -> {
+            final Histogram.Snapshot snapshot = histogram.snapshot();
+            if (snapshot.getCount() > 0) snapshots.put(stage.name(), snapshot);
+        });
+        return snapshots;
+    }
+
+    /**
+     * Gets the latency of one stage
+     * @param stage Stage to get
+     * @return Summary of its latencies, in µs
+     */
+    public Histogram.Snapshot getStageLatency(Stage stage) {
+        return stageLatencies.get(stage).snapshot();
+    }
+
+    @Override
+    public Histogram.Snapshot getQueueWait() {
+        return queueWait.snapshot();
+    }
+
+    @Override
+    public Histogram.Snapshot getImageSize() {
+        return imageSize.snapshot();
+    }
+
+    @Override
+    public Histogram.Snapshot getOutputLength() {
+        return outputLength.snapshot();
+    }
+
+    @Override
+    public void reset() {
+        stageLatencies.values().forEach(Histogram::reset);
+        queueWait.reset();
+        imageSize.reset();
+        outputLength.reset();
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server under {@link #NAME}, replacing any registered before.
+     * Failures are logged, since metrics are never required for OCR to work.
+     */
+    public void register() {
+        try {
+            final ObjectName name = new ObjectName(NAME);
+            final var server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) server.unregisterMBean(name);
+            server.registerMBean(this, name);
+        } catch (JMException | RuntimeException e) {
+            logger.warn("Failed to register OCR metrics with JMX: {}", e.getMessage());
+        }
+    }
+}
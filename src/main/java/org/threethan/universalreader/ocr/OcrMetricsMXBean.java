@@ -0,0 +1,23 @@
+package org.threethan.universalreader.ocr;
+
+import java.util.Map;
+
+/**
+ * Histograms of where OCR time goes, readable through JMX (such as from jconsole) under {@link OcrMetrics#NAME}
+ */
+public interface OcrMetricsMXBean {
+    /** Gets the latency of each stage of OCR which has run at least once, by stage name, in µs */
+    Map<String, Histogram.Snapshot> getStageLatencies();
+
+    /** Gets the time requests waited in the scheduler's queue before an OCR worker took them, in µs */
+    Histogram.Snapshot getQueueWait();
+
+    /** Gets the size of submitted images, in pixels */
+    Histogram.Snapshot getImageSize();
+
+    /** Gets the length of recognized text, in characters */
+    Histogram.Snapshot getOutputLength();
+
+    /** Clears all histograms */
+    void reset();
+}
@@ -0,0 +1,19 @@
+package org.threethan.universalreader.ocr;
+
+/**
+ * How urgently the result of OCR work is needed, from most to least urgent.
+ * <p/>
+ * Queued work of a more urgent class always runs first, and one worker is kept free for interactive work,
+ * so that explicit user actions stay responsive however much automatic work is queued behind them.
+ */
+public enum OcrPriority {
+    /** Explicitly requested by the user, such as opening an image file or pasting from the clipboard. The default. */
+    INTERACTIVE,
+    /** Started automatically, such as by an image being copied to a watched clipboard, or by a batch */
+    AUTO,
+    /** Speculative work whose result may never be needed, such as warming up engines */
+    PREFETCH;
+
+    /** Priority used if none is given */
+    public static final OcrPriority DEFAULT = INTERACTIVE;
+}
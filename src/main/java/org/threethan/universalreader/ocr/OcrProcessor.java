@@ -2,7 +2,14 @@ package org.threethan.universalreader.ocr;
 
 import java.awt.image.BufferedImage;
 import java.io.Serializable;
+import java.time.Duration;
 import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
 
 /**
@@ -15,15 +22,63 @@ public interface OcrProcessor {
     /**
      * A response from the server
      * @param ocrText Text extracted from the image
+     * @param boxes Where each word and line of the text is in the original image, and how confident the engine
+     *              was in each word. Empty for partial results and errors, or if the processor doesn't collect them.
      */
-    record Result(String ocrText) implements Serializable {}
+    record Result(String ocrText, WordBoxes boxes) implements Serializable {
+        /**
+         * Creates a result without any word boxes
+         * @param ocrText Text extracted from the image
+         */
+        public Result(String ocrText) {
+            this(ocrText, WordBoxes.EMPTY);
+        }
+
+        /**
+         * Creates a result showing why a request failed, in place of its text
+         * @param error Error the request's future failed with, which may be wrapped in a {@link CompletionException}
+         * @return Result containing the error's message, or null if the request was cancelled, such as when
+         *         superseded by a newer request, in which case nothing should be shown
+         */
+        public static Result ofError(Throwable error) {
+            if (error instanceof CompletionException && error.getCause() != null) error = error.getCause();
+            if (error instanceof CancellationException) return null;
+            if (error instanceof OcrException || error.getMessage() != null) return new Result(error.getMessage());
+            return new Result(error instanceof TimeoutException ? "Text recognition timed out" : error.toString());
+        }
+    }
 
     /**
      * A request from the client
      * @param image Image to submit
      * @param locale Preferred locale
+     * @param preprocessing Steps to run on the image before recognition
+     * @param profile Trade-off between recognition speed and accuracy
+     * @param priority How urgently the result is needed, compared to other requests
      */
-    record Request(BufferedImage image, Locale locale) implements Serializable {}
+    record Request(BufferedImage image, Locale locale, Set<ImagePreprocessor.Step> preprocessing,
+                   OcrProfile profile, OcrPriority priority) implements Serializable {
+        /**
+         * Creates an interactive request
+         * @param image Image to submit
+         * @param locale Preferred locale
+         * @param preprocessing Steps to run on the image before recognition
+         * @param profile Trade-off between recognition speed and accuracy
+         */
+        public Request(BufferedImage image, Locale locale, Set<ImagePreprocessor.Step> preprocessing,
+                       OcrProfile profile) {
+            this(image, locale, preprocessing, profile, OcrPriority.DEFAULT);
+        }
+
+        /**
+         * Creates an interactive request which uses the default preprocessing steps and profile
+         * @param image Image to submit
+         * @param locale Preferred locale
+         */
+        public Request(BufferedImage image, Locale locale) {
+            this(image, locale, ImagePreprocessor.DEFAULT_STEPS, OcrProfile.DEFAULT);
+        }
+    }
 
     /**
      * Submits an image to the server
@@ -31,4 +86,28 @@ public interface OcrProcessor {
      * @param responseConsumer Response from server (contains OCRed text)
      */
     void submitRequest(Request request, Consumer<Result> responseConsumer);
+
+    /**
+     * Submits an image, returning a future of its result.
+     * By default, errors still arrive as results, and cancelling the future doesn't stop recognition;
+     * processors which can do better override this.
+     * @param request Request containing the image to analyze
+     * @param timeout Time after which the future fails with a {@link java.util.concurrent.TimeoutException},
+     *                or null to wait as long as it takes
+     * @return Future of the result, which fails with an {@link OcrException} if the image couldn't be recognized
+     */
+    default CompletableFuture<Result> submit(Request request, Duration timeout) {
+        final CompletableFuture<Result> future = new CompletableFuture<>();
+        if (timeout != null) future.orTimeout(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        submitRequest(request, future::complete);
+        return future;
+    }
+
+    /**
+     * Prepares for requests in the background, such that the first request is handled as quickly as later ones.
+     * Does nothing by default.
+     * @param locale Locale which requests are likely to use
+     * @param profile Profile which requests are likely to use
+     */
+    default void warmUp(Locale locale, OcrProfile profile) {}
 }
\ No newline at end of file
@@ -0,0 +1,100 @@
+package org.threethan.universalreader.ocr;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Trade-offs between recognition speed and accuracy.
+ * <p/>
+ * Each profile selects a set of trained data and the engine settings used with it.
+ * The fast models (tessdata_fast) use integer weights and a smaller network than the best models,
+ * so they're stored side by side in their own directory, and are only downloaded if used.
+ */
+public enum OcrProfile {
+    /** The most accurate (float) models, with dictionaries. The default. */
+    ACCURATE("Accurate", "", "https://github.com/tesseract-ocr/tessdata_best/raw/main/", Map.of()),
+    /** The fast (integer) models, with dictionaries */
+    BALANCED("Balanced", "fast/", "https://github.com/tesseract-ocr/tessdata_fast/raw/main/", Map.of()),
+    /** The fast models without dictionary or language model passes, nor retrying lines as inverted text */
+    FAST("Fast", "fast/", "https://github.com/tesseract-ocr/tessdata_fast/raw/main/", Map.of(
+            "load_system_dawg", "0",
+            "load_freq_dawg", "0",
+            "load_punc_dawg", "0",
+            "load_number_dawg", "0",
+            "load_unambig_dawg", "0",
+            "load_bigram_dawg", "0",
+            "load_fixed_length_dawgs", "0",
+            "tessedit_do_invert", "0"));
+
+    /** Profile used if none is selected */
+    public static final OcrProfile DEFAULT = ACCURATE;
+    /** Name of the directory Tesseract looks for config files in, within a data directory */
+    static final String CONFIGS_DIR = "configs";
+
+    private final String label;
+    private final String subdirectory;
+    private final String modelUrl;
+    /** Variables applied when the model is loaded, since most engine settings can't be changed afterward */
+    private final Map<String, String> initVariables;
+
+    OcrProfile(String label, String subdirectory, String modelUrl, Map<String, String> initVariables) {
+        this.label = label;
+        this.subdirectory = subdirectory;
+        this.modelUrl = modelUrl;
+        this.initVariables = new TreeMap<>(initVariables);
+    }
+
+    /**
+     * Gets the directory containing this profile's trained data
+     * @param baseDataPath Directory containing the trained data of the default profile, ending with a slash
+     * @return Data path for this profile, ending with a slash
+     */
+    public String getDataPath(String baseDataPath) {
+        return baseDataPath + subdirectory;
+    }
+
+    /**
+     * Gets the URL to download this profile's trained data from
+     * @return Base URL, to which the trained data file name is appended
+     */
+    public String getModelUrl() {
+        return modelUrl;
+    }
+
+    /**
+     * Gets the variables set by this profile when an engine is initialized
+     * @return Unmodifiable map of Tesseract variable names to values
+     */
+    public Map<String, String> getInitVariables() {
+        return Map.copyOf(initVariables);
+    }
+
+    /**
+     * Writes this profile's config file into its data directory, if it has one and it's not already up to date.
+     * Tesseract only reads init-only variables, such as which dictionaries to load, from config files.
+     * @param baseDataPath Directory containing the trained data of the default profile, ending with a slash
+     * @return Names of the config files to initialize engines with, which may be empty
+     */
+    public synchronized List<String> writeConfigs(String baseDataPath) throws IOException {
+        if (initVariables.isEmpty()) return List.of();
+        final String configName = "universalreader-" + name().toLowerCase();
+        final Path configFile = Path.of(getDataPath(baseDataPath), CONFIGS_DIR, configName);
+        final StringBuilder content = new StringBuilder();
+        initVariables.forEach((key, value) -> content.append(key).append(' ').append(value).append('\n'));
+        if (!Files.exists(configFile) || !Files.readString(configFile).contentEquals(content)) {
+            Files.createDirectories(configFile.getParent());
+            Files.writeString(configFile, content, StandardCharsets.UTF_8);
+        }
+        return List.of(configName);
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
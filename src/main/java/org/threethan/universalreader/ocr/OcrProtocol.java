@@ -0,0 +1,305 @@
+package org.threethan.universalreader.ocr;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The messages exchanged by an {@link OcrServer} and its {@link RemoteOcrProcessor} clients.
+ * <p/>
+ * After a handshake, clients send requests, cancellations and warm-ups, and the server answers each request with
+ * any number of partial results followed by either a final result or an error, tagged with the request's id.
+ * Cancelled requests get no answer. Images are sent as raw 8-bit gray
+ * or 24-bit RGB pixels, compressed with Deflate, which is far smaller than serializing a {@link BufferedImage}
+ * and faster to encode than PNG. Alpha is dropped, since it doesn't affect recognition.
+ */
+final class OcrProtocol {
+    /** Sent by both sides when connecting: "USR" followed by the protocol version */
+    static final int MAGIC = 0x55535205;
+
+    /** Client message: recognize an image */
+    static final int REQUEST = 1;
+    /** Client message: prepare for requests in a locale & profile */
+    static final int WARM_UP = 2;
+    /** Client message: stop recognizing the image of a request, whose result is no longer wanted */
+    static final int CANCEL = 3;
+    /** Server message: part of the text of a request */
+    static final int PARTIAL = 1;
+    /** Server message: all text of a request, along with its word boxes */
+    static final int RESULT = 2;
+    /** Server message: the image of a request couldn't be recognized */
+    static final int ERROR = 3;
+
+    private static final int FORMAT_GRAY = 1;
+    private static final int FORMAT_RGB = 3;
+    /** Largest image accepted, in pixels, so a bad message can't run the server out of memory */
+    static final long MAX_PIXELS = 100_000_000;
+
+    private OcrProtocol() {}
+
+    /**
+     * Exchanges the magic number with the other side
+     * @throws IOException If the other side doesn't speak the same protocol version
+     */
+    static void handshake(DataInputStream in, DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.flush();
+        final int magic = in.readInt();
+        if (magic != MAGIC) throw new IOException(String.format("Unexpected protocol %08x", magic));
+    }
+
+    /** Writes a request, without its message type and id */
+    static void writeRequest(DataOutputStream out, OcrProcessor.Request request) throws IOException {
+        writeLocale(out, request.locale(), request.profile());
+        int steps = 0;
+        for (ImagePreprocessor.Step step : request.preprocessing()) steps |= 1 << step.ordinal();
+        out.writeInt(steps);
+        out.writeByte(request.priority().ordinal());
+        writeImage(out, request.image());
+    }
+
+    /** Reads a request written by {@link #writeRequest(DataOutputStream, OcrProcessor.Request)} */
+    static OcrProcessor.Request readRequest(DataInputStream in) throws IOException {
+        final Locale locale = readLocale(in);
+        final OcrProfile profile = readProfile(in);
+        final int steps = in.readInt();
+        final Set<ImagePreprocessor.Step> preprocessing = EnumSet.noneOf(ImagePreprocessor.Step.class);
+        for (ImagePreprocessor.Step step : ImagePreprocessor.Step.values())
+            if ((steps & 1 << step.ordinal()) != 0) preprocessing.add(step);
+        final int priority = in.readUnsignedByte();
+        if (priority >= OcrPriority.values().length) throw new IOException("Unknown priority " + priority);
+        return new OcrProcessor.Request(readImage(in), locale, preprocessing, profile,
+                OcrPriority.values()[priority]);
+    }
+
+    /** Writes a locale (which may be null) and profile */
+    static void writeLocale(DataOutputStream out, Locale locale, OcrProfile profile) throws IOException {
+        out.writeUTF(locale == null ? "" : locale.toLanguageTag());
+        out.writeUTF(profile.name());
+    }
+
+    /** Reads a locale written by {@link #writeLocale(DataOutputStream, Locale, OcrProfile)}, or null if none */
+    static Locale readLocale(DataInputStream in) throws IOException {
+        final String tag = in.readUTF();
+        return tag.isEmpty() ? null : Locale.forLanguageTag(tag);
+    }
+
+    /** Reads a profile written by {@link #writeLocale(DataOutputStream, Locale, OcrProfile)} */
+    static OcrProfile readProfile(DataInputStream in) throws IOException {
+        final String name = in.readUTF();
+        try {
+            return OcrProfile.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unknown profile " + name);
+        }
+    }
+
+    /** Writes text of any length as UTF-8 */
+    static void writeText(DataOutputStream out, String text) throws IOException {
+        final byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Reads text written by {@link #writeText(DataOutputStream, String)} */
+    static String readText(DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0) throw new IOException("Invalid text length " + length);
+        return new String(in.readNBytes(length), StandardCharsets.UTF_8);
+    }
+
+    /** Writes a final result, including its word boxes */
+    static void writeResult(DataOutputStream out, OcrProcessor.Result result) throws IOException {
+        writeText(out, result.ocrText());
+        final WordBoxes boxes = result.boxes();
+        out.writeInt(boxes.getWordCount());
+        for (int word = 0; word < boxes.getWordCount(); word++) {
+            writeBounds(out, boxes.getWordBounds(word));
+            out.writeFloat(boxes.getConfidence(word));
+            out.writeInt(boxes.getWordStart(word));
+            out.writeInt(boxes.getWordEnd(word));
+        }
+        out.writeInt(boxes.getLineCount());
+        for (int line = 0; line < boxes.getLineCount(); line++) {
+            writeBounds(out, boxes.getLineBounds(line));
+            out.writeInt(boxes.getLineStart(line));
+            out.writeInt(boxes.getLineEnd(line));
+        }
+    }
+
+    /** Reads a result written by {@link #writeResult(DataOutputStream, OcrProcessor.Result)} */
+    static OcrProcessor.Result readResult(DataInputStream in) throws IOException {
+        final String text = readText(in);
+        final WordBoxes.Builder boxes = new WordBoxes.Builder();
+        final int words = readCount(in);
+        for (int word = 0; word < words; word++)
+            boxes.addWord(readBounds(in), in.readFloat(), in.readInt(), in.readInt());
+        final int lines = readCount(in);
+        for (int line = 0; line < lines; line++) boxes.addLine(readBounds(in), in.readInt(), in.readInt());
+        return new OcrProcessor.Result(text, boxes.build());
+    }
+
+    /** Writes why a request failed */
+    static void writeError(DataOutputStream out, OcrException error) throws IOException {
+        out.writeByte(error.getReason().ordinal());
+        writeText(out, error.getMessage());
+    }
+
+    /** Reads an error written by {@link #writeError(DataOutputStream, OcrException)} */
+    static OcrException readError(DataInputStream in) throws IOException {
+        final int reason = in.readUnsignedByte();
+        if (reason >= OcrException.Reason.values().length) throw new IOException("Unknown error reason " + reason);
+        return new OcrException(OcrException.Reason.values()[reason], readText(in));
+    }
+
+    private static void writeBounds(DataOutputStream out, Rectangle bounds) throws IOException {
+        out.writeInt(bounds.x);
+        out.writeInt(bounds.y);
+        out.writeInt(bounds.width);
+        out.writeInt(bounds.height);
+    }
+
+    private static Rectangle readBounds(DataInputStream in) throws IOException {
+        return new Rectangle(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+    }
+
+    private static int readCount(DataInputStream in) throws IOException {
+        final int count = in.readInt();
+        if (count < 0) throw new IOException("Invalid count " + count);
+        return count;
+    }
+
+    /** Writes an image as compressed raw pixels, in gray if it's already gray */
+    static void writeImage(DataOutputStream out, BufferedImage image) throws IOException {
+        final int w = image.getWidth();
+        final int h = image.getHeight();
+        final boolean gray = image.getType() == BufferedImage.TYPE_BYTE_GRAY;
+        final byte[] pixels;
+        if (gray) {
+            pixels = ImagePreprocessor.grayPixels(image);
+        } else if (image.getType() == BufferedImage.TYPE_3BYTE_BGR) {
+            // The raster returns the bands of each pixel in RGB order
+            pixels = (byte[]) image.getRaster().getDataElements(0, 0, w, h, null);
+        } else {
+            pixels = new byte[w * h * 3];
+            final int[] row = new int[w];
+            for (int y = 0, i = 0; y < h; y++) {
+                image.getRGB(0, y, w, 1, row, 0, w);
+                for (int rgb : row) {
+                    pixels[i++] = (byte) (rgb >> 16);
+                    pixels[i++] = (byte) (rgb >> 8);
+                    pixels[i++] = (byte) rgb;
+                }
+            }
+        }
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(pixels);
+            deflater.finish();
+            final byte[] buffer = new byte[64 * 1024];
+            final ByteArrayOutputStream compressed = new ByteArrayOutputStream(pixels.length / 8 + 64);
+            while (!deflater.finished()) compressed.write(buffer, 0, deflater.deflate(buffer));
+            out.writeByte(gray ? FORMAT_GRAY : FORMAT_RGB);
+            out.writeInt(w);
+            out.writeInt(h);
+            out.writeInt(compressed.size());
+            compressed.writeTo(out);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /** Reads an image written by {@link #writeImage(DataOutputStream, BufferedImage)} */
+    static BufferedImage readImage(DataInputStream in) throws IOException {
+        final int format = in.readUnsignedByte();
+        final int w = in.readInt();
+        final int h = in.readInt();
+        final int compressedLength = in.readInt();
+        if (format != FORMAT_GRAY && format != FORMAT_RGB) throw new IOException("Unknown image format " + format);
+        if (w <= 0 || h <= 0 || (long) w * h > MAX_PIXELS || compressedLength < 0)
+            throw new IOException("Invalid image size " + w + "x" + h);
+
+        final byte[] pixels = new byte[w * h * format];
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(in.readNBytes(compressedLength));
+            int length = 0;
+            while (length < pixels.length && !inflater.finished())
+                length += inflater.inflate(pixels, length, pixels.length - length);
+            if (length < pixels.length) throw new IOException("Image data is truncated");
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+
+        if (format == FORMAT_GRAY) {
+            final BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_GRAY);
+            System.arraycopy(pixels, 0, ((DataBufferByte) image.getRaster().getDataBuffer()).getData(), 0, w * h);
+            return image;
+        }
+        final BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        final int[] row = new int[w];
+        for (int y = 0, i = 0; y < h; y++) {
+            for (int x = 0; x < w; x++, i += 3)
+                row[x] = (pixels[i] & 0xFF) << 16 | (pixels[i + 1] & 0xFF) << 8 | (pixels[i + 2] & 0xFF);
+            image.setRGB(0, y, w, 1, row, 0, w);
+        }
+        return image;
+    }
+
+    /**
+     * Opens a buffered stream which reads from a channel. Unlike {@link java.nio.channels.Channels#newInputStream},
+     * it may be used while another thread writes to the same channel.
+     */
+    static DataInputStream input(SocketChannel channel) {
+        return new DataInputStream(new BufferedInputStream(new InputStream() {
+            @Override
+            public int read() throws IOException {
+                final byte[] b = new byte[1];
+                return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return len == 0 ? 0 : channel.read(ByteBuffer.wrap(b, off, len));
+            }
+        }));
+    }
+
+    /**
+     * Opens a buffered stream which writes to a channel. Unlike {@link java.nio.channels.Channels#newOutputStream},
+     * it may be used while another thread reads from the same channel.
+     */
+    static DataOutputStream output(SocketChannel channel) {
+        return new DataOutputStream(new BufferedOutputStream(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                final ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+                while (buffer.hasRemaining()) channel.write(buffer);
+            }
+        }, 64 * 1024));
+    }
+}
@@ -0,0 +1,286 @@
+package org.threethan.universalreader.ocr;
+
+import org.threethan.universalreader.lib.ImageTools;
+
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A least-recently-used cache of OCR results, keyed by image content and recognition settings.
+ * <p/>
+ * Re-copying the same screenshot or opening it in another window doesn't need to run Tesseract again.
+ * Identical requests which arrive while the first is still being recognized wait for and share its result,
+ * rather than each running their own recognition. A shared recognition is only abandoned once every request
+ * waiting for it has been cancelled.
+ */
+public class OcrResultCache {
+    /** Default amount of memory cached results may take up, in bytes */
+    public static final long DEFAULT_MEMORY_BUDGET = 8 * 1024 * 1024;
+    /** Rough memory used by an entry beyond its text, in bytes */
+    private static final long ENTRY_OVERHEAD = 96;
+
+    /** Cached entries, in order of least to most recently used */
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    /** How often callers waiting on another's recognition check whether they've been cancelled, in ms */
+    private static final long CANCEL_POLL_INTERVAL = 50;
+
+    /** Recognitions which are currently running */
+    private final Map<Key, Flight> inFlight = new ConcurrentHashMap<>();
+    private long memoryBudget;
+    private long memoryUsed = 0;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder sharedHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder savedNanos = new LongAdder();
+
+    /** Creates a cache with the default memory budget */
+    public OcrResultCache() {
+        this(DEFAULT_MEMORY_BUDGET);
+    }
+
+    /**
+     * Creates a cache with a specific memory budget
+     * @param memoryBudget Amount of memory cached results may take up, in bytes
+     */
+    public OcrResultCache(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Identifies the content of a request
+     * @param fingerprint Hash of the image's pixels
+     * @param width Width of the image
+     * @param height Height of the image
+     * @param language Tesseract language code used for recognition
+     * @param profile Profile used for recognition
+     * @param preprocessing Preprocessing steps run before recognition
+     */
+    public record Key(long fingerprint, int width, int height, String language, OcrProfile profile,
+                      Set<ImagePreprocessor.Step> preprocessing) {
+        /**
+         * Creates a key for an image
+         * @param image Image to be recognized
+         * @param language Tesseract language code used for recognition
+         * @param profile Profile used for recognition
+         * @param preprocessing Preprocessing steps run before recognition
+         */
+        public static Key of(BufferedImage image, String language, OcrProfile profile,
+                             Set<ImagePreprocessor.Step> preprocessing) {
+            return new Key(OcrResultCache.fingerprint(image), image.getWidth(), image.getHeight(), language,
+                    profile, Set.copyOf(preprocessing));
+        }
+    }
+
+    /** A cached result, along with how long it originally took to compute */
+    private record Entry(OcrProcessor.Result result, long computeNanos) {
+        long size() {
+            return ENTRY_OVERHEAD + result.ocrText().length() * 2L + result.boxes().memorySize();
+        }
+    }
+
+    /** Computes a result which may be abandoned partway through */
+    @FunctionalInterface
+    public interface Computation {
+        /**
+         * Computes a result
+         * @param abandoned Returns true once every caller waiting for the result has been cancelled,
+         *                  at which point the computation should stop by throwing a {@link CancellationException}
+         * @return Computed result
+         */
+        OcrProcessor.Result compute(BooleanSupplier abandoned) throws Exception;
+    }
+
+    /**
+     * A recognition which is currently running
+     * @param future Completed with the result once it's computed
+     * @param cancelled Checks of whether each waiting caller has been cancelled
+     */
+    private record Flight(CompletableFuture<OcrProcessor.Result> future, List<BooleanSupplier> cancelled) {
+        Flight(BooleanSupplier cancelled) {
+            this(new CompletableFuture<>(), new CopyOnWriteArrayList<>(List.of(cancelled)));
+        }
+
+        boolean isAbandoned() {
+            return cancelled.stream().allMatch(BooleanSupplier::getAsBoolean);
+        }
+    }
+
+    /**
+     * Gets the cached result for a key, or computes it if not cached.
+     * If the same key is already being computed, waits for and returns that result instead.
+     * @param key Key identifying the image and language
+     * @param compute Computes the result if needed; its exceptions are passed on to all waiting callers
+     * @return Result for the key
+     */
+    public OcrProcessor.Result get(Key key, Callable<OcrProcessor.Result> compute) throws Exception {
+        return get(key, abandoned -> compute.call(), () -> false);
+    }
+
+    /**
+     * Gets the cached result for a key, or computes it if not cached.
+     * If the same key is already being computed, waits for and returns that result instead.
+     * @param key Key identifying the image and language
+     * @param compute Computes the result if needed; its exceptions are passed on to all waiting callers
+     * @param cancelled Returns true once the caller no longer wants the result
+     * @return Result for the key
+     * @throws CancellationException If the caller was cancelled before the result was ready
+     */
+    public OcrProcessor.Result get(Key key, Computation compute, BooleanSupplier cancelled) throws Exception {
+        while (true) {
+            final OcrProcessor.Result cached = getCached(key);
+            if (cached != null) return cached;
+
+            final Flight flight = new Flight(cancelled);
+            final Flight existing = inFlight.putIfAbsent(key, flight);
+            if (existing == null) return compute(key, flight, compute);
+            existing.cancelled().add(cancelled);
+            try {
+                final OcrProcessor.Result result = await(existing.future(), cancelled);
+                // Counted only once shared, since an abandoned flight is retried and may then be computed here
+                hits.increment();
+                sharedHits.increment();
+                return result;
+            } catch (CancellationException e) {
+                // Abandoned by everyone else just before this caller joined, so try again
+                if (!cancelled.getAsBoolean()) continue;
+                throw e;
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception cause) throw cause;
+                throw e;
+            }
+        }
+    }
+
+    /** Computes the result of a flight registered by the calling thread, sharing it with anyone waiting */
+    private OcrProcessor.Result compute(Key key, Flight flight, Computation compute) throws Exception {
+        final CompletableFuture<OcrProcessor.Result> future = flight.future();
+        try {
+            // Another caller may have finished computing this just before we registered
+            final OcrProcessor.Result raced = getCached(key);
+            if (raced != null) {
+                future.complete(raced);
+                return raced;
+            }
+            misses.increment();
+            final long startTime = System.nanoTime();
+            final OcrProcessor.Result result = compute.compute(flight::isAbandoned);
+            put(key, new Entry(result, System.nanoTime() - startTime));
+            future.complete(result);
+            return result;
+        } catch (Exception | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    /** Waits for another caller's result, giving up if this caller is cancelled first */
+    private static OcrProcessor.Result await(CompletableFuture<OcrProcessor.Result> future,
+                                             BooleanSupplier cancelled)
+            throws ExecutionException, InterruptedException {
+        while (true) {
+            try {
+                return future.get(CANCEL_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (cancelled.getAsBoolean()) throw new CancellationException();
+            }
+        }
+    }
+
+    /** Gets an entry's result if cached, counting the hit */
+    private synchronized OcrProcessor.Result getCached(Key key) {
+        final Entry entry = entries.get(key);
+        if (entry == null) return null;
+        hits.increment();
+        savedNanos.add(entry.computeNanos());
+        return entry.result();
+    }
+
+    /** Adds an entry, evicting the least recently used entries if over budget */
+    private synchronized void put(Key key, Entry entry) {
+        if (entry.size() > memoryBudget) return;
+        final Entry previous = entries.put(key, entry);
+        if (previous != null) memoryUsed -= previous.size();
+        memoryUsed += entry.size();
+        evict();
+    }
+
+    /** Evicts the least recently used entries until within budget */
+    private synchronized void evict() {
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext() && memoryUsed > memoryBudget;) {
+            memoryUsed -= it.next().size();
+            it.remove();
+        }
+    }
+
+    /**
+     * Sets the amount of memory cached results may take up, evicting entries if needed
+     * @param memoryBudget Budget in bytes
+     */
+    public synchronized void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+        evict();
+    }
+
+    /** Removes all cached entries */
+    public synchronized void clear() {
+        entries.clear();
+        memoryUsed = 0;
+    }
+
+    /** Gets the number of cached entries */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /** Gets the approximate memory used by cached entries, in bytes */
+    public synchronized long getMemoryUsed() {
+        return memoryUsed;
+    }
+
+    /** Gets the number of requests answered without running a new recognition */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /** Gets the number of hits which waited on an identical recognition already in progress */
+    public long getSharedHitCount() {
+        return sharedHits.sum();
+    }
+
+    /** Gets the number of requests which required a new recognition */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /** Gets the total recognition time saved by finished cached entries, in ns */
+    public long getSavedNanos() {
+        return savedNanos.sum();
+    }
+
+    /**
+     * Hashes the content of an image
+     * @param image Image to hash
+     * @return 64-bit hash of the image's type, size & pixels
+     * @see ImageTools#fingerprint(BufferedImage)
+     */
+    static long fingerprint(BufferedImage image) {
+        return ImageTools.fingerprint(image);
+    }
+}
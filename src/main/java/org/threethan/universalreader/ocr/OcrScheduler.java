@@ -0,0 +1,178 @@
+package org.threethan.universalreader.ocr;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Runs OCR work on a fixed pool of worker threads, with latest-wins semantics per owner.
+ * <p/>
+ * Each owner (typically one processor per window) has at most one pending job.
+ * Submitting a new job supersedes the previous one: if it's still queued it's dropped before it
+ * reaches the engine, and if it's already running it can check {@link Ticket#isCurrent()}
+ * to avoid delivering a stale result.
+ * <p/>
+ * Each job has an {@link OcrPriority}. Queued jobs of a more urgent class always start first,
+ * and jobs of the same class start in the order they were submitted. With more than one worker,
+ * one worker only ever runs interactive jobs, so that they don't wait for slow background jobs to finish.
+ */
+public class OcrScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(OcrScheduler.class);
+
+    /** The most recent ticket of each owner */
+    private final Map<Object, Ticket> latestTickets = new ConcurrentHashMap<>();
+    /** Queued jobs of each priority, oldest first. Also guards itself and wakes idle workers. */
+    private final Map<OcrPriority, ArrayDeque<Ticket>> queues = new EnumMap<>(OcrPriority.class);
+
+    /** Creates a scheduler with one worker per available core */
+    public OcrScheduler() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a scheduler with a fixed number of workers
+     * @param workers Number of worker threads. If more than one, one of them is reserved for interactive jobs.
+     */
+    public OcrScheduler(int workers) {
+        for (OcrPriority priority : OcrPriority.values()) queues.put(priority, new ArrayDeque<>());
+        for (int i = 0; i < workers; i++) {
+            final boolean reserved = i == 0 && workers > 1;
+            final Thread thread = new Thread(() -> work(reserved), "OCR Worker " + (i + 1));
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Submits an interactive job, superseding any job previously submitted by the same owner
+     * @param owner Owner of the job; only its most recent job's result should be used
+     * @param job Work to run on a worker thread, which receives its own ticket
+     * @return Ticket for the submitted job
+     */
+    public Ticket submit(Object owner, Consumer<Ticket> job) {
+        return submit(owner, OcrPriority.DEFAULT, job);
+    }
+
+    /**
+     * Submits a job, superseding any job previously submitted by the same owner
+     * @param owner Owner of the job; only its most recent job's result should be used
+     * @param priority How urgently the job's result is needed
+     * @param job Work to run on a worker thread, which receives its own ticket
+     * @return Ticket for the submitted job
+     */
+    public Ticket submit(Object owner, OcrPriority priority, Consumer<Ticket> job) {
+        final Ticket ticket = new Ticket(owner, priority, job);
+        final Ticket previous = latestTickets.put(owner, ticket);
+        if (previous != null) previous.supersede();
+        synchronized (queues) {
+            queues.get(priority).addLast(ticket);
+            queues.notifyAll();
+        }
+        return ticket;
+    }
+
+    /** Runs queued jobs until the scheduler's threads are stopped */
+    private void work(boolean interactiveOnly) {
+        try {
+            while (true) {
+                Ticket ticket;
+                synchronized (queues) {
+                    while ((ticket = poll(interactiveOnly)) == null) queues.wait();
+                }
+                ticket.run();
+            }
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    /** Takes the next job to run, or returns null if none are queued. Must hold the lock on queues. */
+    private Ticket poll(boolean interactiveOnly) {
+        for (OcrPriority priority : OcrPriority.values()) {
+            if (interactiveOnly && priority != OcrPriority.INTERACTIVE) break;
+            final Ticket ticket = queues.get(priority).pollFirst();
+            if (ticket != null) return ticket;
+        }
+        return null;
+    }
+
+    /**
+     * Gets the number of jobs which are waiting for a worker
+     * @return Number of queued jobs
+     */
+    public int getQueueDepth() {
+        synchronized (queues) {
+            return queues.values().stream().mapToInt(ArrayDeque::size).sum();
+        }
+    }
+
+    /**
+     * Gets the number of jobs of a priority which are waiting for a worker
+     * @param priority Priority of the jobs to count
+     * @return Number of queued jobs of the priority
+     */
+    public int getQueueDepth(OcrPriority priority) {
+        synchronized (queues) {
+            return queues.get(priority).size();
+        }
+    }
+
+    /** A handle on a single submitted job */
+    public class Ticket {
+        private final Object owner;
+        private final OcrPriority priority;
+        private final Consumer<Ticket> job;
+
+        private Ticket(Object owner, OcrPriority priority, Consumer<Ticket> job) {
+            this.owner = owner;
+            this.priority = priority;
+            this.job = job;
+        }
+
+        /**
+         * Checks whether this is still the most recent job of its owner
+         * @return False if a newer job has been submitted by the same owner
+         */
+        public boolean isCurrent() {
+            return latestTickets.get(owner) == this;
+        }
+
+        /** Gets how urgently the job's result is needed */
+        public OcrPriority getPriority() {
+            return priority;
+        }
+
+        /** Runs the job on the current thread, unless it was superseded while queued */
+        private void run() {
+            try {
+                if (isCurrent()) job.accept(this);
+            } catch (RuntimeException e) {
+                logger.error("OCR job failed", e);
+            } finally {
+                latestTickets.remove(owner, this);
+            }
+        }
+
+        /**
+         * Drops the job if it hasn't started yet, such as when its result is no longer wanted.
+         * A running job isn't interrupted, so it should check whether it's still wanted itself.
+         * @return True if the job was dropped before it started
+         */
+        public boolean cancel() {
+            synchronized (queues) {
+                if (!queues.get(priority).remove(this)) return false;
+            }
+            latestTickets.remove(owner, this);
+            return true;
+        }
+
+        /** Drops the job if it hasn't started yet */
+        private void supersede() {
+            if (cancel()) logger.debug("Dropped superseded OCR request before it started");
+        }
+    }
+}
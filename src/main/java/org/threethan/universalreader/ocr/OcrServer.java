@@ -0,0 +1,215 @@
+package org.threethan.universalreader.ocr;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * A long-running local server which recognizes images for {@link RemoteOcrProcessor} clients,
+ * so that several instances of the app share one set of loaded models instead of each loading their own.
+ * <p/>
+ * Listens on a loopback TCP port or a Unix domain socket. Each connection gets its own processor, so that
+ * each client window keeps latest-wins semantics, while all of them share the processors' engine pool,
+ * scheduler queue and result cache. Identical images sent by several clients at once are therefore
+ * only recognized once, and engines stay warm between requests.
+ * Requests which a client cancels, or which are left unfinished when it disconnects, are cancelled on the server too.
+ */
+public class OcrServer implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(OcrServer.class);
+
+    /** Address used by the server and clients if none is given */
+    public static final SocketAddress DEFAULT_ADDRESS =
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 47621);
+
+    private final ServerSocketChannel serverChannel;
+    private final Supplier<? extends StreamingOcrProcessor> processorSupplier;
+    private final Set<SocketChannel> connections = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger connectionCount = new AtomicInteger();
+
+    /**
+     * Binds a server which recognizes images with Tesseract
+     * @param address Loopback address or Unix domain socket path to listen on
+     * @throws IOException If the address is in use
+     */
+    public OcrServer(SocketAddress address) throws IOException {
+        this(address, TesseractOcrProcessor::new);
+    }
+
+    /**
+     * Binds a server
+     * @param address Loopback address or Unix domain socket path to listen on
+     * @param processorSupplier Creates the processor used by each connection
+     * @throws IOException If the address is in use
+     */
+    public OcrServer(SocketAddress address, Supplier<? extends StreamingOcrProcessor> processorSupplier)
+            throws IOException {
+        this.processorSupplier = processorSupplier;
+        if (address instanceof UnixDomainSocketAddress unixAddress) {
+            // A socket file left behind by a server which didn't shut down cleanly would prevent binding
+            Files.deleteIfExists(unixAddress.getPath());
+            serverChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        } else {
+            serverChannel = ServerSocketChannel.open();
+        }
+        serverChannel.bind(address);
+    }
+
+    /**
+     * Gets the address the server is listening on, including the port chosen if port 0 was requested
+     * @return Bound address
+     * @throws IOException If the server is closed
+     */
+    public SocketAddress getAddress() throws IOException {
+        return serverChannel.getLocalAddress();
+    }
+
+    /** Accepts connections on a background daemon thread */
+    public void start() {
+        final Thread thread = new Thread(this::run, "OCR Server");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Accepts connections until the server is closed, handling each on its own thread */
+    public void run() {
+        try {
+            logger.info("OCR server listening on {}", getAddress());
+            while (serverChannel.isOpen()) {
+                final SocketChannel channel = serverChannel.accept();
+                connections.add(channel);
+                final Thread thread = new Thread(() -> serve(channel),
+                        "OCR Server Connection " + connectionCount.incrementAndGet());
+                thread.setDaemon(true);
+                thread.start();
+            }
+        } catch (AsynchronousCloseException ignored) {
+        } catch (IOException e) {
+            logger.error("OCR server stopped: {}", e.getMessage());
+        }
+    }
+
+    /** Reads & handles messages from one client until it disconnects */
+    private void serve(SocketChannel channel) {
+        final StreamingOcrProcessor processor = processorSupplier.get();
+        // Requests of this client which haven't finished yet, by id
+        final Map<Long, CompletableFuture<OcrProcessor.Result>> requests = new ConcurrentHashMap<>();
+        try (channel) {
+            final DataInputStream in = OcrProtocol.input(channel);
+            final DataOutputStream out = OcrProtocol.output(channel);
+            OcrProtocol.handshake(in, out);
+            while (true) {
+                final int type = in.readUnsignedByte();
+                switch (type) {
+                    case OcrProtocol.REQUEST -> {
+                        final long id = in.readLong();
+                        final CompletableFuture<OcrProcessor.Result> future = processor.submit(
+                                OcrProtocol.readRequest(in), partial -> send(out, OcrProtocol.PARTIAL, id, partial),
+                                null);
+                        requests.put(id, future);
+                        future.whenComplete((result, error) -> {
+                            requests.remove(id, future);
+                            if (result != null) send(out, OcrProtocol.RESULT, id, result);
+                            else if (error instanceof OcrException e) sendError(out, id, e);
+                            else if (!(error instanceof CancellationException)) sendError(out, id, new OcrException(
+                                    OcrException.Reason.ENGINE_FAILED, "OCR had an error!", error));
+                        });
+                    }
+                    case OcrProtocol.CANCEL -> {
+                        final CompletableFuture<OcrProcessor.Result> future = requests.remove(in.readLong());
+                        if (future != null) future.cancel(false);
+                    }
+                    case OcrProtocol.WARM_UP ->
+                            processor.warmUp(OcrProtocol.readLocale(in), OcrProtocol.readProfile(in));
+                    default -> throw new IOException("Unknown message type " + type);
+                }
+            }
+        } catch (EOFException | AsynchronousCloseException ignored) {
+        } catch (IOException e) {
+            logger.warn("Closed OCR client connection: {}", e.getMessage());
+        } finally {
+            connections.remove(channel);
+            // Nobody is left to receive the results
+            for (CompletableFuture<OcrProcessor.Result> future : requests.values()) future.cancel(false);
+        }
+    }
+
+    /** Sends a result to a client, if it's still connected */
+    private static void send(DataOutputStream out, int type, long id, OcrProcessor.Result result) {
+        try {
+            synchronized (out) {
+                out.writeByte(type);
+                out.writeLong(id);
+                if (type == OcrProtocol.RESULT) OcrProtocol.writeResult(out, result);
+                else OcrProtocol.writeText(out, result.ocrText());
+                out.flush();
+            }
+        } catch (IOException e) {
+            logger.debug("Couldn't send OCR result: {}", e.getMessage());
+        }
+    }
+
+    /** Sends why a request failed to a client, if it's still connected */
+    private static void sendError(DataOutputStream out, long id, OcrException error) {
+        try {
+            synchronized (out) {
+                out.writeByte(OcrProtocol.ERROR);
+                out.writeLong(id);
+                OcrProtocol.writeError(out, error);
+                out.flush();
+            }
+        } catch (IOException e) {
+            logger.debug("Couldn't send OCR error: {}", e.getMessage());
+        }
+    }
+
+    /** Stops accepting connections and disconnects all clients */
+    @Override
+    public void close() throws IOException {
+        final SocketAddress address = serverChannel.getLocalAddress();
+        serverChannel.close();
+        for (SocketChannel channel : connections) channel.close();
+        if (address instanceof UnixDomainSocketAddress unixAddress) Files.deleteIfExists(unixAddress.getPath());
+    }
+
+    /**
+     * Runs a server until the process is stopped.
+     * Accepts "--port &lt;port&gt;" to listen on another loopback port, or "--unix &lt;path&gt;" to use a socket file.
+     */
+    public static void main(String[] args) throws IOException {
+        SocketAddress address = DEFAULT_ADDRESS;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--port" -> address = new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                        Integer.parseInt(args[i + 1]));
+                case "--unix" -> address = UnixDomainSocketAddress.of(Path.of(args[i + 1]));
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        TesseractOcrProcessor.registerMetrics();
+        try (OcrServer server = new OcrServer(address)) {
+            server.run();
+        }
+    }
+}
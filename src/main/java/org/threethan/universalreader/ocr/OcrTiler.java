@@ -0,0 +1,540 @@
+package org.threethan.universalreader.ocr;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Splits large images into tiles which can be recognized in parallel, then stitches their text back together.
+ * <p/>
+ * Images are first split into columns at wide vertical gutters, then each column is split into horizontal bands,
+ * preferably at blank rows between lines. Where no blank row is near enough, bands overlap so no line is cut
+ * in half, and lines in the overlap are kept from only one band when stitching, going by their boxes.
+ * Text is returned column by column, top to bottom.
+ * <p/>
+ * Images smaller than {@link #getMinTiledArea()} are recognized with a single call, since splitting them
+ * would cost more than it saves.
+ * <p/>
+ * Given the {@link Layout} of a previous image of the same size, only tiles whose pixels (or those near them)
+ * have changed are recognized again, and the text of the rest is reused.
+ */
+public class OcrTiler {
+    private static final Logger logger = LoggerFactory.getLogger(OcrTiler.class);
+
+    /** Default minimum area, in pixels, of an image before it's split into tiles */
+    public static final long DEFAULT_MIN_TILED_AREA = 1_500_000;
+    /** Difference in luminance from the background for a pixel to count as content */
+    private static final int INK_TOLERANCE = 48;
+    /** Minimum height of a band, in pixels */
+    private static final int MIN_BAND_HEIGHT = 160;
+    /** Minimum width of a column, in pixels */
+    private static final int MIN_COLUMN_WIDTH = 200;
+    /** Rows shared by bands on either side of a cut which isn't on a blank row */
+    private static final int OVERLAP = 32;
+    /** Distance from the edge of a band within which a line's box counts as cut off by it, in pixels */
+    private static final int EDGE_TOLERANCE = 1;
+    /** Pixels around a tile which are also compared, so text touching its edges is recognized again */
+    private static final int DIFF_MARGIN = 8;
+
+    /** Called to recognize each tile, or the whole image if it isn't split */
+    @FunctionalInterface
+    public interface Recognizer {
+        /**
+         * Recognizes an image
+         * @param tile Image to recognize
+         * @param partialConsumer May be given text as it's recognized, as described by
+         *                        {@link #recognize(BufferedImage, Recognizer, Consumer)}
+         * @return Text of the image
+         */
+        String recognize(BufferedImage tile, Consumer<String> partialConsumer) throws Exception;
+
+        /**
+         * Recognizes an image, also collecting its words & lines. By default, none are collected.
+         * @param tile Image to recognize
+         * @param partialConsumer May be given text as it's recognized
+         * @param boxes Receives the words and lines of the returned text, in the tile's coordinates
+         * @return Text of the image
+         */
+        default String recognize(BufferedImage tile, Consumer<String> partialConsumer, WordBoxes.Builder boxes)
+                throws Exception {
+            return recognize(tile, partialConsumer);
+        }
+    }
+
+    /**
+     * A region of an image to be recognized separately
+     * @param bounds Region within the image
+     * @param column Index of the column this tile is part of
+     * @param overlapsPrevious Whether this tile overlaps the tile above it, so its first lines may be duplicates
+     */
+    public record Tile(Rectangle bounds, int column, boolean overlapsPrevious) {}
+
+    /**
+     * A recognized image, split into tiles, which a later image can be compared against
+     * @param image Image which was recognized
+     * @param tiles Tiles of the image, in reading order
+     * @param texts Text of each tile
+     * @param tileBoxes Words and lines of each tile, in the tile's coordinates
+     * @param text Text of the whole image, in reading order
+     * @param boxes Words and lines of the whole image
+     */
+    public record Layout(BufferedImage image, List<Tile> tiles, List<String> texts, List<WordBoxes> tileBoxes,
+                         String text, WordBoxes boxes) {}
+
+    private final ForkJoinPool pool;
+    private volatile long minTiledArea = DEFAULT_MIN_TILED_AREA;
+
+    /** Creates a tiler which recognizes up to as many tiles at once as the engine pool allows by default */
+    public OcrTiler() {
+        this(TesseractEnginePool.DEFAULT_MAX_ENGINES);
+    }
+
+    /**
+     * Creates a tiler which recognizes a fixed number of tiles at once
+     * @param parallelism Maximum number of tiles recognized at once, across all images
+     */
+    public OcrTiler(int parallelism) {
+        pool = new ForkJoinPool(parallelism, forkJoinPool -> {
+            final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            thread.setName("OCR Tile Worker " + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * Recognizes an image, splitting it into tiles recognized in parallel if it's large enough
+     * @param image Image to recognize, ideally already preprocessed
+     * @param recognizer Recognizes a single tile; called concurrently from multiple threads
+     * @return Text of the whole image, in reading order
+     */
+    public String recognize(BufferedImage image, Recognizer recognizer) throws Exception {
+        return recognize(image, recognizer, text -> {});
+    }
+
+    /**
+     * Recognizes an image, splitting it into tiles recognized in parallel if it's large enough.
+     * Text is passed on as soon as it and all text before it has been recognized.
+     * @param image Image to recognize, ideally already preprocessed
+     * @param recognizer Recognizes a single tile; called concurrently from multiple threads
+     * @param partialConsumer Receives text in reading order, including any separating whitespace,
+     *                        such that all text it receives joined together is the returned text
+     * @return Text of the whole image, in reading order
+     */
+    public String recognize(BufferedImage image, Recognizer recognizer, Consumer<String> partialConsumer)
+            throws Exception {
+        return recognize(image, null, recognizer, partialConsumer).text();
+    }
+
+    /**
+     * Recognizes an image, only recognizing the tiles which changed since a previous image.
+     * Text is passed on as soon as it and all text before it has been recognized.
+     * @param image Image to recognize, ideally already preprocessed the same way as the previous image
+     * @param previous Layout of the previous image, or null to recognize the whole image
+     * @param recognizer Recognizes a single tile; called concurrently from multiple threads
+     * @param partialConsumer Receives text in reading order, including any separating whitespace,
+     *                        such that all text it receives joined together is the returned text
+     * @return Layout of the image, including its text
+     */
+    public Layout recognize(BufferedImage image, Layout previous, Recognizer recognizer,
+                            Consumer<String> partialConsumer) throws Exception {
+        boolean[] dirty = previous == null ? null : dirtyTiles(previous, image);
+        final List<Tile> tiles;
+        if (dirty != null) {
+            tiles = previous.tiles();
+        } else {
+            tiles = layout(image);
+            dirty = new boolean[tiles.size()];
+            Arrays.fill(dirty, true);
+        }
+
+        if (tiles.size() == 1) {
+            final String text;
+            final WordBoxes boxes;
+            if (dirty[0]) {
+                final WordBoxes.Builder builder = new WordBoxes.Builder();
+                text = recognizer.recognize(image, partialConsumer, builder);
+                boxes = builder.build();
+            } else {
+                text = previous.texts().get(0);
+                boxes = previous.tileBoxes().get(0);
+                if (!text.isEmpty()) partialConsumer.accept(text);
+            }
+            return new Layout(image, tiles, List.of(text), List.of(boxes), text, boxes);
+        }
+
+        final Stitcher stitcher = new Stitcher(tiles, partialConsumer);
+        final List<Future<?>> futures = new ArrayList<>(tiles.size());
+        int dirtyCount = 0;
+        for (int i = 0; i < tiles.size(); i++) {
+            if (dirty[i]) dirtyCount++;
+            else stitcher.complete(i, previous.texts().get(i), previous.tileBoxes().get(i));
+        }
+        logger.debug("Recognizing {} of {} tiles of {}x{} image", dirtyCount, tiles.size(),
+                image.getWidth(), image.getHeight());
+        for (int i = 0; i < tiles.size(); i++) {
+            if (!dirty[i]) continue;
+            final int index = i;
+            final Rectangle b = tiles.get(i).bounds();
+            futures.add(pool.submit(() -> {
+                final WordBoxes.Builder boxes = new WordBoxes.Builder();
+                final String text =
+                        recognizer.recognize(image.getSubimage(b.x, b.y, b.width, b.height), partial -> {}, boxes);
+                stitcher.complete(index, text, boxes.build());
+                return null;
+            }));
+        }
+        try {
+            for (Future<?> future : futures) future.get();
+        } catch (ExecutionException e) {
+            for (Future<?> future : futures) future.cancel(false);
+            if (e.getCause() instanceof Exception cause) throw cause;
+            throw e;
+        }
+        return new Layout(image, tiles, stitcher.getTexts(), stitcher.getTileBoxes(),
+                stitcher.getText(), stitcher.getBoxes());
+    }
+
+    /**
+     * Splits an image into tiles if it's large enough
+     * @param image Image to split
+     * @return Tiles in reading order, or a single tile covering the whole image
+     */
+    private List<Tile> layout(BufferedImage image) {
+        final Tile whole = new Tile(new Rectangle(0, 0, image.getWidth(), image.getHeight()), 0, false);
+        if ((long) image.getWidth() * image.getHeight() < minTiledArea) return List.of(whole);
+        final List<Tile> tiles = split(image, pool.getParallelism());
+        return tiles.size() <= 1 ? List.of(whole) : tiles;
+    }
+
+    /**
+     * Compares an image to a previously recognized one, tile by tile
+     * @param previous Layout of the previous image
+     * @param image New image
+     * @return Whether each tile of the previous layout needs to be recognized again,
+     *         or null if the layout can't be reused, such as if the images differ in size
+     *         or text may now cross the edge between tiles
+     */
+    static boolean[] dirtyTiles(Layout previous, BufferedImage image) {
+        final BufferedImage old = previous.image();
+        final int w = image.getWidth();
+        final int h = image.getHeight();
+        if (old.getWidth() != w || old.getHeight() != h) return null;
+
+        // Horizontal extent of the changes in each row, or -1 if the row is unchanged
+        final int[] minX = new int[h];
+        final int[] maxX = new int[h];
+        final int[] oldRow = new int[w];
+        final int[] newRow = new int[w];
+        for (int y = 0; y < h; y++) {
+            old.getRGB(0, y, w, 1, oldRow, 0, w);
+            image.getRGB(0, y, w, 1, newRow, 0, w);
+            minX[y] = -1;
+            for (int x = 0; x < w; x++) {
+                if (oldRow[x] == newRow[x]) continue;
+                if (minX[y] < 0) minX[y] = x;
+                maxX[y] = x;
+            }
+        }
+
+        final List<Tile> tiles = previous.tiles();
+        final boolean[] dirty = new boolean[tiles.size()];
+        for (int i = 0; i < tiles.size(); i++) {
+            final Tile tile = tiles.get(i);
+            final Rectangle b = tile.bounds();
+            // Cuts were made on blank rows and gutters, which may no longer be blank
+            if (b.y > 0 && !tile.overlapsPrevious() && changedWithin(minX, maxX, b.y, b.y + 1, b.x, b.x + b.width))
+                return null;
+            if (b.x > 0 && changedWithin(minX, maxX, b.y, b.y + b.height, b.x, b.x + 1))
+                return null;
+            dirty[i] = changedWithin(minX, maxX, b.y - DIFF_MARGIN, b.y + b.height + DIFF_MARGIN,
+                    b.x - DIFF_MARGIN, b.x + b.width + DIFF_MARGIN);
+        }
+        return dirty;
+    }
+
+    /** Checks whether any changes were found within an area, given the extent of the changes in each row */
+    private static boolean changedWithin(int[] minX, int[] maxX, int top, int bottom, int left, int right) {
+        for (int y = Math.max(0, top); y < Math.min(minX.length, bottom); y++)
+            if (minX[y] >= 0 && minX[y] < right && maxX[y] >= left) return true;
+        return false;
+    }
+
+    /**
+     * Splits an image into tiles, in reading order
+     * @param image Image to split
+     * @param targetBands Preferred number of bands per column
+     * @return Tiles covering all content of the image
+     */
+    static List<Tile> split(BufferedImage image, int targetBands) {
+        final int w = image.getWidth();
+        final int h = image.getHeight();
+        final byte[] pixels = ImagePreprocessor.grayPixels(image);
+        final int background = ImagePreprocessor.backgroundLuminance(pixels, w, h);
+
+        // Count content pixels in each column to find gutters
+        final int[] columnInk = new int[w];
+        for (int y = 0; y < h; y++) {
+            final int offset = y * w;
+            for (int x = 0; x < w; x++)
+                if (Math.abs((pixels[offset + x] & 0xFF) - background) > INK_TOLERANCE) columnInk[x]++;
+        }
+        final List<int[]> columns = segments(columnInk, Math.max(24, w / 40), MIN_COLUMN_WIDTH);
+
+        final List<Tile> tiles = new ArrayList<>();
+        for (int c = 0; c < columns.size(); c++) {
+            final int left = columns.get(c)[0];
+            final int right = columns.get(c)[1];
+            final boolean[] blankRows = new boolean[h];
+            for (int y = 0; y < h; y++) {
+                final int offset = y * w;
+                boolean blank = true;
+                for (int x = left; x < right && blank; x++)
+                    blank = Math.abs((pixels[offset + x] & 0xFF) - background) <= INK_TOLERANCE;
+                blankRows[y] = blank;
+            }
+            addBands(tiles, c, left, right, blankRows, targetBands);
+        }
+        return tiles;
+    }
+
+    /**
+     * Finds runs of content separated by wide enough gaps
+     * @param ink Amount of content at each position
+     * @param minGap Minimum length of an empty run to separate segments
+     * @param minSegment Minimum length of a segment; narrower segments are merged with their neighbour
+     * @return Start (inclusive) and end (exclusive) of each segment, covering the whole range
+     */
+    private static List<int[]> segments(int[] ink, int minGap, int minSegment) {
+        final List<int[]> segments = new ArrayList<>();
+        int start = 0;
+        int gapStart = -1;
+        for (int i = 0; i <= ink.length; i++) {
+            final boolean empty = i < ink.length && ink[i] == 0;
+            if (empty) {
+                if (gapStart < 0) gapStart = i;
+                continue;
+            }
+            // A gap ending here, ignoring those touching the edges
+            if (gapStart > 0 && i < ink.length && i - gapStart >= minGap) {
+                final int cut = (gapStart + i) / 2;
+                if (cut - start >= minSegment) {
+                    segments.add(new int[]{start, cut});
+                    start = cut;
+                }
+            }
+            gapStart = -1;
+        }
+        if (!segments.isEmpty() && ink.length - start < minSegment) segments.get(segments.size() - 1)[1] = ink.length;
+        else segments.add(new int[]{start, ink.length});
+        return segments;
+    }
+
+    /** Splits a column into bands, cutting at blank rows where possible */
+    private static void addBands(List<Tile> tiles, int column, int left, int right,
+                                 boolean[] blankRows, int targetBands) {
+        final int h = blankRows.length;
+        final int bandHeight = Math.max(MIN_BAND_HEIGHT, h / Math.max(1, targetBands));
+        int start = 0;
+        boolean overlapsPrevious = false;
+        while (h - start > bandHeight * 3 / 2) {
+            final int ideal = start + bandHeight;
+            final int cut = nearestBlankRow(blankRows, ideal, bandHeight / 2);
+            if (cut >= 0) {
+                tiles.add(new Tile(new Rectangle(left, start, right - left, cut - start), column, overlapsPrevious));
+                start = cut;
+                overlapsPrevious = false;
+            } else {
+                // Nowhere clean to cut, so overlap so that any line crossing the cut is whole in one band
+                tiles.add(new Tile(new Rectangle(left, start, right - left, ideal + OVERLAP - start),
+                        column, overlapsPrevious));
+                start = ideal - OVERLAP;
+                overlapsPrevious = true;
+            }
+        }
+        tiles.add(new Tile(new Rectangle(left, start, right - left, h - start), column, overlapsPrevious));
+    }
+
+    /**
+     * Finds the blank row nearest to a position, preferring the middle of a run of blank rows
+     * @return Index of the row, or -1 if there is none within range
+     */
+    private static int nearestBlankRow(boolean[] blankRows, int ideal, int range) {
+        for (int d = 0; d <= range; d++) {
+            for (int y : new int[]{ideal - d, ideal + d}) {
+                if (y <= 0 || y >= blankRows.length || !blankRows[y]) continue;
+                int top = y, bottom = y;
+                while (top > 0 && blankRows[top - 1]) top--;
+                while (bottom < blankRows.length - 1 && blankRows[bottom + 1]) bottom++;
+                return (top + bottom + 1) / 2;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Joins the text of tiles, removing lines duplicated across overlapping tiles
+     * @param tiles Tiles, in reading order
+     * @param texts Text of each tile
+     * @return Combined text
+     */
+    static String stitch(List<Tile> tiles, List<String> texts) {
+        return stitch(tiles, texts, Collections.nCopies(tiles.size(), WordBoxes.EMPTY));
+    }
+
+    /**
+     * Joins the text of tiles, removing lines duplicated across overlapping tiles
+     * @param tiles Tiles, in reading order
+     * @param texts Text of each tile
+     * @param tileBoxes Words and lines of each tile, in the tile's coordinates
+     * @return Combined text
+     */
+    static String stitch(List<Tile> tiles, List<String> texts, List<WordBoxes> tileBoxes) {
+        final Stitcher stitcher = new Stitcher(tiles, text -> {});
+        for (int i = 0; i < tiles.size(); i++) stitcher.complete(i, texts.get(i), tileBoxes.get(i));
+        return stitcher.getText();
+    }
+
+    /**
+     * Joins the text of tiles in reading order as they complete, in any order,
+     * removing lines duplicated across overlapping tiles. The words & lines of each tile are moved along with its text.
+     * <p/>
+     * Where tiles overlap, a line which starts inside the overlap and is cut off by the bottom of the upper tile
+     * is only kept from the lower tile, and a line of the lower tile which is cut off by its top, or lies entirely
+     * within the upper tile, is only kept from the upper tile. Tiles without line boxes fall back to comparing
+     * the first line of the lower tile with the last line of the upper tile.
+     */
+    private static class Stitcher {
+        private final List<Tile> tiles;
+        private final String[] texts;
+        private final WordBoxes[] tileBoxes;
+        private final Consumer<String> partialConsumer;
+        private final StringBuilder builder = new StringBuilder();
+        private final WordBoxes.Builder boxesBuilder = new WordBoxes.Builder();
+        /** Index of the first tile which hasn't been joined yet */
+        private int next = 0;
+        private String previousLastLine = null;
+        private int previousColumn = -1;
+
+        Stitcher(List<Tile> tiles, Consumer<String> partialConsumer) {
+            this.tiles = tiles;
+            this.texts = new String[tiles.size()];
+            this.tileBoxes = new WordBoxes[tiles.size()];
+            this.partialConsumer = partialConsumer;
+        }
+
+        /** Sets the text & boxes of a tile, joining it and any tiles after it which are ready */
+        synchronized void complete(int index, String text, WordBoxes boxes) {
+            texts[index] = text;
+            tileBoxes[index] = boxes;
+            while (next < texts.length && texts[next] != null) {
+                final String chunk = join(next, texts[next], tileBoxes[next]);
+                next++;
+                if (!chunk.isEmpty()) partialConsumer.accept(chunk);
+            }
+        }
+
+        /**
+         * Joins the text of the next tile
+         * @param index Index of the tile
+         * @return Text added, including separating whitespace
+         */
+        private String join(int index, String text, WordBoxes boxes) {
+            final Tile tile = tiles.get(index);
+            final Rectangle bounds = tile.bounds();
+            final Tile below = index + 1 < tiles.size() && tiles.get(index + 1).overlapsPrevious()
+                    ? tiles.get(index + 1) : null;
+            // Track the part of the text which is kept by position, so that its words can be kept with it
+            int start = text.length() - text.stripLeading().length();
+            int end = text.stripTrailing().length();
+            if (boxes.getLineCount() > 0) {
+                if (tile.overlapsPrevious() && index > 0) {
+                    final Rectangle above = tiles.get(index - 1).bounds();
+                    for (int line = 0; line < boxes.getLineCount() && start < end; line++) {
+                        final Rectangle box = boxes.getLineBounds(line);
+                        final boolean cutOff = box.y <= EDGE_TOLERANCE;
+                        final boolean inAbove =
+                                bounds.y + box.y + box.height < above.y + above.height - EDGE_TOLERANCE;
+                        if (!cutOff && !inAbove) break;
+                        start = Math.max(start, boxes.getLineEnd(line));
+                        while (start < end && Character.isWhitespace(text.charAt(start))) start++;
+                    }
+                }
+                if (below != null) {
+                    final int top = below.bounds().y - bounds.y;
+                    for (int line = boxes.getLineCount() - 1; line >= 0 && start < end; line--) {
+                        final Rectangle box = boxes.getLineBounds(line);
+                        final boolean cutOff = box.y + box.height >= bounds.height - EDGE_TOLERANCE;
+                        if (!cutOff || box.y <= top + EDGE_TOLERANCE) break;
+                        end = Math.min(end, boxes.getLineStart(line));
+                        while (end > start && Character.isWhitespace(text.charAt(end - 1))) end--;
+                    }
+                }
+            } else if (start < end && tile.overlapsPrevious() && previousLastLine != null) {
+                final int lineEnd = text.indexOf('\n', start);
+                final boolean singleLine = lineEnd < 0 || lineEnd >= end;
+                if (normalize(text.substring(start, singleLine ? end : lineEnd)).equals(normalize(previousLastLine))) {
+                    start = singleLine ? end : lineEnd + 1;
+                    while (start < end && Character.isWhitespace(text.charAt(start))) start++;
+                }
+            }
+            if (start >= end) {
+                if (!tile.overlapsPrevious()) previousLastLine = null;
+                return "";
+            }
+            final String kept = text.substring(start, end);
+            final String separator = builder.isEmpty() ? "" : tile.column() == previousColumn ? "\n" : "\n\n";
+            boxesBuilder.append(boxes, bounds.x, bounds.y, start, end, builder.length() + separator.length());
+            builder.append(separator).append(kept);
+            previousLastLine = kept.substring(kept.lastIndexOf('\n') + 1);
+            previousColumn = tile.column();
+            return separator + kept;
+        }
+
+        synchronized String getText() {
+            return builder.toString();
+        }
+
+        /** Gets the words and lines of the joined text, in the coordinates of the whole image */
+        synchronized WordBoxes getBoxes() {
+            return boxesBuilder.build();
+        }
+
+        /** Gets the text of each tile, as it was before joining */
+        synchronized List<String> getTexts() {
+            return List.of(texts);
+        }
+
+        /** Gets the words and lines of each tile, as they were before joining */
+        synchronized List<WordBoxes> getTileBoxes() {
+            return List.of(tileBoxes);
+        }
+    }
+
+    private static String normalize(String line) {
+        return line.replaceAll("\\s+", "");
+    }
+
+    /** Gets the minimum area, in pixels, of an image before it's split into tiles */
+    public long getMinTiledArea() {
+        return minTiledArea;
+    }
+
+    /**
+     * Sets the minimum area of an image before it's split into tiles
+     * @param minTiledArea Area in pixels; {@link Long#MAX_VALUE} to never split images
+     */
+    public void setMinTiledArea(long minTiledArea) {
+        this.minTiledArea = minTiledArea;
+    }
+}
@@ -0,0 +1,318 @@
+package org.threethan.universalreader.ocr;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * An implementation of OcrProcessor which sends images to an {@link OcrServer}, usually running in another process,
+ * so that models are loaded once and shared with other instances of the app.
+ * <p/>
+ * Connects when the first request is submitted, and reconnects on the next request if the connection is lost.
+ * Like {@link TesseractOcrProcessor}, only the result of the most recent request is delivered.
+ * Images are encoded & sent on a background thread, and an image which was superseded before it could be sent
+ * is never sent at all. Cancelling a request which was already sent asks the server to stop recognizing it.
+ * <p/>
+ * Connecting & the handshake time out quickly, so a process which accepts connections but never answers can't hang
+ * the client. If given a fallback, requests which can't reach the server are recognized locally instead,
+ * and the server isn't tried again by any processor in this process for a while.
+ */
+public class RemoteOcrProcessor implements StreamingOcrProcessor {
+    private static final Logger logger = LoggerFactory.getLogger(RemoteOcrProcessor.class);
+    /** Time allowed to connect & complete the handshake, in ms */
+    static final long CONNECT_TIMEOUT = 500;
+    /** Time after failing to reach a server before it's tried again by processors with a fallback, in ms */
+    static final long RETRY_INTERVAL = TimeUnit.SECONDS.toMillis(30);
+    /** Closes connections which take too long to open, interrupting the blocked connect or handshake */
+    private static final ScheduledExecutorService timeouts = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread thread = new Thread(r, "OCR Client Timeout");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /** Value of {@link System#nanoTime()} until which each server is known to be unreachable */
+    private static final Map<SocketAddress, Long> unavailableUntil = new ConcurrentHashMap<>();
+
+    private final SocketAddress address;
+    /** Creates the processor used while the server is unavailable, or null to fail requests instead */
+    private final Supplier<? extends StreamingOcrProcessor> fallbackSupplier;
+    private StreamingOcrProcessor fallback;
+    private final AtomicLong nextId = new AtomicLong();
+    /** The most recent request, which is the only one whose results are delivered */
+    private final AtomicReference<Pending> pending = new AtomicReference<>();
+    /** Sends messages in order, without blocking the submitting thread */
+    private final ExecutorService sender = Executors.newSingleThreadExecutor(r -> {
+        final Thread thread = new Thread(r, "OCR Client Sender");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /** Current connection, or null if not connected. Only changed on the sender thread. */
+    private volatile Connection connection;
+
+    /**
+     * A request awaiting its result
+     * @param id Id sent along with the request
+     * @param request The request, kept so that it can be recognized locally if the server is lost
+     * @param partialConsumer Receives partial results
+     * @param future Completed with the final result or error
+     */
+    private record Pending(long id, Request request, Consumer<Result> partialConsumer,
+                           CompletableFuture<Result> future) {}
+
+    /**
+     * An open connection to the server
+     * @param channel Connected channel
+     * @param in Stream of messages from the server
+     * @param out Stream of messages to the server
+     */
+    private record Connection(SocketChannel channel, DataInputStream in, DataOutputStream out) {}
+
+    /**
+     * Creates a processor which uses the server at the default address
+     */
+    public RemoteOcrProcessor() {
+        this(OcrServer.DEFAULT_ADDRESS);
+    }
+
+    /**
+     * Creates a processor which uses a server
+     * @param address Address of the server
+     */
+    public RemoteOcrProcessor(SocketAddress address) {
+        this(address, null);
+    }
+
+    /**
+     * Creates a processor which uses a server if one can be reached, and recognizes images locally otherwise
+     * @param address Address of the server
+     * @param fallbackSupplier Creates the processor used while the server is unavailable, when first needed,
+     *                         or null to fail requests instead
+     */
+    public RemoteOcrProcessor(SocketAddress address, Supplier<? extends StreamingOcrProcessor> fallbackSupplier) {
+        this.address = address;
+        this.fallbackSupplier = fallbackSupplier;
+    }
+
+    /**
+     * Checks whether a server is accepting connections, waiting at most {@link #CONNECT_TIMEOUT}
+     * @param address Address of the server
+     * @return True if a server accepted a connection & handshake at the address
+     */
+    public static boolean isServerRunning(SocketAddress address) {
+        try {
+            open(address).close();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Connects to a server & completes the handshake, giving up after {@link #CONNECT_TIMEOUT}
+     * @param address Address of the server
+     * @return Connected channel
+     * @throws IOException If the server couldn't be reached, didn't answer in time, or isn't an OCR server
+     */
+    private static SocketChannel open(SocketAddress address) throws IOException {
+        final SocketChannel channel = address instanceof UnixDomainSocketAddress
+                ? SocketChannel.open(StandardProtocolFamily.UNIX) : SocketChannel.open();
+        final ScheduledFuture<?> timeout = timeouts.schedule(() -> {
+            try {
+                channel.close();
+            } catch (IOException ignored) {}
+        }, CONNECT_TIMEOUT, TimeUnit.MILLISECONDS);
+        try {
+            channel.connect(address);
+            OcrProtocol.handshake(OcrProtocol.input(channel), OcrProtocol.output(channel));
+            return channel;
+        } catch (AsynchronousCloseException e) {
+            throw new IOException("Timed out connecting to OCR server at " + address, e);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        } finally {
+            timeout.cancel(false);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Result> submit(Request request, Consumer<Result> partialConsumer, Duration timeout) {
+        final CompletableFuture<Result> future = new CompletableFuture<>();
+        if (timeout != null) future.orTimeout(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        final Pending submitted = new Pending(nextId.incrementAndGet(), request, partialConsumer, future);
+        final Pending previous = pending.getAndSet(submitted);
+        if (previous != null) previous.future().cancel(false);
+        future.whenComplete((result, error) -> {
+            if (error != null) cancel(submitted);
+        });
+        sender.execute(() -> {
+            // Don't bother encoding an image which has already been superseded
+            if (pending.get() != submitted) return;
+            if (isKnownUnavailable()) {
+                if (pending.compareAndSet(submitted, null)) recognizeLocally(submitted);
+                return;
+            }
+            try {
+                final DataOutputStream out = connect().out();
+                out.writeByte(OcrProtocol.REQUEST);
+                out.writeLong(submitted.id());
+                OcrProtocol.writeRequest(out, request);
+                out.flush();
+            } catch (IOException e) {
+                disconnect(connection, e);
+            }
+        });
+        return future;
+    }
+
+    /** Forgets a request which was cancelled or failed, and asks the server to stop recognizing it */
+    private void cancel(Pending cancelled) {
+        pending.compareAndSet(cancelled, null);
+        sender.execute(() -> {
+            // A request which was never sent, or whose connection was lost, has nothing to cancel
+            final Connection current = connection;
+            if (current == null || !current.channel().isOpen()) return;
+            try {
+                current.out().writeByte(OcrProtocol.CANCEL);
+                current.out().writeLong(cancelled.id());
+                current.out().flush();
+            } catch (IOException e) {
+                disconnect(current, e);
+            }
+        });
+    }
+
+    @Override
+    public void warmUp(Locale locale, OcrProfile profile) {
+        sender.execute(() -> {
+            if (isKnownUnavailable()) {
+                getFallback().warmUp(locale, profile);
+                return;
+            }
+            try {
+                final DataOutputStream out = connect().out();
+                out.writeByte(OcrProtocol.WARM_UP);
+                OcrProtocol.writeLocale(out, locale, profile);
+                out.flush();
+            } catch (IOException e) {
+                disconnect(connection, e);
+                if (fallbackSupplier != null) getFallback().warmUp(locale, profile);
+            }
+        });
+    }
+
+    /** Checks whether requests should skip the server, since it was recently unreachable & there's a fallback */
+    private boolean isKnownUnavailable() {
+        if (fallbackSupplier == null) return false;
+        final Long until = unavailableUntil.get(address);
+        return until != null && until - System.nanoTime() > 0;
+    }
+
+    /** Gets the fallback processor, creating it if needed. Must be called on the sender thread. */
+    private StreamingOcrProcessor getFallback() {
+        if (fallback == null) fallback = fallbackSupplier.get();
+        return fallback;
+    }
+
+    /** Recognizes a request with the fallback processor, passing its results & cancellation through */
+    private void recognizeLocally(Pending local) {
+        final CompletableFuture<Result> future = getFallback().submit(local.request(), local.partialConsumer(), null);
+        future.whenComplete((result, error) -> {
+            if (error != null) local.future().completeExceptionally(error);
+            else local.future().complete(result);
+        });
+        local.future().whenComplete((result, error) -> {
+            if (error != null) future.cancel(false);
+        });
+    }
+
+    /** Gets the current connection, connecting first if needed. Must be called on the sender thread. */
+    private Connection connect() throws IOException {
+        if (connection != null && connection.channel().isOpen()) return connection;
+        final SocketChannel channel = open(address);
+        unavailableUntil.remove(address);
+        final Connection connected =
+                new Connection(channel, OcrProtocol.input(channel), OcrProtocol.output(channel));
+        final Thread receiver = new Thread(() -> receive(connected), "OCR Client Receiver");
+        receiver.setDaemon(true);
+        receiver.start();
+        logger.info("Connected to OCR server at {}", address);
+        return connection = connected;
+    }
+
+    /** Reads results from the server until disconnected, delivering those of the most recent request */
+    private void receive(Connection connection) {
+        final SocketChannel channel = connection.channel();
+        try {
+            final DataInputStream in = connection.in();
+            while (true) {
+                final int type = in.readUnsignedByte();
+                final long id = in.readLong();
+                Result result = null;
+                OcrException error = null;
+                switch (type) {
+                    case OcrProtocol.PARTIAL -> result = new Result(OcrProtocol.readText(in));
+                    case OcrProtocol.RESULT -> result = OcrProtocol.readResult(in);
+                    case OcrProtocol.ERROR -> error = OcrProtocol.readError(in);
+                    default -> throw new IOException("Unknown message type " + type);
+                }
+                final Pending current = pending.get();
+                if (current == null || current.id() != id) continue;
+                if (type == OcrProtocol.PARTIAL) {
+                    if (!current.future().isDone()) current.partialConsumer().accept(result);
+                } else if (pending.compareAndSet(current, null)) {
+                    if (error != null) current.future().completeExceptionally(error);
+                    else current.future().complete(result);
+                }
+            }
+        } catch (IOException e) {
+            if (channel.isOpen()) disconnect(connection, e);
+        }
+    }
+
+    /**
+     * Closes a connection after an error. The pending request, if there is one, is recognized locally
+     * if there's a fallback, and fails otherwise.
+     * @param lost Connection to close, or null if connecting failed
+     * @param cause Error which ended the connection
+     */
+    private void disconnect(Connection lost, IOException cause) {
+        if (lost != null) {
+            try {
+                lost.channel().close();
+            } catch (IOException ignored) {}
+        }
+        final Pending failed = pending.getAndSet(null);
+        if (fallbackSupplier != null) {
+            logger.warn("Lost connection to OCR server, recognizing locally: {}", cause.getMessage());
+            unavailableUntil.put(address, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RETRY_INTERVAL));
+            // Results arrive on the receiver thread, but the fallback may only be created on the sender thread
+            if (failed != null) sender.execute(() -> recognizeLocally(failed));
+            return;
+        }
+        logger.error("Lost connection to OCR server: {}", cause.getMessage());
+        if (failed != null) failed.future().completeExceptionally(new OcrException(
+                OcrException.Reason.SERVER_UNAVAILABLE, "OCR server is unavailable!", cause));
+    }
+}
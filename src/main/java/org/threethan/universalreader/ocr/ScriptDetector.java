@@ -0,0 +1,150 @@
+package org.threethan.universalreader.ocr;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Chooses which model to recognize an image with, from the script Tesseract's orientation & script detection
+ * finds in it, rather than only from the locale of the selected voice.
+ * <p/>
+ * Detection runs on a downscaled gray copy of the image, and takes a fraction of the time of a recognition.
+ * If the preferred language is written in the detected script, it's kept. Otherwise, the first installed language
+ * of that script is used, combined with a Latin-script language where one is installed (such as "jpn+eng"),
+ * since text in other scripts often has Latin names & numbers mixed in. Models are never downloaded because
+ * of a detection, so if no language of the script is installed, the preferred language is kept.
+ */
+public class ScriptDetector {
+    /** Name of the trained data used for orientation & script detection */
+    static final String OSD_LANGUAGE = "osd";
+    /** Script of languages which aren't listed under any other script */
+    static final String LATIN = "Latin";
+    /** Latin-script language combined with others if the preferred language isn't written in Latin script */
+    private static final String DEFAULT_LATIN_LANGUAGE = "eng";
+    /** Longest side of the copy which scripts are detected in, in pixels */
+    private static final int MAX_SIZE = 1280;
+    /** Smallest scale of the copy, so that small text stays large enough to be detected */
+    private static final double MIN_SCALE = 0.5;
+    /** Script confidence below which the detection is ignored */
+    static final float MIN_CONFIDENCE = 1.0f;
+
+    /** Languages written in each script reported by Tesseract, most widely used first */
+    private static final Map<String, List<String>> LANGUAGES = new LinkedHashMap<>();
+    static {
+        LANGUAGES.put("Japanese", List.of("jpn", "jpn_vert"));
+        LANGUAGES.put("Korean", List.of("kor", "kor_vert"));
+        // Kanji & hanja alone can't tell Chinese from Japanese or Korean, so any of them is kept
+        LANGUAGES.put("Han", List.of("chi_sim", "chi_tra", "jpn", "kor", "chi_sim_vert", "chi_tra_vert"));
+        LANGUAGES.put("Cyrillic", List.of("rus", "ukr", "bul", "srp", "bel", "mkd", "kaz", "kir", "mon", "tgk"));
+        LANGUAGES.put("Greek", List.of("ell", "grc"));
+        LANGUAGES.put("Arabic", List.of("ara", "fas", "urd", "pus", "uig"));
+        LANGUAGES.put("Hebrew", List.of("heb", "yid"));
+        LANGUAGES.put("Devanagari", List.of("hin", "mar", "nep", "san"));
+        LANGUAGES.put("Bengali", List.of("ben", "asm"));
+        LANGUAGES.put("Thai", List.of("tha"));
+        LANGUAGES.put("Tamil", List.of("tam"));
+        LANGUAGES.put("Telugu", List.of("tel"));
+        LANGUAGES.put("Kannada", List.of("kan"));
+        LANGUAGES.put("Malayalam", List.of("mal"));
+        LANGUAGES.put("Gujarati", List.of("guj"));
+        LANGUAGES.put("Gurmukhi", List.of("pan"));
+        LANGUAGES.put("Oriya", List.of("ori"));
+        LANGUAGES.put("Sinhala", List.of("sin"));
+        LANGUAGES.put("Georgian", List.of("kat", "kat_old"));
+        LANGUAGES.put("Armenian", List.of("hye"));
+        LANGUAGES.put("Ethiopic", List.of("amh", "tir"));
+        LANGUAGES.put("Khmer", List.of("khm"));
+        LANGUAGES.put("Lao", List.of("lao"));
+        LANGUAGES.put("Myanmar", List.of("mya"));
+        LANGUAGES.put("Tibetan", List.of("bod", "dzo"));
+    }
+
+    private volatile boolean enabled = true;
+
+    /**
+     * The outcome of orientation & script detection
+     * @param script Name of the detected script, as reported by Tesseract
+     * @param confidence Confidence in the script, where values below about 1 are unreliable
+     * @param orientation Clockwise rotation of the text, in degrees
+     */
+    public record Detection(String script, float confidence, int orientation) {}
+
+    /**
+     * Chooses the language to recognize an image with
+     * @param detection Script detected in the image, or null if detection failed
+     * @param preferred Language chosen from the locale, which is kept unless the image is clearly in another script
+     * @param installed Checks whether a language's trained data is available without downloading it
+     * @return A language, or several joined by "+"
+     */
+    public String chooseLanguage(Detection detection, String preferred, Predicate<String> installed) {
+        if (detection == null || detection.confidence() < MIN_CONFIDENCE) return preferred;
+        final String script = normalize(detection.script());
+        if (script == null || isWritten(preferred, script)) return preferred;
+        if (script.equals(LATIN)) return installed.test(DEFAULT_LATIN_LANGUAGE) ? DEFAULT_LATIN_LANGUAGE : preferred;
+        for (String language : LANGUAGES.get(script)) {
+            if (!installed.test(language)) continue;
+            final String latin = isWritten(preferred, LATIN) ? preferred : DEFAULT_LATIN_LANGUAGE;
+            return installed.test(latin) ? language + "+" + latin : language;
+        }
+        return preferred;
+    }
+
+    /**
+     * Checks whether a language is written in a script
+     * @param language Tesseract language code
+     * @param script Normalized script name
+     */
+    static boolean isWritten(String language, String script) {
+        if (script.equals(LATIN)) return LANGUAGES.values().stream().noneMatch(list -> list.contains(language));
+        return LANGUAGES.getOrDefault(script, List.of()).contains(language);
+    }
+
+    /**
+     * Maps the script names Tesseract may report onto those of {@link #LANGUAGES}
+     * @return Script name, or null if it's unknown or doesn't identify a language
+     */
+    private static String normalize(String script) {
+        if (script == null) return null;
+        return switch (script) {
+            case "Hiragana", "Katakana" -> "Japanese";
+            case "Hangul" -> "Korean";
+            case LATIN, "Fraktur" -> LATIN;
+            default -> LANGUAGES.containsKey(script) ? script : null;
+        };
+    }
+
+    /**
+     * Makes the gray copy of an image which scripts are detected in
+     * @param image Image of any type
+     * @return Gray image no larger than needed for detection
+     */
+    static BufferedImage downscale(BufferedImage image) {
+        final int longest = Math.max(image.getWidth(), image.getHeight());
+        final double scale = Math.min(1, Math.max(MIN_SCALE, (double) MAX_SIZE / longest));
+        final int w = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        final int h = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        final BufferedImage copy = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_GRAY);
+        final Graphics2D g = copy.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(image, 0, 0, w, h, null);
+        g.dispose();
+        return copy;
+    }
+
+    /** Gets whether scripts are detected, or the preferred language always used */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Sets whether scripts are detected
+     * @param enabled True to choose the language from the image's script (the default),
+     *                false to always use the language of the locale
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+}
@@ -0,0 +1,50 @@
+package org.threethan.universalreader.ocr;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * An OcrProcessor which can also pass on text while the rest of the image is still being recognized.
+ * <p/>
+ * Partial results arrive in reading order, and each contains only the newly recognized text, along with
+ * any whitespace separating it from the text before. Joining all partial results gives the final result's text.
+ * Results taken from a cache arrive only as a final result.
+ */
+public interface StreamingOcrProcessor extends OcrProcessor {
+    /**
+     * Submits an image, receiving text as it's recognized.
+     * Only the most recent request of a processor completes normally; submitting another cancels the previous one.
+     * @param request Request containing the image to analyze
+     * @param partialConsumer Receives text recognized so far which hasn't been received yet, until the future is done
+     * @param timeout Time after which the future fails with a {@link java.util.concurrent.TimeoutException},
+     *                or null to wait as long as it takes
+     * @return Future of the result, which fails with an {@link OcrException} if the image couldn't be recognized.
+     *         Cancelling it, or it timing out, stops recognition of the image as soon as possible.
+     */
+    CompletableFuture<Result> submit(Request request, Consumer<Result> partialConsumer, Duration timeout);
+
+    @Override
+    default CompletableFuture<Result> submit(Request request, Duration timeout) {
+        return submit(request, result -> {}, timeout);
+    }
+
+    /**
+     * Submits an image to the server, receiving text as it's recognized.
+     * Errors are received as a result containing their message, and superseded requests receive nothing.
+     * @param request Request containing the image to analyze
+     * @param partialConsumer Receives text recognized so far which hasn't been received yet
+     * @param responseConsumer Response from server (contains all OCRed text)
+     */
+    default void submitRequest(Request request, Consumer<Result> partialConsumer, Consumer<Result> responseConsumer) {
+        submit(request, partialConsumer, null).whenComplete((result, error) -> {
+            if (error != null) result = Result.ofError(error);
+            if (result != null) responseConsumer.accept(result);
+        });
+    }
+
+    @Override
+    default void submitRequest(Request request, Consumer<Result> responseConsumer) {
+        submitRequest(request, result -> {}, responseConsumer);
+    }
+}
@@ -0,0 +1,649 @@
+package org.threethan.universalreader.ocr;
+
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.PointerByReference;
+import net.sourceforge.tess4j.ITessAPI;
+import net.sourceforge.tess4j.Tesseract;
+import net.sourceforge.tess4j.TesseractException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * A pool of initialized Tesseract engines, keyed by profile and language.
+ * <p/>
+ * A plain {@link Tesseract} loads its model before and frees it after every single call,
+ * which often takes longer than the recognition itself. Engines from this pool instead keep
+ * their model loaded, and are handed out to one user at a time through a {@link Lease}.
+ * Engines which sit unused for longer than the idle timeout are disposed of automatically.
+ */
+public class TesseractEnginePool {
+    private static final Logger logger = LoggerFactory.getLogger(TesseractEnginePool.class);
+    /** Default maximum number of live engines per language */
+    public static final int DEFAULT_MAX_ENGINES =
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    /** Default time an engine may sit unused before it is disposed of, in ms */
+    public static final long DEFAULT_IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(5);
+
+    private final String dataPath;
+    private final Map<SlotKey, Slot> slots = new ConcurrentHashMap<>();
+    private final Map<String, Integer> maxEnginesByLanguage = new ConcurrentHashMap<>();
+    private volatile int defaultMaxEngines = DEFAULT_MAX_ENGINES;
+    private volatile long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+    /** Receives the time taken to create each engine, if set */
+    private volatile OcrMetrics metrics;
+
+    /** Periodically disposes of idle engines */
+    private final ScheduledExecutorService evictionExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "Tesseract Engine Eviction");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Creates a new, empty pool
+     * @param dataPath Path to the directory containing trained data files of the default profile
+     */
+    public TesseractEnginePool(String dataPath) {
+        this.dataPath = dataPath;
+        evictionExecutor.scheduleWithFixedDelay(() -> evictIdle(idleTimeout), 30, 30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Borrows an engine of the default profile for a language, creating one if none are idle.
+     * Blocks if the maximum number of engines for the language are all in use.
+     * @param language Tesseract language code, which must already have trained data available
+     * @return A lease on the engine, which must be closed to return the engine to the pool
+     */
+    public Lease acquire(String language) throws TesseractException, InterruptedException {
+        return acquire(OcrProfile.DEFAULT, language);
+    }
+
+    /**
+     * Borrows an engine of a profile for a language, creating one if none are idle.
+     * Blocks if the maximum number of engines for the profile and language are all in use.
+     * @param profile Profile whose model & settings the engine should use
+     * @param language Tesseract language code, which must already have trained data available for the profile
+     * @return A lease on the engine, which must be closed to return the engine to the pool
+     */
+    public Lease acquire(OcrProfile profile, String language) throws TesseractException, InterruptedException {
+        return acquire(profile, language, OcrPriority.DEFAULT);
+    }
+
+    /**
+     * Borrows an engine of a profile for a language, creating one if none are idle.
+     * Blocks if the maximum number of engines for the profile and language are all in use,
+     * or while borrowers of a more urgent priority are waiting for one.
+     * @param profile Profile whose model & settings the engine should use
+     * @param language Tesseract language code, which must already have trained data available for the profile
+     * @param priority How urgently the engine is needed; freed engines go to the most urgent waiting borrower
+     * @return A lease on the engine, which must be closed to return the engine to the pool
+     */
+    public Lease acquire(OcrProfile profile, String language, OcrPriority priority)
+            throws TesseractException, InterruptedException {
+        final Slot slot = slots.computeIfAbsent(new SlotKey(profile, language), k -> new Slot());
+        synchronized (slot) {
+            slot.waiting[priority.ordinal()]++;
+            try {
+                while ((slot.idle.isEmpty() && slot.live >= getMaxEngines(language))
+                        || slot.hasMoreUrgentWaiters(priority)) slot.wait();
+            } finally {
+                slot.waiting[priority.ordinal()]--;
+                // Less urgent borrowers may have been waiting for this one to go first
+                slot.notifyAll();
+            }
+            if (!slot.idle.isEmpty()) return new Lease(slot.idle.pop(), slot);
+            slot.live++;
+        }
+        // Initialize outside the lock, since loading the model is slow
+        try {
+            return new Lease(createEngine(profile, language), slot);
+        } catch (TesseractException | RuntimeException e) {
+            synchronized (slot) {
+                slot.live--;
+                slot.notifyAll();
+            }
+            throw e;
+        }
+    }
+
+    /** Creates & initializes a new engine */
+    private Engine createEngine(OcrProfile profile, String language) throws TesseractException {
+        final long startTime = System.nanoTime();
+        Engine engine = new Engine();
+        engine.setDatapath(profile.getDataPath(dataPath));
+        engine.setLanguage(language);
+        try {
+            engine.setConfigs(profile.writeConfigs(dataPath));
+        } catch (IOException e) {
+            throw new TesseractException(e);
+        }
+        engine.start();
+        final OcrMetrics metrics = this.metrics;
+        if (metrics != null) metrics.recordStageSince(OcrMetrics.Stage.ENGINE_INIT, startTime);
+        logger.info("Initialized {} Tesseract engine for {} in {}ms", profile, language,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+        return engine;
+    }
+
+    /** Returns an engine to its slot, making it available to the next borrower */
+    private void release(Engine engine, Slot slot) {
+        try {
+            engine.reset();
+        } catch (RuntimeException e) {
+            logger.warn("Failed to reset Tesseract engine, disposing it instead: {}", e.getMessage());
+            engine.close();
+            synchronized (slot) {
+                slot.live--;
+                slot.notifyAll();
+            }
+            return;
+        }
+        engine.lastUsed = System.nanoTime();
+        synchronized (slot) {
+            slot.idle.push(engine);
+            slot.notifyAll();
+        }
+    }
+
+    /**
+     * Disposes of all engines which have been idle for longer than a timeout
+     * @param timeout Idle time after which engines are disposed of, in ms
+     */
+    private void evictIdle(long timeout) {
+        final long cutoff = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(timeout);
+        slots.forEach((key, slot) -> {
+            synchronized (slot) {
+                // Least recently used engines are at the end of the deque
+                for (Iterator<Engine> it = slot.idle.descendingIterator(); it.hasNext();) {
+                    Engine engine = it.next();
+                    if (engine.lastUsed - cutoff > 0) break;
+                    it.remove();
+                    engine.close();
+                    slot.live--;
+                    logger.info("Disposed of idle {} Tesseract engine for {}", key.profile(), key.language());
+                }
+                slot.notifyAll();
+            }
+        });
+    }
+
+    /** Disposes of all idle engines immediately. Engines which are currently leased are not affected. */
+    public void clear() {
+        evictIdle(0);
+    }
+
+    /**
+     * Gets the number of live engines of the default profile, both idle and leased, for a language
+     * @param language Tesseract language code
+     */
+    public int getEngineCount(String language) {
+        return getEngineCount(OcrProfile.DEFAULT, language);
+    }
+
+    /**
+     * Gets the number of live engines of a profile, both idle and leased, for a language
+     * @param profile Profile of the engines
+     * @param language Tesseract language code
+     */
+    public int getEngineCount(OcrProfile profile, String language) {
+        final Slot slot = slots.get(new SlotKey(profile, language));
+        if (slot == null) return 0;
+        synchronized (slot) {
+            return slot.live;
+        }
+    }
+
+    /**
+     * Gets the maximum number of live engines for a language, for each profile
+     * @param language Tesseract language code
+     */
+    public int getMaxEngines(String language) {
+        return maxEnginesByLanguage.getOrDefault(language, defaultMaxEngines);
+    }
+
+    /**
+     * Sets the maximum number of live engines for a specific language, for each profile
+     * @param language Tesseract language code
+     * @param maxEngines Maximum number of engines, at least 1
+     */
+    public void setMaxEngines(String language, int maxEngines) {
+        maxEnginesByLanguage.put(language, Math.max(1, maxEngines));
+        wakeWaiters(language);
+    }
+
+    /**
+     * Sets the maximum number of live engines for languages without a specific limit
+     * @param maxEngines Maximum number of engines, at least 1
+     */
+    public void setDefaultMaxEngines(int maxEngines) {
+        defaultMaxEngines = Math.max(1, maxEngines);
+        slots.keySet().forEach(key -> wakeWaiters(key.language()));
+    }
+
+    /**
+     * Sets how long engines may sit unused before they are disposed of
+     * @param idleTimeout Idle timeout in ms
+     */
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Sets where the time taken to create engines is recorded
+     * @param metrics Metrics to record to, or null to not record
+     */
+    public void setMetrics(OcrMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /** Wakes threads waiting on a language, in case the limit was raised */
+    private void wakeWaiters(String language) {
+        slots.forEach((key, slot) -> {
+            if (key.language().equals(language)) synchronized (slot) { slot.notifyAll(); }
+        });
+    }
+
+    /** Identifies the engines of a single profile and language */
+    private record SlotKey(OcrProfile profile, String language) {}
+
+    /** Engines for a single profile and language */
+    private static class Slot {
+        /** Idle engines, most recently used first */
+        final Deque<Engine> idle = new ArrayDeque<>();
+        /** Number of live engines, both idle and leased */
+        int live = 0;
+        /** Number of borrowers waiting for an engine, by priority */
+        final int[] waiting = new int[OcrPriority.values().length];
+
+        /** Checks whether any borrowers more urgent than the given priority are waiting */
+        boolean hasMoreUrgentWaiters(OcrPriority priority) {
+            for (int i = 0; i < priority.ordinal(); i++) if (waiting[i] > 0) return true;
+            return false;
+        }
+    }
+
+    /**
+     * Exclusive use of a pooled engine. Closing the lease returns the engine to the pool.
+     */
+    public class Lease implements AutoCloseable {
+        private final Engine engine;
+        private final Slot slot;
+        private boolean closed = false;
+
+        private Lease(Engine engine, Slot slot) {
+            this.engine = engine;
+            this.slot = slot;
+        }
+
+        /**
+         * Gets the leased engine. Variables set on it are reverted when the lease is closed.
+         * @return An initialized Tesseract instance
+         */
+        public Tesseract engine() {
+            return engine;
+        }
+
+        /**
+         * Recognizes an image one layout block at a time, in reading order
+         * @param image Image to recognize
+         * @param blockConsumer Receives the text of each non-empty block as soon as it's recognized
+         * @return Text of all blocks, separated by blank lines
+         */
+        public String recognizeBlocks(BufferedImage image, Consumer<String> blockConsumer) throws TesseractException {
+            return engine.recognizeBlocks(image, blockConsumer, null, () -> false);
+        }
+
+        /**
+         * Recognizes an image one layout block at a time, in reading order,
+         * also collecting the box & confidence of each word from the same recognition
+         * @param image Image to recognize
+         * @param blockConsumer Receives the text of each non-empty block as soon as it's recognized
+         * @param boxes Receives the words and lines of the returned text
+         * @return Text of all blocks, separated by blank lines
+         */
+        public String recognizeBlocks(BufferedImage image, Consumer<String> blockConsumer, WordBoxes.Builder boxes)
+                throws TesseractException {
+            return engine.recognizeBlocks(image, blockConsumer, boxes, () -> false);
+        }
+
+        /**
+         * Recognizes an image one layout block at a time, in reading order,
+         * also collecting the box & confidence of each word from the same recognition.
+         * Stops partway through a block, as soon as the engine checks in, once cancelled.
+         * @param image Image to recognize
+         * @param blockConsumer Receives the text of each non-empty block as soon as it's recognized
+         * @param boxes Receives the words and lines of the returned text
+         * @param cancelled Returns true once the text is no longer wanted
+         * @return Text of all blocks, separated by blank lines
+         * @throws CancellationException If cancelled before all blocks were recognized
+         */
+        public String recognizeBlocks(BufferedImage image, Consumer<String> blockConsumer, WordBoxes.Builder boxes,
+                                      BooleanSupplier cancelled) throws TesseractException {
+            return engine.recognizeBlocks(image, blockConsumer, boxes, cancelled);
+        }
+
+        /**
+         * Detects the orientation & script of the text in an image.
+         * The engine must have been acquired for the {@value ScriptDetector#OSD_LANGUAGE} language.
+         * @param image Image to examine, which may be downscaled
+         * @return Detected script, or null if the image had too little text to tell
+         */
+        public ScriptDetector.Detection detectScript(BufferedImage image) {
+            return engine.detectScript(image);
+        }
+
+        @Override
+        public void close() {
+            if (closed) return;
+            closed = true;
+            release(engine, slot);
+        }
+    }
+
+    /**
+     * A Tesseract instance which stays initialized between calls,
+     * and tracks the variables set on it so they can be reverted.
+     */
+    static class Engine extends Tesseract {
+        /** Variables set during the current lease */
+        private final Map<String, String> variables = new HashMap<>();
+        /** Values of changed variables before they were first changed, so they can be restored */
+        private final Map<String, String> defaults = new HashMap<>();
+        private boolean initialized = false;
+        private long lastUsed = System.nanoTime();
+        /** Pixels of the current image, in the layout Tesseract expects. Reused between images. */
+        private ByteBuffer pixelBuffer;
+        /** Checked by the engine while recognizing, to stop early; set for each recognition */
+        private volatile BooleanSupplier cancelled = () -> false;
+        /** Lets the engine check whether it's been cancelled, kept here so it isn't garbage collected */
+        private final ITessAPI.TessCancelFunc cancelFunc = (cancelThis, words) -> cancelled.getAsBoolean();
+        /** Progress monitor passed to the engine, through which it checks whether it's been cancelled */
+        private ITessAPI.ETEXT_DESC monitor;
+        /** Edges of the most recent bounding box */
+        private final IntBuffer left = IntBuffer.allocate(1), top = IntBuffer.allocate(1);
+        private final IntBuffer right = IntBuffer.allocate(1), bottom = IntBuffer.allocate(1);
+
+        /** Loads the model, verifying that it loaded correctly */
+        void start() throws TesseractException {
+            init();
+            final String loaded = getAPI().TessBaseAPIGetInitLanguagesAsString(getHandle());
+            if (loaded == null || loaded.isEmpty()) {
+                close();
+                throw new TesseractException("Tesseract failed to load trained data");
+            }
+        }
+
+        @Override
+        protected void init() {
+            if (initialized) return;
+            super.init();
+            initialized = true;
+        }
+
+        /** Keeps the model loaded, only clearing the previous image & results */
+        @Override
+        protected void dispose() {
+            if (initialized) getAPI().TessBaseAPIClear(getHandle());
+        }
+
+        @Override
+        public void setVariable(String key, String value) {
+            variables.put(key, value);
+        }
+
+        /** The page segmentation mode is normally only applied on init, so it's set as a variable instead */
+        @Override
+        public void setPageSegMode(int mode) {
+            setVariable("tessedit_pageseg_mode", String.valueOf(mode));
+        }
+
+        @Override
+        protected void setVariables() {
+            variables.forEach((key, value) -> {
+                if (!defaults.containsKey(key)) defaults.put(key, readVariable(key));
+                getAPI().TessBaseAPISetVariable(getHandle(), key, value);
+            });
+        }
+
+        /** Reverts all variables changed since the engine was created, and clears any leftover results */
+        void reset() {
+            variables.clear();
+            defaults.forEach((key, value) -> {
+                if (value != null) getAPI().TessBaseAPISetVariable(getHandle(), key, value);
+            });
+            defaults.clear();
+            dispose();
+        }
+
+        /**
+         * Reads the current value of a variable, whatever its type
+         * @return Value of the variable as a string, or null if it doesn't exist
+         */
+        private String readVariable(String key) {
+            final String string = getAPI().TessBaseAPIGetStringVariable(getHandle(), key);
+            if (string != null) return string;
+            final IntBuffer intBuffer = IntBuffer.allocate(1);
+            if (getAPI().TessBaseAPIGetIntVariable(getHandle(), key, intBuffer) == ITessAPI.TRUE)
+                return String.valueOf(intBuffer.get(0));
+            if (getAPI().TessBaseAPIGetBoolVariable(getHandle(), key, intBuffer) == ITessAPI.TRUE)
+                return intBuffer.get(0) == 0 ? "0" : "1";
+            final DoubleBuffer doubleBuffer = DoubleBuffer.allocate(1);
+            if (getAPI().TessBaseAPIGetDoubleVariable(getHandle(), key, doubleBuffer) == ITessAPI.TRUE)
+                return String.valueOf(doubleBuffer.get(0));
+            return null;
+        }
+
+        /**
+         * Recognizes an image one layout block at a time, in reading order,
+         * so that the text of early blocks is available before the later blocks are recognized
+         * @param image Image to recognize
+         * @param blockConsumer Receives the text of each non-empty block as soon as it's recognized
+         * @param boxes Receives the words and lines of the returned text, or null if they aren't needed
+         * @param cancelled Checked between blocks and by the engine while recognizing each block
+         * @return Text of all blocks, separated by blank lines
+         * @throws CancellationException If cancelled before all blocks were recognized
+         */
+        String recognizeBlocks(BufferedImage image, Consumer<String> blockConsumer, WordBoxes.Builder boxes,
+                               BooleanSupplier cancelled) throws TesseractException {
+            init();
+            setVariables();
+            this.cancelled = cancelled;
+            try {
+                setPixels(image);
+                final StringBuilder builder = new StringBuilder();
+                for (Rectangle block : analyseBlocks()) {
+                    if (cancelled.getAsBoolean()) throw new CancellationException();
+                    getAPI().TessBaseAPISetRectangle(getHandle(), block.x, block.y, block.width, block.height);
+                    // Recognize through the monitor, so that the engine stops partway if cancelled
+                    if (getAPI().TessBaseAPIRecognize(getHandle(), monitor()) != 0) {
+                        if (cancelled.getAsBoolean()) throw new CancellationException();
+                        continue;
+                    }
+                    final Pointer pointer = getAPI().TessBaseAPIGetUTF8Text(getHandle());
+                    if (pointer == null) continue;
+                    final String rawText = pointer.getString(0, "UTF-8");
+                    getAPI().TessDeleteText(pointer);
+                    final String text = rawText.strip();
+                    if (text.isEmpty()) continue;
+                    if (!builder.isEmpty()) builder.append("\n\n");
+                    if (boxes != null) {
+                        final int textStart = rawText.length() - rawText.stripLeading().length();
+                        collectBoxes(rawText, textStart, builder.length(), boxes);
+                    }
+                    builder.append(text);
+                    blockConsumer.accept(text);
+                }
+                return builder.toString();
+            } finally {
+                this.cancelled = () -> false;
+                dispose();
+            }
+        }
+
+        /**
+         * Detects the orientation & script of the text in an image
+         * @param image Image to examine
+         * @return Detected script, or null if the image had too little text to tell
+         */
+        ScriptDetector.Detection detectScript(BufferedImage image) {
+            init();
+            setVariables();
+            try {
+                setPixels(image);
+                final IntBuffer orientation = IntBuffer.allocate(1);
+                final FloatBuffer orientationConfidence = FloatBuffer.allocate(1);
+                final PointerByReference script = new PointerByReference();
+                final FloatBuffer scriptConfidence = FloatBuffer.allocate(1);
+                if (getAPI().TessBaseAPIDetectOrientationScript(getHandle(), orientation, orientationConfidence,
+                        script, scriptConfidence) != ITessAPI.TRUE || script.getValue() == null) return null;
+                // The name points at a static string owned by the engine, so it isn't freed
+                return new ScriptDetector.Detection(script.getValue().getString(0),
+                        scriptConfidence.get(0), orientation.get(0));
+            } finally {
+                dispose();
+            }
+        }
+
+        /** Gets the progress monitor of this engine, creating it the first time */
+        private ITessAPI.ETEXT_DESC monitor() {
+            if (monitor == null) {
+                monitor = getAPI().TessMonitorCreate();
+                getAPI().TessMonitorSetCancelFunc(monitor, cancelFunc);
+            }
+            return monitor;
+        }
+
+        /**
+         * Passes an image to Tesseract as packed 8-bit gray or 24-bit RGB bytes.
+         * Unlike {@link Tesseract#setImage(java.awt.image.RenderedImage)}, which copies the whole image
+         * several times over, gray and 3-byte images are copied row by row into a buffer kept by the engine.
+         * @param image Image to recognize
+         */
+        private void setPixels(BufferedImage image) {
+            final int w = image.getWidth();
+            final int h = image.getHeight();
+            final int type = image.getType();
+            final int bytesPerPixel = type == BufferedImage.TYPE_BYTE_GRAY ? 1 : 3;
+            final int size = w * h * bytesPerPixel;
+            if (pixelBuffer == null || pixelBuffer.capacity() < size) pixelBuffer = ByteBuffer.allocateDirect(size);
+            pixelBuffer.clear();
+            if (type == BufferedImage.TYPE_BYTE_GRAY || type == BufferedImage.TYPE_3BYTE_BGR) {
+                // The raster returns the bands of each pixel in RGB order, and handles cropped sub-images
+                final Raster raster = image.getRaster();
+                final byte[] row = new byte[w * bytesPerPixel];
+                for (int y = 0; y < h; y++) pixelBuffer.put((byte[]) raster.getDataElements(0, y, w, 1, row));
+            } else {
+                final int[] row = new int[w];
+                for (int y = 0; y < h; y++) {
+                    image.getRGB(0, y, w, 1, row, 0, w);
+                    for (int rgb : row) pixelBuffer.put((byte) (rgb >> 16)).put((byte) (rgb >> 8)).put((byte) rgb);
+                }
+            }
+            pixelBuffer.flip();
+            setImage(w, h, pixelBuffer, bytesPerPixel * 8);
+        }
+
+        /**
+         * Collects the words and lines of the most recent recognition from its result iterator
+         * @param rawText Text of the recognition, before it was stripped
+         * @param textStart Position in the raw text at which the stripped text starts
+         * @param offset Position in the returned text at which the stripped text was added
+         * @param boxes Receives the words and lines
+         */
+        private void collectBoxes(String rawText, int textStart, int offset, WordBoxes.Builder boxes) {
+            final ITessAPI.TessResultIterator iterator = getAPI().TessBaseAPIGetIterator(getHandle());
+            if (iterator == null) return;
+            final ITessAPI.TessPageIterator pageIterator = getAPI().TessResultIteratorGetPageIterator(iterator);
+            final int word = ITessAPI.TessPageIteratorLevel.RIL_WORD;
+            final int line = ITessAPI.TessPageIteratorLevel.RIL_TEXTLINE;
+            int cursor = 0;
+            Rectangle lineBounds = null;
+            int lineStart = 0, lineEnd = 0;
+            do {
+                final Pointer pointer = getAPI().TessResultIteratorGetUTF8Text(iterator, word);
+                if (pointer == null) continue;
+                final String wordText = pointer.getString(0, "UTF-8");
+                getAPI().TessDeleteText(pointer);
+                // Words appear in the text in the same order, so find each after the previous one
+                final int index = rawText.indexOf(wordText, cursor);
+                if (wordText.isEmpty() || index < 0) continue;
+                cursor = index + wordText.length();
+                final int start = offset + index - textStart;
+                final int end = start + wordText.length();
+                if (getAPI().TessPageIteratorIsAtBeginningOf(pageIterator, line) == ITessAPI.TRUE) {
+                    if (lineBounds != null) boxes.addLine(lineBounds, lineStart, lineEnd);
+                    lineBounds = boundingBox(pageIterator, line);
+                    lineStart = start;
+                }
+                lineEnd = end;
+                final Rectangle bounds = boundingBox(pageIterator, word);
+                if (bounds == null) continue;
+                boxes.addWord(bounds, getAPI().TessResultIteratorConfidence(iterator, word), start, end);
+            } while (getAPI().TessResultIteratorNext(iterator, word) == ITessAPI.TRUE);
+            if (lineBounds != null) boxes.addLine(lineBounds, lineStart, lineEnd);
+            getAPI().TessResultIteratorDelete(iterator);
+        }
+
+        /**
+         * Gets the box around the current element of an iterator
+         * @return Bounds in image coordinates, or null if the element has none
+         */
+        private Rectangle boundingBox(ITessAPI.TessPageIterator iterator, int level) {
+            if (getAPI().TessPageIteratorBoundingBox(iterator, level, left, top, right, bottom) != ITessAPI.TRUE)
+                return null;
+            return new Rectangle(left.get(0), top.get(0), right.get(0) - left.get(0), bottom.get(0) - top.get(0));
+        }
+
+        /**
+         * Finds the layout blocks of the current image
+         * @return Bounds of each block, in reading order
+         */
+        private List<Rectangle> analyseBlocks() {
+            final List<Rectangle> blocks = new ArrayList<>();
+            final ITessAPI.TessPageIterator iterator = getAPI().TessBaseAPIAnalyseLayout(getHandle());
+            if (iterator == null) return blocks;
+            final int level = ITessAPI.TessPageIteratorLevel.RIL_BLOCK;
+            do {
+                final Rectangle bounds = boundingBox(iterator, level);
+                if (bounds != null) blocks.add(bounds);
+            } while (getAPI().TessPageIteratorNext(iterator, level) == ITessAPI.TRUE);
+            getAPI().TessPageIteratorDelete(iterator);
+            return blocks;
+        }
+
+        /** Frees the model and native handle. The engine may not be used afterward. */
+        void close() {
+            pixelBuffer = null;
+            if (monitor != null) {
+                getAPI().TessMonitorDelete(monitor);
+                monitor = null;
+            }
+            if (!initialized) return;
+            super.dispose();
+            initialized = false;
+        }
+    }
+}
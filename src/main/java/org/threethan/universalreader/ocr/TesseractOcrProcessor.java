@@ -1,56 +1,479 @@
 package org.threethan.universalreader.ocr;
 
-import net.sourceforge.tess4j.Tesseract;
 import net.sourceforge.tess4j.TesseractException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
 import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Locale;
 import java.util.MissingResourceException;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 /**
  * An implementation of OcrProcessor which uses Tesseract to extract text from images.
  * <p/>
- * It also automatically downloads a model for tesseract based on locale, with some error-checking.
+ * It also automatically downloads a model for tesseract based on locale and {@link OcrProfile}, with some error-checking.
+ * Each instance only ever delivers the result of its most recent request; submitting another cancels the previous one.
  * @author Ethan Medeiros
  */
-@SuppressWarnings("FieldCanBeLocal")
-public class TesseractOcrProcessor implements OcrProcessor {
+public class TesseractOcrProcessor implements StreamingOcrProcessor {
     private static final String DEFAULT_LANG = "eng";
     private static final Logger logger = LoggerFactory.getLogger(TesseractOcrProcessor.class);
 
-    private final String DATA_PATH = "./TesseractData/";
-    private final String DATA_EXT = ".traineddata";
-    private final String DATA_URL = "https://github.com/tesseract-ocr/tessdata_best/raw/main/";
+    static final String DATA_PATH = "./TesseractData/";
+    private static final String DATA_EXT = ".traineddata";
 
+    /** Engines with their models already loaded, shared between all processors */
+    private static final TesseractEnginePool enginePool = new TesseractEnginePool(DATA_PATH);
+    /** Runs requests from all processors on a fixed number of workers */
+    private static final OcrScheduler scheduler = new OcrScheduler();
+    /** Results of previous requests from all processors, by image content */
+    private static final OcrResultCache resultCache = new OcrResultCache();
+    /** Splits large images so their parts can be recognized in parallel */
+    private static final OcrTiler tiler = new OcrTiler();
+    /** Skips images unlikely to contain text, such as photos, before they reach the cache or an engine */
+    private static final TextPresenceDetector textDetector = new TextPresenceDetector();
+    /** Chooses the language of each image from the script detected in it */
+    private static final ScriptDetector scriptDetector = new ScriptDetector();
+    /** Downloads trained data, shared by all processors */
+    private static final ModelDownloader modelDownloader = new ModelDownloader();
+    /** Latency & size histograms of requests from all processors, exposed through JMX once registered */
+    private static final OcrMetrics metrics = new OcrMetrics();
+    /** Set once the metrics have been registered with JMX */
+    private static final AtomicBoolean metricsRegistered = new AtomicBoolean();
+    /** Prefix of the language of cache keys whose language is chosen by script detection */
+    private static final String DETECTED_PREFIX = "detect:";
+    /** Time for which a detected language is reused for images from the same source, in ns */
+    private static final long DETECTION_LIFETIME = TimeUnit.MINUTES.toNanos(2);
+    /** Time for which a failed detection is remembered, so it isn't retried for every capture, in ns */
+    private static final long FAILED_DETECTION_LIFETIME = TimeUnit.SECONDS.toNanos(10);
+    /** Profile & language pairs which have already been warmed up */
+    private static final Set<String> warmedUpLanguages = ConcurrentHashMap.newKeySet();
+
+    /** Layout of the previous result of this processor, which unchanged tiles of the next image can reuse */
+    private final AtomicReference<PreviousResult> previousResult = new AtomicReference<>();
+    /** Language chosen for the previous image of this processor, which later images of the same source reuse */
+    private final AtomicReference<DetectedLanguage> detectedLanguage = new AtomicReference<>();
+    /** Future of the most recent request of this processor, which is cancelled by the next request */
+    private final AtomicReference<CompletableFuture<Result>> latestFuture = new AtomicReference<>();
+    private volatile boolean incremental = true;
+
+    static {
+        enginePool.setMetrics(metrics);
+    }
+
+    /**
+     * A result which later images may be compared against
+     * @param key Key of the request, identifying its settings
+     * @param language Language the image was recognized with, which may have been chosen by script detection
+     * @param layout Tiles & text of the preprocessed image
+     */
+    private record PreviousResult(OcrResultCache.Key key, String language, OcrTiler.Layout layout) {
+        /** Checks whether a request used the same settings, such that its tiles' text can be reused */
+        boolean matches(OcrResultCache.Key other, String otherLanguage) {
+            return key.language().equals(other.language()) && language.equals(otherLanguage)
+                    && key.profile() == other.profile() && key.preprocessing().equals(other.preprocessing());
+        }
+    }
+
+    /**
+     * The language chosen for an image by script detection
+     * @param width Width of the image
+     * @param height Height of the image
+     * @param signature Coarse luminance of the image, from {@link #signature(BufferedImage)}
+     * @param preferred Language chosen from the locale
+     * @param profile Profile whose trained data was looked for
+     * @param language Chosen language
+     * @param expiryTime Value of {@link System#nanoTime()} after which detection runs again
+     */
+    private record DetectedLanguage(int width, int height, byte[] signature, String preferred, OcrProfile profile,
+                                    String language, long expiryTime) {
+        /** Cells along each side of the grid whose luminance makes up a signature */
+        static final int GRID = 16;
+        /** Pixels sampled along each side of each cell */
+        static final int SAMPLES = 4;
+        /** Largest difference in luminance for a cell to count as unchanged */
+        static final int CELL_TOLERANCE = 24;
+        /** Fraction of cells which must be unchanged for an image to count as coming from the same source */
+        static final double MIN_UNCHANGED = 0.75;
+
+        /**
+         * Checks whether an image likely comes from the same source, such as another capture of the same window
+         * with some of its text changed, such that its language can be reused
+         * @param signature Signature of the image
+         */
+        boolean matches(BufferedImage image, byte[] signature, String preferred, OcrProfile profile) {
+            if (image.getWidth() != width || image.getHeight() != height || profile != this.profile
+                    || !preferred.equals(this.preferred) || System.nanoTime() - expiryTime > 0) return false;
+            int unchanged = 0;
+            for (int i = 0; i < signature.length; i++)
+                if (Math.abs((signature[i] & 0xFF) - (this.signature[i] & 0xFF)) <= CELL_TOLERANCE) unchanged++;
+            return unchanged >= signature.length * MIN_UNCHANGED;
+        }
+
+        /** Gets the mean luminance of a few pixels in each cell of a grid over an image */
+        static byte[] signature(BufferedImage image) {
+            final byte[] signature = new byte[GRID * GRID];
+            final int w = image.getWidth();
+            final int h = image.getHeight();
+            for (int cy = 0; cy < GRID; cy++) {
+                for (int cx = 0; cx < GRID; cx++) {
+                    int sum = 0;
+                    for (int sy = 0; sy < SAMPLES; sy++) {
+                        final int y = (int) ((cy * SAMPLES + sy + 0.5) * h / (GRID * SAMPLES));
+                        for (int sx = 0; sx < SAMPLES; sx++) {
+                            final int rgb = image.getRGB((int) ((cx * SAMPLES + sx + 0.5) * w / (GRID * SAMPLES)), y);
+                            sum += (((rgb >> 16) & 0xFF) * 299 + ((rgb >> 8) & 0xFF) * 587 + (rgb & 0xFF) * 114) / 1000;
+                        }
+                    }
+                    signature[cy * GRID + cx] = (byte) (sum / (SAMPLES * SAMPLES));
+                }
+            }
+            return signature;
+        }
+    }
+
+    @Override
+    public CompletableFuture<Result> submit(Request request, Consumer<Result> partialConsumer, Duration timeout) {
+        final CompletableFuture<Result> future = new CompletableFuture<>();
+        if (timeout != null) future.orTimeout(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        // Only the newest request of this processor may deliver its result
+        final CompletableFuture<Result> previous = latestFuture.getAndSet(future);
+        if (previous != null) previous.cancel(false);
+        final long submitTime = System.nanoTime();
+        final OcrScheduler.Ticket ticket = scheduler.submit(this, request.priority(), t -> {
+            metrics.recordQueueWait(System.nanoTime() - submitTime);
+            recognize(request, partialConsumer, future);
+        });
+        // Requests which are cancelled or time out while queued never reach an engine
+        future.whenComplete((result, error) -> {
+            if (error != null) ticket.cancel();
+        });
+        return future;
+    }
+
+    /**
+     * Recognizes the image of a request on the current thread, stopping early once its future is done
+     * @param request Request containing the image to analyze
+     * @param partialConsumer Receives text recognized so far which hasn't been received yet
+     * @param future Completed with the result or error
+     */
+    private void recognize(Request request, Consumer<Result> partialConsumer, CompletableFuture<Result> future) {
+        if (future.isDone()) return;
+        final long startTime = System.nanoTime();
+        metrics.recordImageSize(request.image().getWidth(), request.image().getHeight());
+        final boolean mayContainText = textDetector.mayContainText(request.image());
+        metrics.recordStageSince(OcrMetrics.Stage.TEXT_DETECTION, startTime);
+        if (!mayContainText) {
+            logger.debug("Skipped {}x{} image which is unlikely to contain text",
+                    request.image().getWidth(), request.image().getHeight());
+            future.complete(new Result(""));
+            return;
+        }
+        final OcrProfile profile = request.profile();
+        final String preferredLanguage;
+        try {
+            preferredLanguage = getLanguage(request.locale(), profile);
+        } catch (TesseractException e) {
+            logger.error("No usable language for {}: {}", request.locale(), e.getMessage());
+            future.completeExceptionally(new OcrException(OcrException.Reason.LANGUAGE_UNAVAILABLE,
+                    "No language data is available for OCR!", e));
+            return;
+        }
+        try {
+            // With script detection, the preferred language & image decide the language used, so results are keyed
+            // on the preferred language, and only cache misses pay for detection
+            final boolean detect = scriptDetector.isEnabled();
+            final OcrResultCache.Key key = OcrResultCache.Key.of(request.image(),
+                    detect ? DETECTED_PREFIX + preferredLanguage : preferredLanguage, profile, request.preprocessing());
+            final Consumer<String> partialTextConsumer = text -> {
+                if (!future.isDone()) partialConsumer.accept(new Result(text));
+            };
+            // The shared computation is only abandoned once every request waiting for it is done
+            final Result result = resultCache.get(key, abandoned -> {
+                final String language = detect ? detectLanguage(request, preferredLanguage) : preferredLanguage;
+                final OcrTiler.Recognizer recognizer = new OcrTiler.Recognizer() {
+                    @Override
+                    public String recognize(BufferedImage tile, Consumer<String> tilePartialConsumer)
+                            throws Exception {
+                        return recognize(tile, tilePartialConsumer, new WordBoxes.Builder());
+                    }
+
+                    @Override
+                    public String recognize(BufferedImage tile, Consumer<String> tilePartialConsumer,
+                                            WordBoxes.Builder boxes) throws Exception {
+                        try (TesseractEnginePool.Lease lease =
+                                     enginePool.acquire(profile, language, request.priority())) {
+                            return lease.recognizeBlocks(tile, new Consumer<>() {
+                                boolean first = true;
+                                @Override
+                                public void accept(String block) {
+                                    tilePartialConsumer.accept(first ? block : "\n\n" + block);
+                                    first = false;
+                                }
+                            }, boxes, abandoned);
+                        }
+                    }
+                };
+                final long preprocessStartTime = System.nanoTime();
+                final ImagePreprocessor.Output prepared =
+                        ImagePreprocessor.of(request.preprocessing()).process(request.image());
+                final long recognizeStartTime = System.nanoTime();
+                metrics.recordStage(OcrMetrics.Stage.PREPROCESSING, recognizeStartTime - preprocessStartTime);
+                final PreviousResult previous = previousResult.get();
+                final OcrTiler.Layout layout = tiler.recognize(prepared.image(),
+                        incremental && previous != null && previous.matches(key, language) ? previous.layout() : null,
+                        recognizer, partialTextConsumer);
+                metrics.recordStageSince(OcrMetrics.Stage.RECOGNITION, recognizeStartTime);
+                previousResult.set(new PreviousResult(key, language, layout));
+                return new Result(layout.text(), layout.boxes().map(prepared.mapping()));
+            }, future::isDone);
+            metrics.recordStageSince(OcrMetrics.Stage.TOTAL, startTime);
+            metrics.recordOutput(result.ocrText());
+            future.complete(result);
+        } catch (CancellationException e) {
+            logger.debug("Stopped recognizing a {}x{} image which is no longer wanted",
+                    request.image().getWidth(), request.image().getHeight());
+            // Never leave a request pending, even if it was stopped without being cancelled itself
+            future.completeExceptionally(e);
+        } catch (Exception e) {
+            logger.error("Tesseract had an unrecoverable error: {}", e.getMessage());
+            future.completeExceptionally(new OcrException(OcrException.Reason.ENGINE_FAILED,
+                    "Tesseract OCR had an error!", e));
+            //noinspection CallToPrintStackTrace
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Chooses the language to recognize an image with from the script detected in it.
+     * The choice is reused for a while for later images from this processor which look like they come from
+     * the same source, such as repeated captures of the same window, so that they skip detection.
+     * Detection is skipped until the orientation & script detection data has been downloaded, which is started
+     * by {@link #warmUp} or by this if needed, in the background.
+     * @param request Request containing the image to analyze
+     * @param preferred Language chosen from the request's locale
+     * @return A language, or several joined by "+", whose trained data is available
+     */
+    private String detectLanguage(Request request, String preferred) throws InterruptedException {
+        final BufferedImage image = request.image();
+        final OcrProfile profile = request.profile();
+        final byte[] signature = DetectedLanguage.signature(image);
+        final DetectedLanguage previous = detectedLanguage.get();
+        if (previous != null && previous.matches(image, signature, preferred, profile)) return previous.language();
+
+        final long startTime = System.nanoTime();
+        final String dataPath = profile.getDataPath(DATA_PATH);
+        if (!Files.exists(Path.of(dataPath, ScriptDetector.OSD_LANGUAGE + DATA_EXT))) {
+            downloadOsdData(profile);
+            return preferred;
+        }
+        String language = preferred;
+        long lifetime = DETECTION_LIFETIME;
+        try {
+            final ScriptDetector.Detection detection;
+            try (TesseractEnginePool.Lease lease =
+                         enginePool.acquire(profile, ScriptDetector.OSD_LANGUAGE, request.priority())) {
+                detection = lease.detectScript(ScriptDetector.downscale(image));
+            }
+            language = scriptDetector.chooseLanguage(detection, preferred,
+                    code -> Files.exists(Path.of(dataPath, code + DATA_EXT)));
+            metrics.recordStageSince(OcrMetrics.Stage.SCRIPT_DETECTION, startTime);
+            logger.debug("Detected {} in {}ms, using {}", detection,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime), language);
+        } catch (TesseractException | RuntimeException e) {
+            logger.warn("Failed to detect script, using {}: {}", preferred, e.getMessage());
+            // Failures are remembered briefly, so they aren't retried for every capture
+            lifetime = FAILED_DETECTION_LIFETIME;
+        }
+        detectedLanguage.set(new DetectedLanguage(image.getWidth(), image.getHeight(), signature, preferred, profile,
+                language, System.nanoTime() + lifetime));
+        return language;
+    }
+
+    /**
+     * Starts downloading the orientation & script detection data of a profile, if it isn't already present,
+     * without waiting for it
+     * @param profile Profile whose data is downloaded
+     */
+    private static void downloadOsdData(OcrProfile profile) {
+        final String osd = ScriptDetector.OSD_LANGUAGE + DATA_EXT;
+        final String dataPath = profile.getDataPath(DATA_PATH);
+        //noinspection ResultOfMethodCallIgnored
+        new File(dataPath).mkdirs();
+        modelDownloader.download(URI.create(profile.getModelUrl() + osd), Path.of(dataPath, osd), null)
+                .exceptionally(e -> {
+                    logger.warn("Failed to download script detection data: {}", e.getMessage());
+                    return null;
+                });
+    }
+
+    /**
+     * Downloads trained data for the locale if needed, or otherwise checks it for corruption,
+     * starts downloading script detection data if it's missing,
+     * and readies an engine with a tiny recognition, at prefetch priority, behind any other requests.
+     * Each language is only warmed up once per profile.
+     * @param locale Locale which requests are likely to use
+     * @param profile Profile which requests are likely to use
+     */
     @Override
-    public void submitRequest(Request request, Consumer<Result> responseConsumer) {
-        new Thread(() -> {
+    public void warmUp(Locale locale, OcrProfile profile) {
+        scheduler.submit(new Object(), OcrPriority.PREFETCH, ticket -> {
+            String key = null;
             try {
-                responseConsumer.accept(new Result(
-                        getTesseract(request.locale()).doOCR(request.image()).strip()
-                ));
+                final long startTime = System.nanoTime();
+                final String language = getLanguage(locale, profile);
+                key = profile.name() + "/" + language;
+                // Added before warming up, so that a warm-up requested meanwhile doesn't repeat the work
+                if (!warmedUpLanguages.add(key)) return;
+                if (scriptDetector.isEnabled()) downloadOsdData(profile);
+                verifyModel(profile, language);
+                final ImagePreprocessor.Output prepared =
+                        ImagePreprocessor.of(ImagePreprocessor.DEFAULT_STEPS).process(warmUpImage());
+                try (TesseractEnginePool.Lease lease = enginePool.acquire(profile, language, OcrPriority.PREFETCH)) {
+                    lease.recognizeBlocks(prepared.image(), text -> {});
+                }
+                logger.info("Warmed up {} OCR for {} in {}ms", profile, language,
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
             } catch (Exception e) {
-                logger.error("Tesseract had an unrecoverable error: {}", e.getMessage());
-                responseConsumer.accept(new Result("Tesseract OCR had an error!"));
-                //noinspection CallToPrintStackTrace
-                e.printStackTrace();
+                logger.warn("Failed to warm up OCR: {}", e.getMessage());
+                // Lets a later warm-up try again, such as once the model can be downloaded
+                if (key != null) warmedUpLanguages.remove(key);
             }
-        }).start();
+        });
     }
 
     /**
-     * Gets a Tesseract OCR instance, performing necessary setup & prep
+     * Checks trained data for corruption, downloading it again if needed. Requests use trained data without
+     * checking it, since this reads the whole file. If the server can't be reached, the file is kept.
+     * @param profile Profile whose trained data is checked
+     * @param language Language whose trained data is checked
+     */
+    private static void verifyModel(OcrProfile profile, String language) throws InterruptedException {
+        try {
+            modelDownloader.verify(URI.create(profile.getModelUrl() + language + DATA_EXT),
+                    Path.of(profile.getDataPath(DATA_PATH) + language + DATA_EXT), null).get();
+        } catch (ExecutionException e) {
+            logger.warn("Failed to verify trained data for {}: {}", language, e.getCause().getMessage());
+        }
+    }
+
+    /** Creates a tiny image of text, used to run each part of recognition once */
+    private static BufferedImage warmUpImage() {
+        final BufferedImage image = new BufferedImage(160, 40, BufferedImage.TYPE_INT_RGB);
+        final Graphics2D g = image.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, image.getWidth(), image.getHeight());
+        g.setColor(Color.BLACK);
+        g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 20));
+        g.drawString("Warm up", 20, 28);
+        g.dispose();
+        return image;
+    }
+
+    /**
+     * Sets whether images are compared to the previous image of this processor,
+     * such that only the parts which changed are recognized again
+     * @param incremental True to reuse the text of unchanged parts (the default), false to always recognize everything
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+        if (!incremental) previousResult.set(null);
+    }
+
+    /**
+     * Gets the pool of engines used by all processors, which may be used to configure it
+     * @return The shared engine pool
+     */
+    public static TesseractEnginePool getEnginePool() {
+        return enginePool;
+    }
+
+    /**
+     * Gets the cache of results shared by all processors, which may be used to configure it or read its counters
+     * @return The shared result cache
+     */
+    public static OcrResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Gets the tiler used by all processors, which may be used to change when images are split
+     * @return The shared tiler
+     */
+    public static OcrTiler getTiler() {
+        return tiler;
+    }
+
+    /**
+     * Gets the detector used by all processors to skip images without text, which may be used to disable it
+     * @return The shared text presence detector
+     */
+    public static TextPresenceDetector getTextDetector() {
+        return textDetector;
+    }
+
+    /**
+     * Gets the script detector used by all processors to choose languages, which may be used to disable it
+     * @return The shared script detector
+     */
+    public static ScriptDetector getScriptDetector() {
+        return scriptDetector;
+    }
+
+    /**
+     * Gets the latency & size histograms of requests from all processors
+     * @return The shared metrics
+     */
+    public static OcrMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Registers the metrics of all processors with JMX, unless they already are.
+     * Called by long-running entry points only, since registering starts the platform MBean server.
+     */
+    public static void registerMetrics() {
+        if (metricsRegistered.compareAndSet(false, true)) metrics.register();
+    }
+
+    /**
+     * Gets the downloader of trained data used by all processors, which may be used to listen to its progress
+     * @return The shared model downloader
+     */
+    public static ModelDownloader getModelDownloader() {
+        return modelDownloader;
+    }
+
+    /**
+     * Gets a usable Tesseract language for the default profile, performing necessary setup & prep
+     * @param locale Preferred locale for OCR
+     * @return Language code for which trained data is available
+     */
+    String getLanguage(Locale locale) throws TesseractException {
+        return getLanguage(locale, OcrProfile.DEFAULT);
+    }
+    /**
+     * Gets a usable Tesseract language, performing necessary setup & prep
      * @param locale Preferred locale for OCR
-     * @return A new  Tesseract instance
+     * @param profile Profile whose trained data is needed
+     * @return Language code for which trained data is available
      */
-    private Tesseract getTesseract(Locale locale) throws  TesseractException {
+    String getLanguage(Locale locale, OcrProfile profile) throws TesseractException {
         String language;
         try {
             language = locale.getISO3Language();
@@ -58,20 +481,22 @@ public class TesseractOcrProcessor implements OcrProcessor {
             logger.warn("Missing resource for locale {}, will default to {}.", locale, DEFAULT_LANG);
             language = DEFAULT_LANG;
         }
-        return getTesseract(language);
+        return getLanguage(language, profile);
     }
     /**
-     * Gets a Tesseract OCR instance, performing necessary setup & prep (such as download a model if needed)
+     * Gets a usable Tesseract language, performing necessary setup & prep (such as download a model if needed)
      * @param language Preferred language for OCR
-     * @return A new Tesseract instance
+     * @param profile Profile whose trained data is needed
+     * @return Language code for which trained data is available
      */
-    private Tesseract getTesseract(String language) throws TesseractException {
+    private String getLanguage(String language, OcrProfile profile) throws TesseractException {
         // Download language
-        String fromUrl = DATA_URL + language + DATA_EXT;
-        String toPath = DATA_PATH + language + DATA_EXT;
-        File dataDir = new File(DATA_PATH);
+        final String dataPath = profile.getDataPath(DATA_PATH);
+        String fromUrl = profile.getModelUrl() + language + DATA_EXT;
+        String toPath = dataPath + language + DATA_EXT;
+        File dataDir = new File(dataPath);
         //noinspection ResultOfMethodCallIgnored
-        dataDir.mkdir();
+        dataDir.mkdirs();
         // Download the file with various fallbacks
         if (!downloadFileIfNotExists(fromUrl, toPath)) {
             if (language.equals(DEFAULT_LANG)) {
@@ -79,7 +504,9 @@ public class TesseractOcrProcessor implements OcrProcessor {
                 // Look for any valid file in the directory
                 boolean foundFallback = false;
                 for (File file : Objects.requireNonNull(dataDir.listFiles())) {
-                    if (file.getName().endsWith(DATA_EXT)) {
+                    // Orientation & script detection data can't recognize text
+                    if (file.getName().endsWith(DATA_EXT)
+                            && !file.getName().equals(ScriptDetector.OSD_LANGUAGE + DATA_EXT)) {
                         logger.warn("...but found {} to use as a final fallback.", file.getName());
                         //noinspection ReassignedVariable
                         language = file.getName().replace(DATA_EXT, "");
@@ -88,41 +515,37 @@ public class TesseractOcrProcessor implements OcrProcessor {
                     }
                 }
                 if (!foundFallback) {
-                    logger.warn("...and no usable files were found in {}, so OCR cannot be performed!", DATA_PATH);
+                    logger.warn("...and no usable files were found in {}, so OCR cannot be performed!", dataPath);
                     throw new TesseractException("Completely failed to find a usable language data file");
                 }
             } else {
                 logger.warn("Downloading trained date for {} failed, trying {} as a fallback", language, DEFAULT_LANG);
-                return getTesseract(DEFAULT_LANG);
+                return getLanguage(DEFAULT_LANG, profile);
             }
         }
-
-        // Setup and return  Tesseract instance
-        Tesseract tesseract = new  Tesseract();
-        tesseract.setDatapath(DATA_PATH);
-        tesseract.setLanguage(language);
-        return  tesseract;
+        return language;
     }
 
     /**
-     * Downloads a file if it doesn't exist
+     * Downloads a file if it doesn't exist, waiting for the download to finish.
+     * No checksum is passed, since the model repositories don't publish them, so downloads are only checked
+     * against their length.
      * @param fromUrl Web URL to download from
      * @param toPath Relative file path to download to
      * @return True if file exists previously or after downloading, false if non-existent and download failed
      */
-    private boolean downloadFileIfNotExists(String fromUrl, String toPath) {
-        final File target = new File(toPath);
-        if (target.exists()) return true;
-        // Credit: https://www.baeldung.com/java-download-file
-        try (BufferedInputStream in = new BufferedInputStream(URI.create(fromUrl).toURL().openStream());
-             FileOutputStream fileOutputStream = new FileOutputStream(toPath)) {
-            byte[] dataBuffer = new byte[1024];
-            int bytesRead;
-            while ((bytesRead = in.read(dataBuffer, 0, 1024)) != -1)
-                fileOutputStream.write(dataBuffer, 0, bytesRead);
+    private static boolean downloadFileIfNotExists(String fromUrl, String toPath) {
+        final boolean existed = Files.exists(Path.of(toPath));
+        final long startTime = System.nanoTime();
+        try {
+            modelDownloader.download(URI.create(fromUrl), Path.of(toPath), null).get();
+            if (!existed) metrics.recordStageSince(OcrMetrics.Stage.MODEL_DOWNLOAD, startTime);
             return true;
-        } catch (IOException e) {
-            logger.error("Exception when downloading {}: {}", fromUrl, e.getMessage());
+        } catch (ExecutionException e) {
+            logger.error("Exception when downloading {}: {}", fromUrl, e.getCause().getMessage());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             return false;
         }
     }
@@ -0,0 +1,178 @@
+package org.threethan.universalreader.ocr;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+
+/**
+ * Cheaply estimates whether an image is likely to contain text, so that photos, icons & blank images
+ * don't each cost a full recognition. Takes a few milliseconds, even for a full screenshot.
+ * <p/>
+ * Rows are sampled across the image, and along each one, edges (steep changes in luminance) are found.
+ * Text is drawn in thin strokes on a mostly flat background, so along a row through a line of text,
+ * most edges pair up into narrow strokes which return to the level of the background on the other side.
+ * Photos have few edges which pair up that way, and little flat background between them,
+ * while blank images, gradients & simple shapes have too few strokes.
+ * Text is assumed to be present once rows with enough strokes form a band as tall as a small line of text.
+ * <p/>
+ * Errs towards finding text, since skipping an image with text is worse than recognizing one without any.
+ */
+public class TextPresenceDetector {
+    /** Most rows sampled from an image; taller images are sampled every few rows */
+    private static final int MAX_ROWS = 360;
+    /** Images narrower or shorter than this are always assumed to contain text, since they're cheap to recognize */
+    private static final int MIN_SIZE = 16;
+    /** Change in luminance between neighbouring pixels at or below which they count as flat */
+    private static final int FLAT_TOLERANCE = 6;
+    /** Total change in luminance across an edge for it to count */
+    private static final int EDGE_CONTRAST = 40;
+    /** Strokes a row must cross to count as part of a line of text */
+    private static final int MIN_ROW_STROKES = 3;
+    /** Fraction of a row's pixels which must be flat for it to count as text on a background */
+    private static final double MIN_FLAT_FRACTION = 0.5;
+    /** Fraction of a row's edges which must pair up into strokes for it to count as text */
+    private static final double MIN_PAIRED_FRACTION = 0.5;
+    /** Furthest a stroke may be from the previous one, relative to its own width, to count towards text */
+    private static final int MAX_STROKE_SPACING = 3;
+    /** Minimum height of a band of text rows, in pixels */
+    private static final int MIN_BAND_HEIGHT = 4;
+
+    private volatile boolean enabled = true;
+
+    /**
+     * Estimates whether an image contains text
+     * @param image Image of any type
+     * @return False if the image is unlikely to contain any text, true if it might or if detection is disabled
+     */
+    public boolean mayContainText(BufferedImage image) {
+        if (!enabled) return true;
+        final int w = image.getWidth();
+        final int h = image.getHeight();
+        if (w < MIN_SIZE || h < MIN_SIZE) return true;
+        final int step = (h + MAX_ROWS - 1) / MAX_ROWS;
+        // Strokes of large text, such as headings, are wider
+        final int maxStroke = Math.max(6, Math.min(w, h) / 30);
+        final RowReader reader = new RowReader(image);
+        int bandStart = -1;
+        for (int y = 0; y < h; y += step) {
+            if (!isTextRow(reader.read(y), maxStroke)) {
+                bandStart = -1;
+                continue;
+            }
+            if (bandStart < 0) bandStart = y;
+            if (y > bandStart && y - bandStart + 1 >= MIN_BAND_HEIGHT) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether a row looks like it passes through a line of text
+     * @param luminance Luminance of each pixel in the row
+     * @param maxStroke Widest stroke of text, in pixels
+     */
+    static boolean isTextRow(byte[] luminance, int maxStroke) {
+        final int w = luminance.length;
+        int flat = 0;
+        int edges = 0;
+        int strokes = 0;
+        // Total change & start of the steep run of pixels being followed
+        int runSum = 0;
+        int runStart = 0;
+        // Change & start of the previous edge which hasn't been paired into a stroke yet
+        int lastSum = 0;
+        int lastStart = 0;
+        int lastEnd = 0;
+        // End of the previous stroke
+        int strokeEnd = Integer.MIN_VALUE / 2;
+        int previous = luminance[0] & 0xFF;
+        for (int x = 1; x <= w; x++) {
+            final int d;
+            if (x < w) {
+                final int current = luminance[x] & 0xFF;
+                d = current - previous;
+                previous = current;
+            } else {
+                d = 0; // Closes the last run
+            }
+            final boolean steep = Math.abs(d) > FLAT_TOLERANCE;
+            if (!steep && x < w) flat++;
+            if (steep && (runSum == 0 || (d > 0) == (runSum > 0))) {
+                if (runSum == 0) runStart = x;
+                runSum += d;
+                continue;
+            }
+            if (Math.abs(runSum) >= EDGE_CONTRAST) {
+                edges++;
+                // A stroke goes back to about the level it left, soon after
+                if (lastSum != 0 && (lastSum > 0) != (runSum > 0) && runStart - lastEnd <= maxStroke
+                        && Math.abs(runSum + lastSum) * 2 <= Math.min(Math.abs(runSum), Math.abs(lastSum))) {
+                    // Letters are only a few stroke widths apart, unlike the strings of a mesh or the edges of shapes
+                    if (lastStart - strokeEnd <= MAX_STROKE_SPACING * (x - lastStart)) strokes++;
+                    strokeEnd = x;
+                    lastSum = 0;
+                } else {
+                    lastSum = runSum;
+                    lastStart = runStart;
+                    lastEnd = x;
+                }
+            }
+            runSum = steep ? d : 0;
+            runStart = x;
+        }
+        return strokes >= MIN_ROW_STROKES && flat >= MIN_FLAT_FRACTION * (w - 1)
+                && strokes * 2 >= MIN_PAIRED_FRACTION * edges;
+    }
+
+    /** Reads the luminance of single rows of an image, without converting the rest of it */
+    private static class RowReader {
+        private final BufferedImage image;
+        private final Raster raster;
+        private final byte[] luminance;
+        private final int[] argb;
+        private final byte[] rgb;
+
+        RowReader(BufferedImage image) {
+            this.image = image;
+            this.raster = image.getRaster();
+            final int w = image.getWidth();
+            this.luminance = new byte[w];
+            this.argb = image.getType() == BufferedImage.TYPE_BYTE_GRAY
+                    || image.getType() == BufferedImage.TYPE_3BYTE_BGR ? null : new int[w];
+            this.rgb = image.getType() == BufferedImage.TYPE_3BYTE_BGR ? new byte[w * 3] : null;
+        }
+
+        /**
+         * Reads a row
+         * @param y Index of the row
+         * @return Luminance of each pixel in the row, in an array reused by the next call
+         */
+        byte[] read(int y) {
+            final int w = luminance.length;
+            if (image.getType() == BufferedImage.TYPE_BYTE_GRAY) {
+                raster.getDataElements(0, y, w, 1, luminance);
+            } else if (rgb != null) {
+                // Data elements of 3-byte images are always in RGB order, regardless of how they're stored
+                raster.getDataElements(0, y, w, 1, rgb);
+                for (int x = 0, i = 0; x < w; x++, i += 3)
+                    luminance[x] = (byte) (((rgb[i] & 0xFF) * 77 + (rgb[i + 1] & 0xFF) * 150
+                            + (rgb[i + 2] & 0xFF) * 29) >> 8);
+            } else {
+                image.getRGB(0, y, w, 1, argb, 0, w);
+                ImagePreprocessor.toLuminance(argb, luminance, 0);
+            }
+            return luminance;
+        }
+    }
+
+    /** Gets whether images are checked for text, or all assumed to contain it */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Sets whether images are checked for text
+     * @param enabled True to skip images unlikely to contain text (the default), false to recognize all images
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+}
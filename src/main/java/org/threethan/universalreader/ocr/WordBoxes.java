@@ -0,0 +1,276 @@
+package org.threethan.universalreader.ocr;
+
+import java.awt.*;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Where each recognized word and line is in an image, where it is in the recognized text, and how confident
+ * the engine was in each word. Collected during recognition, so no second pass is needed to find them.
+ * <p/>
+ * Stored as a few primitive arrays rather than an object per word, since a full screenshot can hold
+ * thousands of words. Words and lines are in the same order as the text.
+ */
+public final class WordBoxes implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** Boxes of an image without any words, or whose words weren't collected */
+    public static final WordBoxes EMPTY = new WordBoxes(new int[0], new int[0], new float[0], new int[0], new int[0]);
+
+    /** Left, top, width & height of each word, in pixels */
+    private final int[] wordBounds;
+    /** Start (inclusive) & end (exclusive) of each word in the text */
+    private final int[] wordRanges;
+    /** Confidence of each word, from 0 to 100 */
+    private final float[] confidences;
+    /** Left, top, width & height of each line, in pixels */
+    private final int[] lineBounds;
+    /** Start (inclusive) & end (exclusive) of each line in the text */
+    private final int[] lineRanges;
+
+    private WordBoxes(int[] wordBounds, int[] wordRanges, float[] confidences, int[] lineBounds, int[] lineRanges) {
+        this.wordBounds = wordBounds;
+        this.wordRanges = wordRanges;
+        this.confidences = confidences;
+        this.lineBounds = lineBounds;
+        this.lineRanges = lineRanges;
+    }
+
+    /** Gets the number of words */
+    public int getWordCount() {
+        return confidences.length;
+    }
+
+    /**
+     * Gets the box around a word
+     * @param word Index of the word
+     * @return Bounds of the word in the image
+     */
+    public Rectangle getWordBounds(int word) {
+        return bounds(wordBounds, word);
+    }
+
+    /**
+     * Gets where a word starts in the text
+     * @param word Index of the word
+     */
+    public int getWordStart(int word) {
+        return wordRanges[word * 2];
+    }
+
+    /**
+     * Gets where a word ends in the text, exclusive
+     * @param word Index of the word
+     */
+    public int getWordEnd(int word) {
+        return wordRanges[word * 2 + 1];
+    }
+
+    /**
+     * Gets how confident the engine was in a word
+     * @param word Index of the word
+     * @return Confidence from 0 to 100
+     */
+    public float getConfidence(int word) {
+        return confidences[word];
+    }
+
+    /** Gets the number of lines */
+    public int getLineCount() {
+        return lineRanges.length / 2;
+    }
+
+    /**
+     * Gets the box around a line
+     * @param line Index of the line
+     * @return Bounds of the line in the image
+     */
+    public Rectangle getLineBounds(int line) {
+        return bounds(lineBounds, line);
+    }
+
+    /**
+     * Gets where a line starts in the text
+     * @param line Index of the line
+     */
+    public int getLineStart(int line) {
+        return lineRanges[line * 2];
+    }
+
+    /**
+     * Gets where a line ends in the text, exclusive
+     * @param line Index of the line
+     */
+    public int getLineEnd(int line) {
+        return lineRanges[line * 2 + 1];
+    }
+
+    /**
+     * Finds the word at a position in the text
+     * @param index Position in the text
+     * @return Index of the word containing the position, or -1 if it's not within a word
+     */
+    public int findWord(int index) {
+        int low = 0, high = getWordCount() - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (getWordEnd(mid) <= index) low = mid + 1;
+            else if (getWordStart(mid) > index) high = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the area of the image covered by a range of the text, such as a sentence being spoken
+     * @param start Start of the range in the text, inclusive
+     * @param end End of the range in the text, exclusive
+     * @return Union of the boxes of all words overlapping the range, or null if there are none
+     */
+    public Rectangle getBounds(int start, int end) {
+        Rectangle union = null;
+        for (int word = 0; word < getWordCount() && getWordStart(word) < end; word++) {
+            if (getWordEnd(word) <= start) continue;
+            union = union == null ? getWordBounds(word) : union.union(getWordBounds(word));
+        }
+        return union;
+    }
+
+    /**
+     * Maps all boxes from a preprocessed image back to the original image
+     * @param mapping Mapping recorded while preprocessing
+     * @return Boxes in original coordinates
+     */
+    public WordBoxes map(ImagePreprocessor.Mapping mapping) {
+        return new WordBoxes(map(wordBounds, mapping), wordRanges, confidences, map(lineBounds, mapping), lineRanges);
+    }
+
+    private static int[] map(int[] bounds, ImagePreprocessor.Mapping mapping) {
+        final int[] mapped = new int[bounds.length];
+        for (int i = 0; i < bounds.length; i += 4) {
+            final Rectangle r =
+                    mapping.toOriginal(new Rectangle(bounds[i], bounds[i + 1], bounds[i + 2], bounds[i + 3]));
+            mapped[i] = r.x;
+            mapped[i + 1] = r.y;
+            mapped[i + 2] = r.width;
+            mapped[i + 3] = r.height;
+        }
+        return mapped;
+    }
+
+    private static Rectangle bounds(int[] bounds, int index) {
+        final int i = index * 4;
+        return new Rectangle(bounds[i], bounds[i + 1], bounds[i + 2], bounds[i + 3]);
+    }
+
+    /** Gets roughly how much memory the boxes take up, in bytes */
+    long memorySize() {
+        return 4L * (wordBounds.length + wordRanges.length + confidences.length + lineBounds.length
+                + lineRanges.length);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof WordBoxes other && Arrays.equals(wordBounds, other.wordBounds)
+                && Arrays.equals(wordRanges, other.wordRanges) && Arrays.equals(confidences, other.confidences)
+                && Arrays.equals(lineBounds, other.lineBounds) && Arrays.equals(lineRanges, other.lineRanges);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(wordRanges) * 31 + Arrays.hashCode(wordBounds);
+    }
+
+    @Override
+    public String toString() {
+        return "WordBoxes[" + getWordCount() + " words, " + getLineCount() + " lines]";
+    }
+
+    /** Collects boxes one word and line at a time, growing its arrays as needed */
+    public static class Builder {
+        private int[] wordBounds = new int[64];
+        private int[] wordRanges = new int[32];
+        private float[] confidences = new float[16];
+        private int[] lineBounds = new int[16];
+        private int[] lineRanges = new int[8];
+        private int words = 0;
+        private int lines = 0;
+
+        /**
+         * Adds a word
+         * @param bounds Box around the word in the image
+         * @param confidence Confidence from 0 to 100
+         * @param start Start of the word in the text
+         * @param end End of the word in the text, exclusive
+         */
+        public void addWord(Rectangle bounds, float confidence, int start, int end) {
+            if (words == confidences.length) {
+                wordBounds = Arrays.copyOf(wordBounds, words * 8);
+                wordRanges = Arrays.copyOf(wordRanges, words * 4);
+                confidences = Arrays.copyOf(confidences, words * 2);
+            }
+            put(wordBounds, words, bounds);
+            wordRanges[words * 2] = start;
+            wordRanges[words * 2 + 1] = end;
+            confidences[words++] = confidence;
+        }
+
+        /**
+         * Adds a line
+         * @param bounds Box around the line in the image
+         * @param start Start of the line in the text
+         * @param end End of the line in the text, exclusive
+         */
+        public void addLine(Rectangle bounds, int start, int end) {
+            if (lines * 2 == lineRanges.length) {
+                lineBounds = Arrays.copyOf(lineBounds, lines * 8);
+                lineRanges = Arrays.copyOf(lineRanges, lines * 4);
+            }
+            put(lineBounds, lines, bounds);
+            lineRanges[lines * 2] = start;
+            lineRanges[lines++ * 2 + 1] = end;
+        }
+
+        /**
+         * Adds the words and lines within part of the text of other boxes, such as those of a tile,
+         * moving them to where that part ends up in the image and text
+         * @param boxes Boxes to add
+         * @param dx Distance to move boxes right
+         * @param dy Distance to move boxes down
+         * @param start Start of the part of their text to add
+         * @param end End of the part of their text to add, exclusive
+         * @param textOffset Position in the text being built at which their text at start was added
+         */
+        public void append(WordBoxes boxes, int dx, int dy, int start, int end, int textOffset) {
+            final int shift = textOffset - start;
+            for (int word = 0; word < boxes.getWordCount(); word++) {
+                if (boxes.getWordStart(word) < start || boxes.getWordEnd(word) > end) continue;
+                final Rectangle bounds = boxes.getWordBounds(word);
+                bounds.translate(dx, dy);
+                addWord(bounds, boxes.getConfidence(word),
+                        boxes.getWordStart(word) + shift, boxes.getWordEnd(word) + shift);
+            }
+            for (int line = 0; line < boxes.getLineCount(); line++) {
+                if (boxes.getLineStart(line) < start || boxes.getLineEnd(line) > end) continue;
+                final Rectangle bounds = boxes.getLineBounds(line);
+                bounds.translate(dx, dy);
+                addLine(bounds, boxes.getLineStart(line) + shift, boxes.getLineEnd(line) + shift);
+            }
+        }
+
+        private static void put(int[] array, int index, Rectangle bounds) {
+            array[index * 4] = bounds.x;
+            array[index * 4 + 1] = bounds.y;
+            array[index * 4 + 2] = bounds.width;
+            array[index * 4 + 3] = bounds.height;
+        }
+
+        /** Creates boxes of everything added so far */
+        public WordBoxes build() {
+            if (words == 0 && lines == 0) return EMPTY;
+            return new WordBoxes(Arrays.copyOf(wordBounds, words * 4), Arrays.copyOf(wordRanges, words * 2),
+                    Arrays.copyOf(confidences, words), Arrays.copyOf(lineBounds, lines * 4),
+                    Arrays.copyOf(lineRanges, lines * 2));
+        }
+    }
+}
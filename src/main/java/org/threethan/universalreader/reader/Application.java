@@ -15,6 +15,7 @@ import javafx.stage.Stage;
 import javafx.util.Duration;
 import org.threethan.universalreader.helper.StyleHelper;
 import org.threethan.universalreader.helper.WindowHelper;
+import org.threethan.universalreader.ocr.TesseractOcrProcessor;
 
 import java.io.IOException;
 import java.util.Objects;
@@ -36,6 +37,8 @@ public class Application extends javafx.application.Application {
         new JFXPanel(); // this will prepare JavaFX toolkit and environment
         // This workaround can be 5-10 seconds faster than using Application.launch()
         Platform.runLater(() -> new Application().start(new Stage()));
+        // Off the FX thread, while the window opens
+        TesseractOcrProcessor.registerMetrics();
     }
 
     public Controller controller;
@@ -56,6 +59,8 @@ public class Application extends javafx.application.Application {
         new StyleHelper(stage).setStyles(scene);
 
         controller.setStage(stage);
+        // Once the window is showing, get OCR ready for the first image
+        Platform.runLater(controller::warmUp);
     }
 
     @Override
@@ -16,6 +16,7 @@ import javafx.scene.input.Clipboard;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyCombination;
 import javafx.scene.input.KeyEvent;
+import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.AnchorPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
@@ -28,10 +29,15 @@ import org.threethan.universalreader.helper.SpeechHelper;
 import org.threethan.universalreader.helper.WindowHelper;
 import org.threethan.universalreader.lib.FXInteractions;
 import org.threethan.universalreader.lib.IOUtils;
+import org.threethan.universalreader.ocr.ModelDownloader;
+import org.threethan.universalreader.ocr.OcrPriority;
 import org.threethan.universalreader.ocr.OcrProcessor;
+import org.threethan.universalreader.ocr.TesseractOcrProcessor;
 
 import java.util.ArrayList;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 /**
  * The controller for the viewer window.
@@ -42,7 +48,7 @@ import java.util.Objects;
  */
 public class Controller extends Reader {
 
-    @FXML private Node loadingIndicator;
+    @FXML private ProgressIndicator loadingIndicator;
     @FXML private Button startSpeakingButton;
     @FXML private Button stopSpeakingButton;
     @FXML private ComboBox<SpeechHelper.VoiceSpeed> speedSelectionBox;
@@ -69,12 +75,21 @@ public class Controller extends Reader {
 
     /** The text previously set via the OCR server, excluding any manual edits */
     private String mostRecentOcrText;
+    /** The text currently being spoken in parts, which grows as partial responses are spoken */
+    private StringBuilder partsText = new StringBuilder();
+    /** True while auto-speaking partial responses, with more parts yet to be recognized */
+    private boolean speakingPartials = false;
     private Stage stage;
     private final SettingsMenu settingsMenu = new SettingsMenu(this);
 
     /** Used to display currently read text line-by-line when in overlay mode */
     Tooltip overlayReadoutTooltip = new Tooltip();
 
+    /** Shows the progress of downloading trained data while loading */
+    private final ModelDownloader.ProgressListener downloadProgressListener = (target, done, total) ->
+            Platform.runLater(() -> loadingIndicator.setProgress(total <= 0 || done >= total
+                    ? ProgressIndicator.INDETERMINATE_PROGRESS : (double) done / total));
+
     /** Called automatically by javaFX when FXML vars are ready */
     @FXML private void initialize() {
         // Set initial state of open clipboard button
@@ -153,6 +168,8 @@ public class Controller extends Reader {
         r.widthProperty().bind(textArea.widthProperty());
         r.heightProperty().bind(textArea.heightProperty());
         textHighlightArea.setClip(r);
+
+        TesseractOcrProcessor.getModelDownloader().addProgressListener(downloadProgressListener);
     }
 
     /** Called by the application class when the application is stopping/closing */
@@ -161,6 +178,7 @@ public class Controller extends Reader {
         // Calling this here stops these settings from being reverted due to multi-window edge cases
         // Calling this function also, intentionally, saves the settings from this window to the settings file
         updateDefaultWindowSettings();
+        TesseractOcrProcessor.getModelDownloader().removeProgressListener(downloadProgressListener);
         super.destroy();
     }
 
@@ -194,7 +212,14 @@ public class Controller extends Reader {
 
         setKeyboardShortcuts(stage);
 
-        stage.focusedProperty().addListener((v1, v2, focused) -> { if (focused) mostRecentController = this; } );
+        stage.focusedProperty().addListener((v1, v2, focused) -> {
+            if (!focused) return;
+            mostRecentController = this;
+            wakeClipboardMonitor();
+        });
+        // The user may be about to copy something to read
+        stage.addEventFilter(KeyEvent.KEY_PRESSED, e -> wakeClipboardMonitor());
+        stage.addEventFilter(MouseEvent.MOUSE_PRESSED, e -> wakeClipboardMonitor());
         mostRecentController = this;
 
         // Set up the tooltip for overlay text display
@@ -239,21 +264,23 @@ public class Controller extends Reader {
     /**
      * Sets the image used by this controller. Also starts client/server communication.
      * @param image awt image instance, should be a {@link java.awt.image.BufferedImage}
+     * @param priority Whether the user asked for the image, or it was opened automatically
      */
     @Override
-    public void submitImage(Image image) {
+    public void submitImage(Image image, @SuppressWarnings("ClassEscapesDefinedScope") OcrPriority priority) {
         tutorial.setVisible(false);
         if (image == null) return;
         openedImageView.setImage(image);
         // Clear text area & start loading
         onStopSpeakingPressed();
+        speakingPartials = false;
         loadingIndicator.setVisible(true);
         if (textArea != null) {
             textArea.clear();
             textArea.setEditable(false);
         }
         startSpeakingButton.setDisable(true);
-        super.submitImage(image);
+        super.submitImage(image, priority);
     }
 
     /**
@@ -262,20 +289,53 @@ public class Controller extends Reader {
      */
     @Override
     protected void processResponse(@SuppressWarnings("ClassEscapesDefinedScope") OcrProcessor.Result response) {
-        super.processResponse(response);
-        textArea.setText(response.ocrText());
+        // Set on the FX thread, so that it replaces the text of any partial responses still waiting to be appended
         Platform.runLater(() -> {
+            textArea.setText(response.ocrText());
+            super.processResponse(response);
             loadingIndicator.setVisible(false);
             this.mostRecentOcrText = textArea.getText();
             textArea.setEditable((boolean) settings.getOrDefault(Settings.Pref.EDITABLE, false));
 
             startSpeakingButton.setDisable(false);
-            // Auto-speak, if enabled
-            if ((boolean) settings.getOrDefault(Settings.Pref.AUTO_SPEAK, false)) speak(textArea.getText());
+            // Auto-speak, if enabled and not already speaking the partial responses
+            if (speakingPartials) {
+                speakingPartials = false;
+                SpeechHelper.endAppending();
+            } else if ((boolean) settings.getOrDefault(Settings.Pref.AUTO_SPEAK, false)) speak(textArea.getText());
         });
 
     }
 
+    /**
+     * Appends part of a response from the server, so text is readable while the rest is still being recognized
+     * @param partial Newly recognized text
+     * @param request Gets the request the part belongs to
+     */
+    @Override
+    protected void processPartialResponse(@SuppressWarnings("ClassEscapesDefinedScope") OcrProcessor.Result partial,
+                                          Supplier<CompletableFuture<OcrProcessor.Result>> request) {
+        super.processPartialResponse(partial, request);
+        Platform.runLater(() -> {
+            // Parts of a previous image may arrive after the text area was cleared for the next one
+            if (!isCurrentRequest(request.get())) return;
+            final boolean first = textArea.getText().isEmpty();
+            textArea.appendText(partial.ocrText());
+            if (!(boolean) settings.getOrDefault(Settings.Pref.AUTO_SPEAK, false)) return;
+            // Start auto-speaking with the first part, then queue later parts behind it
+            if (first) {
+                speakingPartials = true;
+                startSpeakingButton.setDisable(false);
+                speakInParts(textArea.getText(), true);
+            } else if (speakingPartials) {
+                partsText.append(partial.ocrText());
+                textHighlightLater.setText(textHighlightLater.getText() + partial.ocrText());
+                // False if speech has since been stopped, in which case it shouldn't restart
+                speakingPartials = SpeechHelper.append(partial.ocrText());
+            }
+        });
+    }
+
     /**
      * Called when text in the main area is typed in
      */
@@ -389,6 +449,16 @@ public class Controller extends Reader {
 
     /** Speak a string in parts, and update the interface accordingly */
     private void speakInParts(String text) {
+        speakInParts(text, false);
+    }
+
+    /**
+     * Speak a string in parts, and update the interface accordingly
+     * @param text Text to speak
+     * @param expectMore True if more text will be appended to the end of the text area and spoken,
+     *                   until {@link SpeechHelper#endAppending()}
+     */
+    private void speakInParts(String text, boolean expectMore) {
         final String fullText = textArea.getText();
         int offset;
         if (text.equals(textArea.getText())) offset = 0;
@@ -403,21 +473,25 @@ public class Controller extends Reader {
         textHighlightBefore.setText(fullText.substring(0, offset));
         textHighlightAfter.setText(fullText.substring(offset+text.length()));
 
+        // May grow as more text is appended
+        final StringBuilder spokenText = new StringBuilder(text);
+        partsText = spokenText;
         SpeechHelper.speak(text, getVoiceName(), getVoiceSpeed(),
             (s, e) -> {
+                final String spoken = spokenText.toString();
                 if (isOverlay()) {
-                    overlayReadoutTooltip.setText(text.substring(s,e).strip());
+                    overlayReadoutTooltip.setText(spoken.substring(s,e).strip());
                     overlayReadoutTooltip.setMaxWidth(300);
                     overlayReadoutTooltip.setWrapText(true);
                     if (!overlayReadoutTooltip.isShowing()) overlayReadoutTooltip.show(stage);
                 } else {
                     textArea.setVisible(false);
-                    textHighlightEarlier.setText('\u200B' + text.substring(0, s));
-                    textHighlightCurrent.setText(text.substring(s, e));
-                    textHighlightLater.setText(text.substring(e));
+                    textHighlightEarlier.setText('\u200B' + spoken.substring(0, s));
+                    textHighlightCurrent.setText(spoken.substring(s, e));
+                    textHighlightLater.setText(spoken.substring(e));
                     FXInteractions.centerNodeInScrollPane(textHighlightArea, textHighlightCurrent);
                 }
-            });
+            }, expectMore);
     }
 
     /* BUTTONS */
@@ -453,11 +527,21 @@ public class Controller extends Reader {
         settingsMenu.show(settingsButton);
     }
 
-    /** Opens the image or text which is currently in the clipboard */
+    /** Opens the image or text which is currently in the clipboard. Public, so buttons & shortcuts can call it. */
+    @Override
     public void openClipboard() {
+        super.openClipboard();
+    }
+
+    /**
+     * Opens the image or text which is currently in the clipboard
+     * @param priority Whether the user asked for the clipboard, or it was opened automatically
+     */
+    @Override
+    protected void openClipboard(@SuppressWarnings("ClassEscapesDefinedScope") OcrPriority priority) {
         clearImage();
         tutorial.setVisible(false);
-        super.openClipboard();
+        super.openClipboard(priority);
         openImageClipboardButton.setDisable(true);
         openTextClipboardButton.setDisable(true);
     }
@@ -1,15 +1,29 @@
 package org.threethan.universalreader.reader;
 
-import javafx.embed.swing.SwingFXUtils;
 import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelReader;
 import javafx.scene.input.Clipboard;
 import org.threethan.universalreader.lib.ClipboardMonitorThread;
 import org.threethan.universalreader.helper.SpeechHelper;
+import org.threethan.universalreader.ocr.ImagePreprocessor;
+import org.threethan.universalreader.ocr.OcrMetrics;
+import org.threethan.universalreader.ocr.OcrPriority;
 import org.threethan.universalreader.ocr.OcrProcessor;
+import org.threethan.universalreader.ocr.OcrProfile;
+import org.threethan.universalreader.ocr.OcrServer;
+import org.threethan.universalreader.ocr.RemoteOcrProcessor;
+import org.threethan.universalreader.ocr.StreamingOcrProcessor;
 import org.threethan.universalreader.ocr.TesseractOcrProcessor;
 
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
 /**
  * In instance of a text viewer which can:
@@ -23,6 +37,8 @@ import java.util.List;
 public class Reader {
     /** The current text */
     protected String currentText;
+    /** The most recent request, which is cancelled if the viewer is closed before it completes */
+    private volatile CompletableFuture<OcrProcessor.Result> currentRequest;
 
     /** OCR settings instance for this window.
      * New windows spawn with the last-used settings,
@@ -37,8 +53,11 @@ public class Reader {
     /** Used to auto-open clipboard images, determine when to fully stop */
     private static final List<Reader> OPEN_READERS = new ArrayList<>();
 
-    /** The implementation and instance of ocrProcessor used by the viewer */
-    private final OcrProcessor ocrProcessor = new TesseractOcrProcessor();
+    /** The implementation and instance of ocrProcessor used by the viewer.
+     * Uses a local OCR server if one is running, so that its models are shared with other instances,
+     * and recognizes images locally otherwise. */
+    private final OcrProcessor ocrProcessor =
+            new RemoteOcrProcessor(OcrServer.DEFAULT_ADDRESS, TesseractOcrProcessor::new);
 
     /** Constructs a new Viewer, adds it to the list of open viewers, and binds it to the clipboard monitor */
     public Reader() {
@@ -46,9 +65,19 @@ public class Reader {
         clipboardMonitorThread.getUpdateActions().add(onClipboardContentChanged);
     }
 
+    /**
+     * Returns clipboard monitoring to fast polling, after it backed off while nothing changed.
+     * Called when the user focuses or interacts with a window, since a copy often follows.
+     */
+    protected static void wakeClipboardMonitor() {
+        clipboardMonitorThread.wake();
+    }
+
     /** Stop the viewer & clean up, similar to C++ destructor but must be called manually */
     public void destroy() {
         OPEN_READERS.remove(this);
+        final CompletableFuture<OcrProcessor.Result> request = currentRequest;
+        if (request != null) request.cancel(false);
         clipboardMonitorThread.getUpdateActions().remove(onClipboardContentChanged);
         // If the last window is closing
         if (OPEN_READERS.isEmpty()) {
@@ -58,16 +87,81 @@ public class Reader {
     }
 
     /**
-     * Sets the image currently opened by this controller, and submits it to the OCR Processor.
+     * Sets the image currently opened by this controller, and submits it to the OCR Processor
+     * as an explicit user action.
      * @param image awt image
      */
     public void submitImage(Image image) {
+        submitImage(image, OcrPriority.INTERACTIVE);
+    }
+
+    /**
+     * Sets the image currently opened by this controller, and submits it to the OCR Processor.
+     * @param image awt image
+     * @param priority Whether the user asked for the image, or it was opened automatically
+     */
+    public void submitImage(Image image, @SuppressWarnings("ClassEscapesDefinedScope") OcrPriority priority) {
+        final PixelReader pixelReader = image.getPixelReader();
+        if (pixelReader == null) return;
+        // Read straight into the packed frame used by the engine, rather than converting to an ARGB image first
+        final int w = (int) image.getWidth();
+        final Set<ImagePreprocessor.Step> preprocessing = getPreprocessingSteps();
+        final long startTime = System.nanoTime();
+        final BufferedImage frame = ImagePreprocessor.toFrame(w, (int) image.getHeight(),
+                preprocessing.contains(ImagePreprocessor.Step.GRAYSCALE),
+                (y, row) -> pixelReader.getPixels(0, y, w, 1, PixelFormat.getIntArgbInstance(), row, 0, w));
+        TesseractOcrProcessor.getMetrics().recordStageSince(OcrMetrics.Stage.IMAGE_CONVERSION, startTime);
+
         // Submit image to server (or local processor)
         OcrProcessor.Request request = new OcrProcessor.Request(
-                SwingFXUtils.fromFXImage(image, null),
-                SpeechHelper.getLocale(getVoiceName())
+                frame,
+                SpeechHelper.getLocale(getVoiceName()),
+                preprocessing,
+                getOcrProfile(),
+                priority
         );
-        ocrProcessor.submitRequest(request, this::processResponse);
+        // Partial responses may arrive before the future is returned, so they look it up once they're handled
+        final AtomicReference<CompletableFuture<OcrProcessor.Result>> submitted = new AtomicReference<>();
+        final CompletableFuture<OcrProcessor.Result> future =
+                ocrProcessor instanceof StreamingOcrProcessor streamingOcrProcessor
+                        ? streamingOcrProcessor.submit(request,
+                                partial -> processPartialResponse(partial, submitted::get), null)
+                        : ocrProcessor.submit(request, null);
+        submitted.set(future);
+        currentRequest = future;
+        // Errors, including timeouts, are shown in place of the text; a request superseded by a newer one shows nothing
+        future.whenComplete((result, error) -> {
+            if (error != null) result = OcrProcessor.Result.ofError(error);
+            if (result != null) processResponse(result);
+        });
+    }
+
+    /**
+     * Prepares the OCR processor in the background for the locale of the current voice,
+     * so that the first image is recognized as quickly as later ones
+     */
+    public void warmUp() {
+        ocrProcessor.warmUp(SpeechHelper.getLocale(getVoiceName()), getOcrProfile());
+    }
+
+    /**
+     * Process part of a response from the server, received while the rest is still being recognized.
+     * Always followed by a call to {@link #processResponse(OcrProcessor.Result)} with the full text.
+     * @param partial Newly recognized text, to be appended to that of previous parts
+     * @param request Gets the request the part belongs to, once it has been submitted,
+     *                which should be checked with {@link #isCurrentRequest} on the UI thread before using the part
+     */
+    protected void processPartialResponse(@SuppressWarnings("ClassEscapesDefinedScope") OcrProcessor.Result partial,
+                                          Supplier<CompletableFuture<OcrProcessor.Result>> request) {
+    }
+
+    /**
+     * Checks whether a request is the most recent one, and still waiting for its result,
+     * such that its partial responses should be shown
+     * @param request Request to check, or null if it hasn't been submitted yet
+     */
+    protected boolean isCurrentRequest(CompletableFuture<?> request) {
+        return request != null && request == currentRequest && !request.isDone();
     }
 
     /**
@@ -95,10 +189,10 @@ public class Reader {
             final Clipboard cb = Clipboard.getSystemClipboard();
             if (cb.hasImage() &&
                     (boolean) settings.getOrDefault(Settings.Pref.WATCH_CLIPBOARD_IMAGE, false))
-                openClipboard();
+                openClipboard(OcrPriority.AUTO);
             if (cb.hasString() &&
                     (boolean) settings.getOrDefault(Settings.Pref.WATCH_CLIPBOARD_TEXT, false))
-                openClipboard();
+                openClipboard(OcrPriority.AUTO);
         }
     }
 
@@ -132,6 +226,46 @@ public class Reader {
                 settings.getOrDefault(Settings.Pref.VOICE_SPEED, SpeechHelper.VoiceSpeed.DEFAULT);
     }
 
+    /**
+     * Gets the image preprocessing steps to run before OCR
+     */
+    @SuppressWarnings({"unchecked", "ClassEscapesDefinedScope"})
+    protected Set<ImagePreprocessor.Step> getPreprocessingSteps() {
+        return (Set<ImagePreprocessor.Step>) settings.getOrDefault(Settings.Pref.OCR_PREPROCESSING,
+                EnumSet.copyOf(ImagePreprocessor.DEFAULT_STEPS));
+    }
+
+    /**
+     * Enables or disables an image preprocessing step
+     * @param step Step to toggle
+     * @param enabled True to run the step before OCR
+     */
+    void setPreprocessingStep(@SuppressWarnings("ClassEscapesDefinedScope") ImagePreprocessor.Step step,
+                              boolean enabled) {
+        final EnumSet<ImagePreprocessor.Step> steps = EnumSet.noneOf(ImagePreprocessor.Step.class);
+        steps.addAll(getPreprocessingSteps());
+        if (enabled) steps.add(step);
+        else steps.remove(step);
+        settings.put(Settings.Pref.OCR_PREPROCESSING, steps);
+    }
+
+    /**
+     * Gets the OCR profile, which trades off recognition speed and accuracy
+     */
+    @SuppressWarnings("ClassEscapesDefinedScope")
+    protected OcrProfile getOcrProfile() {
+        return (OcrProfile) settings.getOrDefault(Settings.Pref.OCR_PROFILE, OcrProfile.DEFAULT);
+    }
+
+    /**
+     * Sets the OCR profile, and prepares its models in the background
+     * @param profile Profile to use for future images
+     */
+    void setOcrProfile(@SuppressWarnings("ClassEscapesDefinedScope") OcrProfile profile) {
+        settings.put(Settings.Pref.OCR_PROFILE, profile);
+        warmUp();
+    }
+
     /**
      * Speak a string with current settings for this window
      * @param text Text to speak
@@ -140,10 +274,18 @@ public class Reader {
         SpeechHelper.speak(text, getVoiceName(), getVoiceSpeed());
     }
 
-    /** Opens the image or text currently in the clipboard */
+    /** Opens the image or text currently in the clipboard, as an explicit user action */
     protected void openClipboard() {
+        openClipboard(OcrPriority.INTERACTIVE);
+    }
+
+    /**
+     * Opens the image or text currently in the clipboard
+     * @param priority Whether the user asked for the clipboard, or it was opened automatically
+     */
+    protected void openClipboard(@SuppressWarnings("ClassEscapesDefinedScope") OcrPriority priority) {
         final Clipboard cb = Clipboard.getSystemClipboard();
-        if (cb.hasImage()) submitImage(cb.getImage());
+        if (cb.hasImage()) submitImage(cb.getImage(), priority);
         else processResponse(new OcrProcessor.Result(cb.getString()));
     }
 }
@@ -28,6 +28,8 @@ public class Settings extends FileMap<Settings.Pref, Serializable> {
         USE_OVERLAY, // boolean
         IMAGE_BEHIND_TEXT, // boolean
         SPEAK_IN_PARTS, // boolean
+        OCR_PREPROCESSING, // EnumSet<ImagePreprocessor.Step>
+        OCR_PROFILE, // OcrProfile
 
         // Window settings, all doubles
         WIN_X,
@@ -7,6 +7,10 @@ import javafx.scene.control.ContextMenu;
 import javafx.stage.Screen;
 import org.threethan.universalreader.helper.SpeechHelper;
 import org.threethan.universalreader.lib.MenuBuilder;
+import org.threethan.universalreader.ocr.ImagePreprocessor;
+import org.threethan.universalreader.ocr.OcrProfile;
+
+import java.util.List;
 
 /**
  * Builds the settings menu for the main viewer application;
@@ -100,6 +104,20 @@ public class SettingsMenu {
                         b -> settings.put(Settings.Pref.AUTO_SPEAK, b))
         );
 
+        // Image preprocessing before OCR
+        MenuBuilder preprocessingMenuBuilder = new MenuBuilder("Image Preprocessing");
+        for (ImagePreprocessor.Step step : ImagePreprocessor.Step.values())
+            preprocessingMenuBuilder.addToggle(step.toString(),
+                    controller.getPreprocessingSteps().contains(step),
+                    b -> controller.setPreprocessingStep(step, b));
+        settingsMenuBuilder.addSubmenu(preprocessingMenuBuilder);
+
+        // Speed & accuracy of OCR
+        settingsMenuBuilder.addSelectionSetSubmenu("Recognition",
+                List.of(OcrProfile.values()),
+                controller.getOcrProfile(),
+                controller::setOcrProfile);
+
         return settingsMenuBuilder.buildContextMenu();
 
     }
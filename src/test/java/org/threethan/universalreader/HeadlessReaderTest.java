@@ -0,0 +1,60 @@
+package org.threethan.universalreader;
+
+import org.threethan.universalreader.ocr.OcrProfile;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HeadlessReaderTest {
+
+    @Test
+    @DisplayName("Test that options are parsed, and stdin is used if no files are given")
+    void testParse() {
+        final HeadlessReader.Options options = HeadlessReader.Options.parse(new String[]{
+                HeadlessReader.HEADLESS_ARG, "--lang", "de", "--profile", "fast", "--speak", "--voice", "Anna",
+                "--no-preprocessing", "a.png", "b.png"});
+        assertNotNull(options);
+        assertEquals(List.of("a.png", "b.png"), options.files());
+        assertEquals(Locale.GERMAN, options.locale());
+        assertEquals(OcrProfile.FAST, options.profile());
+        assertTrue(options.speak());
+        assertEquals("Anna", options.voice());
+        assertFalse(options.preprocess());
+        assertFalse(options.stats());
+
+        final HeadlessReader.Options defaults = HeadlessReader.Options.parse(new String[0]);
+        assertNotNull(defaults);
+        assertEquals(List.of("-"), defaults.files());
+        assertEquals(OcrProfile.DEFAULT, defaults.profile());
+        assertTrue(defaults.preprocess());
+        assertNull(HeadlessReader.Options.parse(new String[]{"--help"}));
+    }
+
+    @Test
+    @DisplayName("Test that invalid arguments print usage and exit with an error code, without recognizing anything")
+    void testInvalidArguments() {
+        for (String[] args : List.of(new String[]{"--profile", "slowest"}, new String[]{"--lang"},
+                new String[]{"--colour"})) {
+            final ByteArrayOutputStream err = new ByteArrayOutputStream();
+            assertEquals(2, HeadlessReader.run(args, new ByteArrayInputStream(new byte[0]),
+                    new PrintStream(new ByteArrayOutputStream()), new PrintStream(err)));
+            assertTrue(err.toString().contains("Usage"));
+        }
+    }
+
+    @Test
+    @DisplayName("Test that an unreadable image fails with an error code")
+    void testUnreadableImage() {
+        final ByteArrayOutputStream err = new ByteArrayOutputStream();
+        assertEquals(1, HeadlessReader.run(new String[0], new ByteArrayInputStream("Not an image".getBytes()),
+                new PrintStream(new ByteArrayOutputStream()), new PrintStream(err)));
+        assertTrue(err.toString().startsWith("-: "));
+    }
+}
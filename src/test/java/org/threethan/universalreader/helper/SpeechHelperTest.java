@@ -51,4 +51,18 @@ class SpeechHelperTest {
             lastSpeed = vs.speed();
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Test that splitting text into parts keeps every character, so part indices line up with the text")
+    void testPartsKeepText() {
+        final String text = "First block of the page. It has two sentences!\n\nSecond block, after a gap.\nThird line";
+        assertEquals(text, String.join("", SpeechHelper.toParts(text)));
+        assertTrue(SpeechHelper.toParts(text).length > 1);
+    }
+
+    @Test
+    @DisplayName("Test that text can't be appended when nothing is being spoken")
+    void testAppendWhenStopped() {
+        assertFalse(SpeechHelper.append("More text"));
+    }
+}
@@ -5,10 +5,10 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.RepeatedTest;
 import org.junit.jupiter.api.Test;
 
+import java.awt.*;
 import java.awt.image.BufferedImage;
 
-import static org.junit.jupiter.api.Assertions.assertFalse;
-import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.*;
 
 class ImageCompareTest {
 
@@ -70,5 +70,49 @@ class ImageCompareTest {
         assertTrue(endTime < startTime + MAX_NS);
     }
 
+    @Test
+    @DisplayName("Test that fingerprints match for identical images and exactly detect single pixel changes")
+    void testFingerprint() {
+        final BufferedImage img1A = TestImage.get("quick_brown_fox.png");
+        final BufferedImage img1B = TestImage.get("quick_brown_fox_copy.png");
+        final BufferedImage img2 = TestImage.get("sphinx_of_black.png");
+        assertEquals(ImageTools.fingerprint(img1A), ImageTools.fingerprint(img1B));
+        assertNotEquals(ImageTools.fingerprint(img1A), ImageTools.fingerprint(img2));
+        assertTrue(ImageTools.isIdentical(img1A, img1B));
+        assertFalse(ImageTools.isIdentical(img1A, img2));
+        assertFalse(ImageTools.isIdentical(TestImage.get("white128.png"), TestImage.get("white256.png")));
+
+        // Sampling misses a change to a single pixel, but fingerprints don't
+        for (int type : new int[] {BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_3BYTE_BGR,
+                BufferedImage.TYPE_BYTE_GRAY, BufferedImage.TYPE_USHORT_GRAY, BufferedImage.TYPE_BYTE_BINARY}) {
+            final BufferedImage a = convert(img1A, type);
+            final BufferedImage b = convert(img1A, type);
+            assertEquals(ImageTools.fingerprint(a), ImageTools.fingerprint(b));
+            b.setRGB(1, 1, a.getRGB(1, 1) == 0xFFFFFFFF ? 0xFF000000 : 0xFFFFFFFF);
+            assertTrue(ImageTools.isIdenticalFast(a, b));
+            assertNotEquals(ImageTools.fingerprint(a), ImageTools.fingerprint(b), "Type " + type);
+        }
+    }
 
-}
\ No newline at end of file
+    @Test
+    @DisplayName("Test that the fingerprint of a sub-image only depends on its own pixels")
+    void testFingerprintSubimage() {
+        final BufferedImage fox = convert(TestImage.get("quick_brown_fox.png"), BufferedImage.TYPE_3BYTE_BGR);
+        final int w = fox.getWidth() / 2;
+        final int h = fox.getHeight() / 2;
+        final BufferedImage region = fox.getSubimage(w / 2, h / 2, w, h);
+        final BufferedImage copy = convert(region, BufferedImage.TYPE_3BYTE_BGR);
+        assertEquals(ImageTools.fingerprint(copy), ImageTools.fingerprint(region));
+        assertNotEquals(ImageTools.fingerprint(fox.getSubimage(w / 2 + 1, h / 2, w, h)),
+                ImageTools.fingerprint(region));
+    }
+
+    /** Copies an image into another type */
+    private static BufferedImage convert(BufferedImage image, int type) {
+        final BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), type);
+        final Graphics2D g = copy.createGraphics();
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return copy;
+    }
+}
@@ -0,0 +1,71 @@
+package org.threethan.universalreader.lib;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PollingScheduleTest {
+
+    @Test
+    @DisplayName("Test that polling stays fast for a while, then backs off exponentially to the maximum interval")
+    void testBackoff() {
+        final PollingSchedule schedule = new PollingSchedule();
+        for (int i = 0; i < PollingSchedule.FAST_POLLS; i++) {
+            assertEquals(PollingSchedule.MIN_INTERVAL, schedule.unchanged());
+            assertFalse(schedule.isIdle());
+        }
+        long previous = PollingSchedule.MIN_INTERVAL;
+        long waited = 0;
+        while (previous < PollingSchedule.MAX_INTERVAL) {
+            final long interval = schedule.unchanged();
+            assertTrue(interval > previous);
+            assertTrue(interval <= Math.round(previous * PollingSchedule.BACKOFF));
+            waited += interval;
+            previous = interval;
+        }
+        assertTrue(schedule.isIdle());
+        // Reaches the slowest interval within seconds of the last activity
+        assertTrue(waited < 30_000);
+        assertEquals(PollingSchedule.MAX_INTERVAL, schedule.unchanged());
+    }
+
+    @Test
+    @DisplayName("Test that a change or reset returns to fast polling")
+    void testSnapBack() {
+        final PollingSchedule schedule = new PollingSchedule();
+        for (int i = 0; i < 30; i++) schedule.unchanged();
+        assertEquals(PollingSchedule.MAX_INTERVAL, schedule.getInterval());
+        assertEquals(PollingSchedule.MIN_INTERVAL, schedule.changed());
+        assertEquals(PollingSchedule.MIN_INTERVAL, schedule.unchanged());
+
+        for (int i = 0; i < 30; i++) schedule.unchanged();
+        schedule.reset();
+        assertFalse(schedule.isIdle());
+        assertEquals(PollingSchedule.MIN_INTERVAL, schedule.unchanged());
+    }
+
+    @Test
+    @DisplayName("Test that busy polls are retried after jittered delays which grow, without changing the interval")
+    void testBusyRetry() {
+        final PollingSchedule schedule = new PollingSchedule(250, 4000, new Random(42));
+        for (int i = 0; i < 30; i++) schedule.unchanged();
+        long base = PollingSchedule.BUSY_RETRY;
+        for (int i = 0; i < 8; i++) {
+            final long delay = schedule.busy();
+            assertTrue(delay >= base / 2 && delay <= base * 3 / 2, "Delay " + delay + " around " + base);
+            if (i < PollingSchedule.MAX_BUSY_DOUBLINGS) base *= 2;
+        }
+        assertEquals(4000, schedule.getInterval());
+        // Retries of separate pollers spread out rather than colliding again
+        final long first = new PollingSchedule(250, 4000, new Random(1)).busy();
+        boolean differs = false;
+        for (int seed = 2; seed < 10; seed++) differs |= new PollingSchedule(250, 4000, new Random(seed)).busy() != first;
+        assertTrue(differs);
+        // A successful poll restarts the retry delay
+        schedule.unchanged();
+        assertTrue(schedule.busy() <= PollingSchedule.BUSY_RETRY * 3 / 2);
+    }
+}
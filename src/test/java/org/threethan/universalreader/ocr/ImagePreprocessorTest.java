@@ -0,0 +1,207 @@
+package org.threethan.universalreader.ocr;
+
+import org.threethan.universalreader.TestImage;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.EnumSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImagePreprocessorTest {
+    static final int PADDING = 300;
+
+    /** Gets a test image surrounded by a wide border, optionally rotated */
+    static BufferedImage padded(String imageName, Color background, double degrees) {
+        final BufferedImage image = TestImage.get(imageName);
+        final BufferedImage padded = new BufferedImage(
+                image.getWidth() + PADDING * 2, image.getHeight() + PADDING * 2, BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D g = padded.createGraphics();
+        g.setColor(background);
+        g.fillRect(0, 0, padded.getWidth(), padded.getHeight());
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.setTransform(AffineTransform.getRotateInstance(
+                Math.toRadians(degrees), padded.getWidth() / 2.0, padded.getHeight() / 2.0));
+        g.drawImage(image, PADDING, PADDING, null);
+        g.dispose();
+        return padded;
+    }
+
+    @Test
+    @DisplayName("Test that grayscale conversion keeps dimensions and produces an 8-bit image")
+    void testGrayscale() {
+        final BufferedImage image = TestImage.get("fruits.png");
+        final BufferedImage gray = ImagePreprocessor.toGray(image);
+        assertEquals(BufferedImage.TYPE_BYTE_GRAY, gray.getType());
+        assertEquals(image.getWidth(), gray.getWidth());
+        assertEquals(image.getHeight(), gray.getHeight());
+        assertSame(gray, ImagePreprocessor.toGray(gray));
+    }
+
+    @Test
+    @DisplayName("Test that frames read from rows match converted images, with transparency composited onto white")
+    void testFrame() {
+        final BufferedImage image = TestImage.get("fruits.png");
+        final int w = image.getWidth();
+        final ImagePreprocessor.RowReader reader = (y, row) -> image.getRGB(0, y, w, 1, row, 0, w);
+
+        final BufferedImage gray = ImagePreprocessor.toFrame(w, image.getHeight(), true, reader);
+        assertEquals(BufferedImage.TYPE_BYTE_GRAY, gray.getType());
+        assertArrayEquals(ImagePreprocessor.grayPixels(image), ImagePreprocessor.grayPixels(gray));
+
+        final BufferedImage color = ImagePreprocessor.toFrame(w, image.getHeight(), false, reader);
+        assertEquals(BufferedImage.TYPE_3BYTE_BGR, color.getType());
+        for (int y = 0; y < image.getHeight(); y += 7)
+            for (int x = 0; x < w; x += 7)
+                if (image.getRGB(x, y) >>> 24 == 0xFF) assertEquals(image.getRGB(x, y), color.getRGB(x, y));
+
+        // The engine & protocol rely on rasters of 3-byte images returning pixels in RGB order
+        final BufferedImage transparent = ImagePreprocessor.toFrame(2, 1, false,
+                (y, row) -> { row[0] = 0xFF123456; row[1] = 0x00000000; });
+        assertArrayEquals(new byte[]{0x12, 0x34, 0x56, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF},
+                (byte[]) transparent.getRaster().getDataElements(0, 0, 2, 1, null));
+    }
+
+    @Test
+    @DisplayName("Test that uniform borders are cropped, and the crop is recorded in the mapping")
+    void testCrop() {
+        final BufferedImage original = TestImage.get(TestImage.QUICK_BROWN_FOX_FILE);
+        final BufferedImage image = padded(TestImage.QUICK_BROWN_FOX_FILE, Color.WHITE, 0);
+        final ImagePreprocessor.Mapping mapping = new ImagePreprocessor.Mapping();
+        final BufferedImage cropped = ImagePreprocessor.cropBorders(ImagePreprocessor.toGray(image), mapping);
+        assertTrue(cropped.getWidth() <= original.getWidth() + 20);
+        assertTrue(cropped.getHeight() <= original.getHeight() + 20);
+
+        final Rectangle mapped = mapping.toOriginal(new Rectangle(0, 0, cropped.getWidth(), cropped.getHeight()));
+        assertTrue(mapped.x >= PADDING - 10);
+        assertTrue(mapped.y >= PADDING - 10);
+    }
+
+    @Test
+    @DisplayName("Test that binarization outputs only black & white, with a white background even in dark mode")
+    void testBinarize() {
+        for (Color background : new Color[]{Color.WHITE, Color.BLACK}) {
+            BufferedImage image = padded(TestImage.QUICK_BROWN_FOX_FILE, background, 0);
+            if (background == Color.BLACK) {
+                // Invert the text too, as a dark-mode screenshot would be
+                for (int y = 0; y < image.getHeight(); y++)
+                    for (int x = 0; x < image.getWidth(); x++)
+                        image.setRGB(x, y, image.getRGB(x, y) ^ 0x00FFFFFF);
+            }
+            final BufferedImage binary = ImagePreprocessor.binarize(image);
+            final byte[] pixels = ImagePreprocessor.grayPixels(binary);
+            int black = 0;
+            for (byte pixel : pixels) {
+                assertTrue(pixel == 0 || pixel == (byte) 0xFF);
+                if (pixel == 0) black++;
+            }
+            assertTrue(black > 0);
+            assertTrue(black < pixels.length / 10);
+            assertEquals(0xFF, binary.getRaster().getSample(0, 0, 0));
+        }
+    }
+
+    @Test
+    @DisplayName("Test that skew is estimated with the correct direction")
+    void testSkewEstimate() {
+        for (double degrees : new double[]{-3, 2}) {
+            final BufferedImage image = padded(TestImage.SPHINX_OF_BLACK_FILE, Color.WHITE, degrees);
+            assertEquals(degrees, ImagePreprocessor.estimateSkew(image), 0.5);
+        }
+        assertEquals(0, ImagePreprocessor.estimateSkew(padded(TestImage.SPHINX_OF_BLACK_FILE, Color.WHITE, 0)), 0.3);
+    }
+
+    @Test
+    @DisplayName("Test that deskewing leaves an image which is no longer skewed, and the rotation is recorded in the mapping")
+    void testDeskew() {
+        final BufferedImage image = padded(TestImage.SPHINX_OF_BLACK_FILE, Color.WHITE, 3);
+        final ImagePreprocessor.Mapping mapping = new ImagePreprocessor.Mapping();
+        final BufferedImage straightened = ImagePreprocessor.deskew(image, mapping);
+        assertNotSame(image, straightened);
+        assertEquals(0, ImagePreprocessor.estimateSkew(straightened), 0.5);
+        // A point on the straightened line right of the centre lies lower on the original, skewed line
+        final int cx = image.getWidth() / 2, cy = image.getHeight() / 2;
+        final Rectangle centre = mapping.toOriginal(new Rectangle(cx, cy, 0, 0));
+        assertEquals(cx, centre.x, 1);
+        assertEquals(cy, centre.y, 1);
+        final Rectangle right = mapping.toOriginal(new Rectangle(cx + 200, cy, 0, 0));
+        assertEquals(cx + 200, right.x, 2);
+        assertEquals(cy + 200 * Math.sin(Math.toRadians(3)), right.y, 2);
+    }
+
+    @Test
+    @DisplayName("Test that cropping, scaling and rotating are undone in reverse order when mapping a box back")
+    void testMapping() {
+        final ImagePreprocessor.Mapping mapping = new ImagePreprocessor.Mapping();
+        mapping.crop(10, 20);
+        mapping.scale(2);
+        mapping.rotate(90, 0, 0);
+        assertEquals(new Rectangle(15, 19, 1, 1), mapping.toOriginal(new Rectangle(0, 10, 2, 2)));
+        assertEquals(2, mapping.getScale());
+    }
+
+    /** Draws the same lines of text as a display at a scale of 1, 2 or 3 would */
+    static BufferedImage scaledText(int scale) {
+        return TextPresenceDetectorTest.text(900 * scale, 400 * scale, BufferedImage.TYPE_INT_RGB,
+                Color.WHITE, Color.BLACK, 16 * scale);
+    }
+
+    @Test
+    @DisplayName("Test that the x-height of text is estimated in proportion to its scale, and not in photos")
+    void testXHeightEstimate() {
+        final double base = ImagePreprocessor.estimateXHeight(scaledText(1));
+        assertTrue(base > 5 && base < 12, "x-height " + base);
+        for (int scale = 2; scale <= 3; scale++)
+            assertEquals(base * scale, ImagePreprocessor.estimateXHeight(scaledText(scale)), scale * 1.5);
+        assertEquals(0, ImagePreprocessor.estimateXHeight(TestImage.get("white256.png")));
+        assertEquals(0, ImagePreprocessor.estimateXHeight(TestImage.get("baboon.png")));
+    }
+
+    @Test
+    @DisplayName("Test that 1x, 2x and 3x text is scaled to about the same size, and the scale is recorded in the mapping")
+    void testNormalizeScale() {
+        for (int scale = 1; scale <= 3; scale++) {
+            final BufferedImage image = scaledText(scale);
+            final ImagePreprocessor.Mapping mapping = new ImagePreprocessor.Mapping();
+            final BufferedImage normalized = ImagePreprocessor.normalizeScale(image, mapping);
+            final double xHeight = ImagePreprocessor.estimateXHeight(normalized);
+            assertTrue(xHeight >= ImagePreprocessor.MIN_X_HEIGHT && xHeight <= ImagePreprocessor.MAX_X_HEIGHT,
+                    "x-height " + xHeight + " at scale " + scale);
+            assertEquals((double) normalized.getWidth() / image.getWidth(), mapping.getScale(), 1e-9);
+            final Rectangle mapped = mapping.toOriginal(
+                    new Rectangle(0, 0, normalized.getWidth(), normalized.getHeight()));
+            assertEquals(image.getWidth(), mapped.width, 2);
+            assertEquals(image.getHeight(), mapped.height, 2);
+        }
+        // Text which is already a good size is left alone
+        final BufferedImage image = scaledText(2);
+        assertSame(image, ImagePreprocessor.normalizeScale(image, new ImagePreprocessor.Mapping()));
+        assertEquals(BufferedImage.TYPE_BYTE_GRAY, ImagePreprocessor.resize(
+                ImagePreprocessor.toGray(scaledText(3)), 300, 100).getType());
+    }
+
+    @Test
+    @DisplayName("Test that small text in an image too large to enlarge is left alone, rather than shrunk")
+    void testNormalizeScaleLargeImage() {
+        final BufferedImage image = TextPresenceDetectorTest.text(6000, 4500, BufferedImage.TYPE_BYTE_GRAY,
+                Color.WHITE, Color.BLACK, 16);
+        assertTrue(ImagePreprocessor.estimateXHeight(image) < ImagePreprocessor.MIN_X_HEIGHT);
+        final ImagePreprocessor.Mapping mapping = new ImagePreprocessor.Mapping();
+        assertSame(image, ImagePreprocessor.normalizeScale(image, mapping));
+        assertEquals(1, mapping.getScale());
+    }
+
+    @Test
+    @DisplayName("Test that every stage of the pipeline is timed, in order")
+    void testTimings() {
+        final ImagePreprocessor.Output output = ImagePreprocessor.of(EnumSet.allOf(ImagePreprocessor.Step.class))
+                .process(padded(TestImage.QUICK_BROWN_FOX_FILE, Color.WHITE, 0));
+        assertArrayEquals(
+                EnumSet.allOf(ImagePreprocessor.Step.class).stream().map(Enum::name).toArray(),
+                output.stageNanos().keySet().toArray());
+        assertEquals(BufferedImage.TYPE_BYTE_GRAY, output.image().getType());
+    }
+}
@@ -0,0 +1,233 @@
+package org.threethan.universalreader.ocr;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ModelDownloaderTest {
+    static final int LENGTH = 4 * 1024 * 1024 + 12345;
+    static final byte[] CONTENT = new byte[LENGTH];
+    static {
+        new Random(42).nextBytes(CONTENT);
+    }
+
+    @TempDir Path directory;
+    StandInServer server;
+    ModelDownloader downloader;
+    Path target;
+    URI uri;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new StandInServer();
+        downloader = new ModelDownloader(HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build(), 4);
+        target = directory.resolve("test.traineddata");
+        uri = URI.create("http://127.0.0.1:" + server.socket.getLocalPort() + "/test.traineddata");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.close();
+    }
+
+    @Test
+    @DisplayName("Test that a file is downloaded in parallel parts, verified and moved into place")
+    void testParallelDownload() throws Exception {
+        final AtomicLong lastProgress = new AtomicLong();
+        downloader.addProgressListener((path, done, total) -> {
+            assertEquals(LENGTH, total);
+            lastProgress.accumulateAndGet(done, Math::max);
+        });
+        final String sha256 = sha256OfContent();
+        assertEquals(target, downloader.download(uri, target, sha256).get(10, TimeUnit.SECONDS));
+
+        assertArrayEquals(CONTENT, Files.readAllBytes(target));
+        assertEquals(LENGTH, lastProgress.get());
+        assertEquals(sha256, Files.readString(directory.resolve("test.traineddata" + ModelDownloader.CHECKSUM_EXT)));
+        assertEquals(4, server.rangeHeaders.size());
+        assertNoPartFiles();
+    }
+
+    @Test
+    @DisplayName("Test that an interrupted download resumes from where it left off")
+    void testResume() throws Exception {
+        server.cutOffAfter = 100_000;
+        final ExecutionException e = assertThrows(ExecutionException.class,
+                () -> downloader.download(uri, target, null).get(10, TimeUnit.SECONDS));
+        assertInstanceOf(IOException.class, e.getCause());
+        assertFalse(Files.exists(target));
+
+        server.cutOffAfter = -1;
+        server.rangeHeaders.clear();
+        downloader.download(uri, target, null).get(10, TimeUnit.SECONDS);
+        assertArrayEquals(CONTENT, Files.readAllBytes(target));
+        // Every part continued from part way through, rather than from its start
+        final long partSize = (LENGTH + 3) / 4;
+        for (String range : server.rangeHeaders) {
+            final long start = Long.parseLong(range.substring("bytes=".length(), range.indexOf('-')));
+            assertTrue(start % partSize > 0, range);
+        }
+        assertNoPartFiles();
+    }
+
+    @Test
+    @DisplayName("Test that an interrupted download to a relative path resumes, rather than deleting its parts")
+    void testResumeRelative() throws Exception {
+        target = Path.of("").toAbsolutePath().relativize(target);
+        assertFalse(target.isAbsolute());
+        testResume();
+    }
+
+    @Test
+    @DisplayName("Test that a download with the wrong checksum is rejected and not moved into place")
+    void testChecksumMismatch() {
+        final ExecutionException e = assertThrows(ExecutionException.class,
+                () -> downloader.download(uri, target, "00".repeat(32)).get(10, TimeUnit.SECONDS));
+        assertInstanceOf(IOException.class, e.getCause());
+        assertFalse(Files.exists(target));
+    }
+
+    @Test
+    @DisplayName("Test that servers without range support are downloaded in a single request")
+    void testNoRanges() throws Exception {
+        server.acceptsRanges = false;
+        downloader.download(uri, target, null).get(10, TimeUnit.SECONDS);
+        assertArrayEquals(CONTENT, Files.readAllBytes(target));
+        assertTrue(server.rangeHeaders.isEmpty());
+    }
+
+    @Test
+    @DisplayName("Test that verified files are downloaded again only if truncated or corrupted")
+    void testExistingFiles() throws Exception {
+        // A truncated file from an old interrupted download, without a stored checksum
+        Files.write(target, new byte[1000]);
+        downloader.verify(uri, target, null).get(10, TimeUnit.SECONDS);
+        assertArrayEquals(CONTENT, Files.readAllBytes(target));
+
+        // An intact file is left alone
+        final int requests = server.getRequests.get();
+        new ModelDownloader(HttpClient.newHttpClient(), 4).verify(uri, target, null).get(10, TimeUnit.SECONDS);
+        assertEquals(requests, server.getRequests.get());
+
+        // A corrupted file no longer matches its stored checksum
+        final byte[] corrupted = CONTENT.clone();
+        corrupted[LENGTH / 2] ^= 1;
+        Files.write(target, corrupted);
+        new ModelDownloader(HttpClient.newHttpClient(), 4).verify(uri, target, null).get(10, TimeUnit.SECONDS);
+        assertArrayEquals(CONTENT, Files.readAllBytes(target));
+    }
+
+    @Test
+    @DisplayName("Test that downloading uses existing files unchecked, and verifying keeps them if offline")
+    void testExistingFilesUnchecked() throws Exception {
+        Files.write(target, new byte[1000]);
+        assertEquals(target, downloader.download(uri, target, null).get(10, TimeUnit.SECONDS));
+        assertEquals(0, server.getRequests.get());
+        assertEquals(1000, Files.size(target));
+
+        server.close();
+        downloader.verify(uri, target, null).get(10, TimeUnit.SECONDS);
+        assertEquals(1000, Files.size(target));
+    }
+
+    private void assertNoPartFiles() throws IOException {
+        try (var files = Files.list(directory)) {
+            assertTrue(files.noneMatch(p -> p.toString().endsWith(ModelDownloader.PART_EXT)));
+        }
+    }
+
+    private static String sha256OfContent() throws Exception {
+        final Path file = Files.createTempFile("content", null);
+        try {
+            Files.write(file, CONTENT);
+            return ModelDownloader.sha256(file);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /** A minimal HTTP server which serves {@link #CONTENT}, optionally with range support or cutting off early */
+    static class StandInServer implements AutoCloseable {
+        final ServerSocket socket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        final List<String> rangeHeaders = new CopyOnWriteArrayList<>();
+        final AtomicInteger getRequests = new AtomicInteger();
+        volatile boolean acceptsRanges = true;
+        /** If not -1, each response body is cut off after this many bytes */
+        volatile long cutOffAfter = -1;
+
+        StandInServer() throws IOException {
+            final Thread thread = new Thread(() -> {
+                while (!socket.isClosed()) {
+                    try {
+                        final Socket connection = socket.accept();
+                        new Thread(() -> handle(connection)).start();
+                    } catch (IOException ignored) {}
+                }
+            }, "Stand-in HTTP Server");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void handle(Socket connection) {
+            try (connection) {
+                final BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(connection.getInputStream(), StandardCharsets.US_ASCII));
+                final String method = reader.readLine().split(" ")[0];
+                String range = null;
+                for (String line = reader.readLine(); line != null && !line.isEmpty(); line = reader.readLine())
+                    if (line.toLowerCase().startsWith("range:")) range = line.substring(6).strip();
+
+                long start = 0, end = LENGTH - 1;
+                String status = "200 OK";
+                String extraHeaders = acceptsRanges ? "Accept-Ranges: bytes\r\n" : "";
+                if (method.equals("GET")) getRequests.incrementAndGet();
+                if (range != null && acceptsRanges && method.equals("GET")) {
+                    rangeHeaders.add(range);
+                    final String[] bounds = range.substring("bytes=".length()).split("-", -1);
+                    start = Long.parseLong(bounds[0]);
+                    if (!bounds[1].isEmpty()) end = Long.parseLong(bounds[1]);
+                    status = "206 Partial Content";
+                    extraHeaders += "Content-Range: bytes " + start + "-" + end + "/" + LENGTH + "\r\n";
+                }
+                final long length = end - start + 1;
+                final OutputStream out = connection.getOutputStream();
+                out.write(("HTTP/1.1 " + status + "\r\nContent-Length: " + length + "\r\n" + extraHeaders
+                        + "Connection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+                if (method.equals("GET")) {
+                    final long sent = cutOffAfter >= 0 ? Math.min(length, cutOffAfter) : length;
+                    out.write(CONTENT, (int) start, (int) sent);
+                }
+                out.flush();
+            } catch (IOException | RuntimeException ignored) {}
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package org.threethan.universalreader.ocr;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OcrBatchTest {
+    static final int IMAGES = 12;
+
+    @TempDir Path directory;
+    List<Path> files;
+    AtomicInteger recognized;
+    AtomicInteger running;
+    AtomicInteger maxRunning;
+
+    /** Stands in for OCR, "recognizing" an image as its width, one request at a time per instance */
+    class StandInProcessor implements OcrProcessor {
+        @Override
+        public void submitRequest(Request request, Consumer<Result> responseConsumer) {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            recognized.incrementAndGet();
+            responseConsumer.accept(new Result("Width " + request.image().getWidth() + "\n\"quoted\""));
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        recognized = new AtomicInteger();
+        running = new AtomicInteger();
+        maxRunning = new AtomicInteger();
+        files = new ArrayList<>();
+        Files.createDirectory(directory.resolve("sub"));
+        for (int i = 0; i < IMAGES; i++) {
+            final Path file = directory.resolve((i % 2 == 0 ? "" : "sub/") + "shot" + i + ".png");
+            ImageIO.write(new BufferedImage(10 + i, 10, BufferedImage.TYPE_INT_RGB), "png", file.toFile());
+            files.add(file);
+        }
+        Files.writeString(directory.resolve("notes.md"), "Not an image");
+    }
+
+    @Test
+    @DisplayName("Test that directories and globs list only the matching images, in order")
+    void testListing() throws IOException {
+        final List<Path> images = OcrBatch.listImages(directory);
+        assertEquals(IMAGES, images.size());
+        assertEquals(images.stream().sorted().toList(), images);
+        assertEquals(IMAGES / 2, OcrBatch.glob(directory, "sub/*.png").size());
+        assertEquals(IMAGES, OcrBatch.glob(directory, "**.png").size());
+    }
+
+    @Test
+    @DisplayName("Test that text is written next to each image, on no more workers than allowed")
+    void testTextFiles() throws Exception {
+        final OcrBatch batch = new OcrBatch(StandInProcessor::new, 3);
+        final OcrBatch.Report report = batch.run(files);
+        assertEquals(IMAGES, report.processed());
+        assertEquals(0, report.failed());
+        assertTrue(maxRunning.get() <= 3);
+        assertTrue(report.imagesPerSecond() > 0);
+        assertTrue(report.p50Nanos() > 0 && report.p50Nanos() <= report.p95Nanos());
+        for (int i = 0; i < IMAGES; i++)
+            assertEquals("Width " + (10 + i) + "\n\"quoted\"", Files.readString(OcrBatch.getTextFile(files.get(i))));
+    }
+
+    @Test
+    @DisplayName("Test that a batch resumes by skipping images which already have a text file")
+    void testResumeTextFiles() throws Exception {
+        final OcrBatch batch = new OcrBatch(StandInProcessor::new, 2);
+        batch.run(files.subList(0, 5));
+        recognized.set(0);
+        final OcrBatch.Report report = batch.run(files);
+        assertEquals(IMAGES - 5, recognized.get());
+        assertEquals(IMAGES - 5, report.processed());
+        assertEquals(5, report.skipped());
+    }
+
+    @Test
+    @DisplayName("Test that JSON lines are appended, and an interrupted partial line is dropped when resuming")
+    void testJsonLines() throws Exception {
+        final Path output = directory.resolve("out.jsonl");
+        final OcrBatch batch = new OcrBatch(StandInProcessor::new, 4);
+        batch.setJsonLinesFile(output);
+        batch.run(files.subList(0, 4));
+        Files.writeString(output, "{\"file\":\"" + files.get(4).toAbsolutePath(), StandardOpenOption.APPEND);
+
+        recognized.set(0);
+        final OcrBatch.Report report = batch.run(files);
+        assertEquals(4, report.skipped());
+        assertEquals(IMAGES - 4, recognized.get());
+        final List<String> lines = Files.readAllLines(output);
+        assertEquals(IMAGES, lines.size());
+        for (String line : lines) {
+            assertTrue(line.endsWith("}"), line);
+            assertTrue(line.contains("\"text\":\"Width "), line);
+            assertTrue(line.contains("\\n\\\"quoted\\\""), line);
+        }
+        assertEquals(files.stream().map(f -> f.toAbsolutePath().toString()).sorted().toList(),
+                lines.stream().map(OcrBatch::readFileField).sorted().toList());
+    }
+
+    @Test
+    @DisplayName("Test that unreadable images are counted as failures without stopping the batch")
+    void testFailures() throws Exception {
+        final Path broken = directory.resolve("broken.png");
+        Files.writeString(broken, "Not really a PNG");
+        final List<Path> withBroken = new ArrayList<>(files);
+        withBroken.add(broken);
+        final OcrBatch.Report report = new OcrBatch(StandInProcessor::new, 2).run(withBroken);
+        assertEquals(1, report.failed());
+        assertEquals(IMAGES, report.processed());
+    }
+
+    @Test
+    @DisplayName("Test percentiles and JSON string escaping")
+    void testHelpers() {
+        final long[] values = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20};
+        assertEquals(10, OcrBatch.percentile(values, 0.5));
+        assertEquals(19, OcrBatch.percentile(values, 0.95));
+        assertEquals(0, OcrBatch.percentile(new long[0], 0.5));
+        final String awkward = "C:\\shots\\\"a\"\n\t\u0001é";
+        assertEquals(awkward, OcrBatch.readFileField("{\"file\":" + OcrBatch.jsonString(awkward) + "}"));
+    }
+}
@@ -0,0 +1,95 @@
+package org.threethan.universalreader.ocr;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OcrMetricsTest {
+
+    @Test
+    @DisplayName("Test that histogram buckets cover every value, and bounds stay within 25%")
+    void testBuckets() {
+        for (long value = 0; value < 100_000; value++) {
+            final int bucket = Histogram.bucketOf(value);
+            assertTrue(Histogram.upperBound(bucket) >= value);
+            assertTrue(bucket == 0 || Histogram.upperBound(bucket - 1) < value);
+            assertTrue(Histogram.upperBound(bucket) <= value * 1.25 + 1);
+        }
+        assertEquals(Long.MAX_VALUE, Histogram.upperBound(Histogram.bucketOf(Long.MAX_VALUE)));
+    }
+
+    @Test
+    @DisplayName("Test that histogram percentiles are close to those of the recorded values")
+    void testPercentiles() {
+        final Histogram histogram = new Histogram();
+        for (int i = 1; i <= 1000; i++) histogram.record(i);
+        final Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(500.5, snapshot.getMean(), 1e-9);
+        assertEquals(1000, snapshot.getMax());
+        assertEquals(500, snapshot.getMedian(), 500 * 0.25);
+        assertEquals(900, snapshot.getPercentile90(), 900 * 0.25);
+        assertEquals(990, snapshot.getPercentile99(), 990 * 0.25);
+        assertTrue(snapshot.getPercentile99() <= snapshot.getMax());
+
+        histogram.reset();
+        assertEquals(0, histogram.snapshot().getCount());
+        assertEquals(0, histogram.snapshot().getMedian());
+    }
+
+    @Test
+    @DisplayName("Test that no values are lost when recording from many threads at once")
+    void testConcurrentRecording() throws InterruptedException {
+        final Histogram histogram = new Histogram();
+        final List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            final int offset = t;
+            final Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) histogram.record(i + offset);
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) thread.join();
+        assertEquals(80_000, histogram.snapshot().getCount());
+        assertEquals(10_006, histogram.snapshot().getMax());
+    }
+
+    @Test
+    @DisplayName("Test that recorded metrics can be read through JMX")
+    void testJmx() throws Exception {
+        final OcrMetrics metrics = new OcrMetrics();
+        metrics.register();
+        metrics.recordStage(OcrMetrics.Stage.RECOGNITION, TimeUnit.MILLISECONDS.toNanos(120));
+        metrics.recordQueueWait(TimeUnit.MILLISECONDS.toNanos(5));
+        metrics.recordImageSize(640, 480);
+        metrics.recordOutput("The quick brown fox");
+
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName(OcrMetrics.NAME);
+        final TabularData stages = (TabularData) server.getAttribute(name, "StageLatencies");
+        assertEquals(1, stages.size());
+        final CompositeData recognition = (CompositeData)
+                stages.get(new Object[] {OcrMetrics.Stage.RECOGNITION.name()}).get("value");
+        assertEquals(1L, recognition.get("count"));
+        assertEquals(120_000L, recognition.get("max"));
+        assertEquals(1L, ((CompositeData) server.getAttribute(name, "QueueWait")).get("count"));
+        assertEquals(640L * 480, ((CompositeData) server.getAttribute(name, "ImageSize")).get("max"));
+        assertEquals(19L, ((CompositeData) server.getAttribute(name, "OutputLength")).get("median"));
+
+        server.invoke(name, "reset", null, null);
+        assertEquals(0, metrics.getStageLatencies().size());
+        assertEquals(0, metrics.getImageSize().getCount());
+        server.unregisterMBean(name);
+    }
+}
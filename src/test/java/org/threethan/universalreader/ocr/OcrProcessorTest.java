@@ -0,0 +1,35 @@
+package org.threethan.universalreader.ocr;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OcrProcessorTest {
+
+    @Test
+    @DisplayName("Test that every failure except cancellation becomes a result showing the error, even when wrapped")
+    void testErrorResult() {
+        final OcrException ocrException = new OcrException(OcrException.Reason.ENGINE_FAILED, "Engine failed");
+        assertEquals("Engine failed", OcrProcessor.Result.ofError(ocrException).ocrText());
+        assertEquals("Engine failed", OcrProcessor.Result.ofError(new CompletionException(ocrException)).ocrText());
+        assertEquals("Broken", OcrProcessor.Result.ofError(
+                new CompletionException(new IllegalStateException("Broken"))).ocrText());
+        assertNotNull(OcrProcessor.Result.ofError(new NullPointerException()).ocrText());
+        assertNull(OcrProcessor.Result.ofError(new CancellationException()));
+
+        // A dependent stage sees the timeout wrapped in a CompletionException
+        final AtomicReference<OcrProcessor.Result> shown = new AtomicReference<>();
+        new CompletableFuture<OcrProcessor.Result>().orTimeout(1, TimeUnit.MILLISECONDS)
+                .thenApply(result -> result)
+                .whenComplete((result, error) -> shown.set(OcrProcessor.Result.ofError(error)))
+                .exceptionally(error -> null).join();
+        assertEquals("Text recognition timed out", shown.get().ocrText());
+    }
+}
@@ -0,0 +1,64 @@
+package org.threethan.universalreader.ocr;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OcrProfileTest {
+    @TempDir Path directory;
+
+    @Test
+    @DisplayName("Test that the default profile keeps using the existing best models")
+    void testDefault() {
+        assertEquals(OcrProfile.ACCURATE, OcrProfile.DEFAULT);
+        assertEquals("./TesseractData/", OcrProfile.DEFAULT.getDataPath("./TesseractData/"));
+        assertTrue(OcrProfile.DEFAULT.getModelUrl().contains("tessdata_best"));
+    }
+
+    @Test
+    @DisplayName("Test that fast models are stored side by side with, but separately from, the best models")
+    void testFastModels() {
+        for (OcrProfile profile : List.of(OcrProfile.BALANCED, OcrProfile.FAST)) {
+            assertTrue(profile.getModelUrl().contains("tessdata_fast"));
+            assertTrue(profile.getDataPath("./TesseractData/").startsWith("./TesseractData/"));
+            assertNotEquals(OcrProfile.ACCURATE.getDataPath("./TesseractData/"),
+                    profile.getDataPath("./TesseractData/"));
+        }
+    }
+
+    @Test
+    @DisplayName("Test that only the fast profile writes a config file, which disables dictionaries")
+    void testConfigs() throws Exception {
+        final String dataPath = directory + "/";
+        assertTrue(OcrProfile.ACCURATE.writeConfigs(dataPath).isEmpty());
+        assertTrue(OcrProfile.BALANCED.writeConfigs(dataPath).isEmpty());
+
+        final List<String> configs = OcrProfile.FAST.writeConfigs(dataPath);
+        assertEquals(1, configs.size());
+        final Path configFile = Path.of(OcrProfile.FAST.getDataPath(dataPath), OcrProfile.CONFIGS_DIR, configs.get(0));
+        final List<String> lines = Files.readAllLines(configFile);
+        assertTrue(lines.contains("load_system_dawg 0"));
+        assertTrue(lines.contains("load_freq_dawg 0"));
+        assertEquals(OcrProfile.FAST.getInitVariables().size(), lines.size());
+
+        // An up-to-date config file is left alone
+        final var modified = Files.getLastModifiedTime(configFile);
+        Thread.sleep(20);
+        assertEquals(configs, OcrProfile.FAST.writeConfigs(dataPath));
+        assertEquals(modified, Files.getLastModifiedTime(configFile));
+    }
+
+    @Test
+    @DisplayName("Test that requests use the default profile unless another is chosen")
+    void testRequestProfile() {
+        assertEquals(OcrProfile.DEFAULT, new OcrProcessor.Request(null, null).profile());
+        assertEquals(OcrProfile.FAST,
+                new OcrProcessor.Request(null, null, ImagePreprocessor.DEFAULT_STEPS, OcrProfile.FAST).profile());
+    }
+}
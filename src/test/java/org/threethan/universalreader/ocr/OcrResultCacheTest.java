@@ -0,0 +1,218 @@
+package org.threethan.universalreader.ocr;
+
+import org.threethan.universalreader.TestImage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OcrResultCacheTest {
+    static final Set<ImagePreprocessor.Step> STEPS = ImagePreprocessor.DEFAULT_STEPS;
+    OcrResultCache cache;
+    AtomicInteger computeCount;
+
+    @BeforeEach
+    void setUp() {
+        cache = new OcrResultCache();
+        computeCount = new AtomicInteger();
+    }
+
+    @Test
+    @DisplayName("Test that identical images are only recognized once")
+    void testHit() throws Exception {
+        final OcrResultCache.Key keyA = OcrResultCache.Key.of(TestImage.get(TestImage.QUICK_BROWN_FOX_FILE), "eng",
+                OcrProfile.DEFAULT, STEPS);
+        final OcrResultCache.Key keyB = OcrResultCache.Key.of(TestImage.get("quick_brown_fox_copy.png"), "eng",
+                OcrProfile.DEFAULT, STEPS);
+        assertEquals(keyA, keyB);
+        assertEquals("A", cache.get(keyA, () -> compute("A")).ocrText());
+        assertEquals("A", cache.get(keyB, () -> compute("B")).ocrText());
+        assertEquals(1, computeCount.get());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    @DisplayName("Test that different images, languages, profiles or preprocessing are recognized separately")
+    void testMiss() throws Exception {
+        final BufferedImage fox = TestImage.get(TestImage.QUICK_BROWN_FOX_FILE);
+        final BufferedImage sphinx = TestImage.get(TestImage.SPHINX_OF_BLACK_FILE);
+        cache.get(OcrResultCache.Key.of(fox, "eng", OcrProfile.DEFAULT, STEPS), () -> compute("A"));
+        cache.get(OcrResultCache.Key.of(fox, "deu", OcrProfile.DEFAULT, STEPS), () -> compute("B"));
+        cache.get(OcrResultCache.Key.of(sphinx, "eng", OcrProfile.DEFAULT, STEPS), () -> compute("C"));
+        cache.get(OcrResultCache.Key.of(sphinx, "eng", OcrProfile.DEFAULT, Set.of()), () -> compute("D"));
+        cache.get(OcrResultCache.Key.of(sphinx, "eng", OcrProfile.FAST, Set.of()), () -> compute("E"));
+        assertEquals(5, computeCount.get());
+        assertEquals(0, cache.getHitCount());
+    }
+
+    @Test
+    @DisplayName("Test that the least recently used entries are evicted when over budget")
+    void testEviction() throws Exception {
+        cache.setMemoryBudget(1000);
+        final String text = "x".repeat(200);
+        final OcrResultCache.Key first = new OcrResultCache.Key(1, 1, 1, "eng", OcrProfile.DEFAULT, STEPS);
+        final OcrResultCache.Key second = new OcrResultCache.Key(2, 1, 1, "eng", OcrProfile.DEFAULT, STEPS);
+        final OcrResultCache.Key third = new OcrResultCache.Key(3, 1, 1, "eng", OcrProfile.DEFAULT, STEPS);
+        cache.get(first, () -> compute(text));
+        cache.get(second, () -> compute(text));
+        cache.get(first, () -> compute(text)); // Now the most recently used
+        cache.get(third, () -> compute(text));
+        assertEquals(2, cache.size());
+        assertTrue(cache.getMemoryUsed() <= 1000);
+        cache.get(first, () -> compute(text));
+        assertEquals(3, computeCount.get());
+    }
+
+    @Test
+    @DisplayName("Test that concurrent identical requests share a single computation")
+    void testSingleFlight() throws Exception {
+        final OcrResultCache.Key key = new OcrResultCache.Key(42, 1, 1, "eng", OcrProfile.DEFAULT, STEPS);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final Future<String> first = executor.submit(() -> cache.get(key, () -> {
+                started.countDown();
+                release.await();
+                return compute("shared");
+            }).ocrText());
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            final Future<String> second = executor.submit(() -> cache.get(key, () -> compute("other")).ocrText());
+            final Future<String> third = executor.submit(() -> cache.get(key, () -> compute("other")).ocrText());
+            Thread.sleep(100);
+            release.countDown();
+            assertEquals("shared", first.get(5, TimeUnit.SECONDS));
+            assertEquals("shared", second.get(5, TimeUnit.SECONDS));
+            assertEquals("shared", third.get(5, TimeUnit.SECONDS));
+            assertEquals(1, computeCount.get());
+            assertEquals(2, cache.getSharedHitCount());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Test that failures are passed on and not cached")
+    void testFailure() {
+        final OcrResultCache.Key key = new OcrResultCache.Key(7, 1, 1, "eng", OcrProfile.DEFAULT, STEPS);
+        assertThrows(IllegalStateException.class, () -> cache.get(key, () -> {
+            throw new IllegalStateException();
+        }));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    @DisplayName("Test that a shared computation only stops once every waiting caller is cancelled")
+    void testCancellation() throws Exception {
+        final OcrResultCache.Key key = new OcrResultCache.Key(9, 1, 1, "eng", OcrProfile.DEFAULT, STEPS);
+        final AtomicBoolean firstCancelled = new AtomicBoolean();
+        final AtomicBoolean secondCancelled = new AtomicBoolean();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final OcrResultCache.Computation computation = abandoned -> {
+            started.countDown();
+            while (!release.await(10, TimeUnit.MILLISECONDS))
+                if (abandoned.getAsBoolean()) throw new CancellationException();
+            return compute("shared");
+        };
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // Still wanted by the second caller after the first is cancelled
+            final Future<String> first = executor.submit(() ->
+                    cache.get(key, computation, firstCancelled::get).ocrText());
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            final Future<String> second = executor.submit(() ->
+                    cache.get(key, abandoned -> compute("other"), secondCancelled::get).ocrText());
+            Thread.sleep(100);
+            firstCancelled.set(true);
+            Thread.sleep(100);
+            release.countDown();
+            assertEquals("shared", second.get(5, TimeUnit.SECONDS));
+            assertEquals("shared", first.get(5, TimeUnit.SECONDS));
+
+            // Abandoned once both are cancelled, without caching anything
+            final OcrResultCache.Key otherKey = new OcrResultCache.Key(10, 1, 1, "eng", OcrProfile.DEFAULT, STEPS);
+            final CountDownLatch otherStarted = new CountDownLatch(1);
+            final CountDownLatch never = new CountDownLatch(1);
+            firstCancelled.set(false);
+            final Future<?> third = executor.submit(() -> cache.get(otherKey, abandoned -> {
+                otherStarted.countDown();
+                while (!never.await(10, TimeUnit.MILLISECONDS))
+                    if (abandoned.getAsBoolean()) throw new CancellationException();
+                return compute("never");
+            }, firstCancelled::get));
+            assertTrue(otherStarted.await(5, TimeUnit.SECONDS));
+            secondCancelled.set(false);
+            final Future<?> fourth = executor.submit(() ->
+                    cache.get(otherKey, abandoned -> compute("other"), secondCancelled::get));
+            Thread.sleep(100);
+            secondCancelled.set(true);
+            // The waiting caller gives up on its own, while the computation keeps going for the first
+            assertInstanceOf(CancellationException.class,
+                    assertThrows(ExecutionException.class, () -> fourth.get(5, TimeUnit.SECONDS)).getCause());
+            assertFalse(third.isDone());
+            firstCancelled.set(true);
+            assertInstanceOf(CancellationException.class,
+                    assertThrows(ExecutionException.class, () -> third.get(5, TimeUnit.SECONDS)).getCause());
+            assertEquals(1, computeCount.get());
+            assertEquals(1, cache.size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("Test that a caller joining a recognition just as it's abandoned recognizes the image itself")
+    void testJoinAbandoned() throws Exception {
+        final OcrResultCache.Key key = new OcrResultCache.Key(11, 1, 1, "eng", OcrProfile.DEFAULT, STEPS);
+        final AtomicBoolean firstCancelled = new AtomicBoolean();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch secondJoined = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<?> first = executor.submit(() -> cache.get(key, abandoned -> {
+                started.countDown();
+                while (!abandoned.getAsBoolean()) Thread.sleep(10);
+                // The second caller joins after the computation decided to stop, but before it did
+                assertTrue(secondJoined.await(5, TimeUnit.SECONDS));
+                throw new CancellationException();
+            }, firstCancelled::get));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            firstCancelled.set(true);
+            Thread.sleep(100);
+            final Future<String> second = executor.submit(() -> cache.get(key, abandoned -> compute("second"), () -> {
+                secondJoined.countDown();
+                return false;
+            }).ocrText());
+            assertEquals("second", second.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(CancellationException.class,
+                    assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS)).getCause());
+            assertEquals(1, computeCount.get());
+            // The second caller recognized the image itself, so its failed attempt to share isn't a hit
+            assertEquals(0, cache.getHitCount());
+            assertEquals(0, cache.getSharedHitCount());
+            assertEquals(2, cache.getMissCount());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private OcrProcessor.Result compute(String text) {
+        computeCount.incrementAndGet();
+        return new OcrProcessor.Result(text);
+    }
+}
@@ -0,0 +1,143 @@
+package org.threethan.universalreader.ocr;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OcrSchedulerTest {
+
+    @Test
+    @DisplayName("Test that queued jobs are dropped when superseded by the same owner")
+    void testSupersededDropped() throws InterruptedException {
+        final OcrScheduler scheduler = new OcrScheduler(1);
+        final Object blocker = new Object();
+        final Object owner = new Object();
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        final List<Integer> ran = new CopyOnWriteArrayList<>();
+
+        // Occupy the only worker so the next jobs must queue
+        final CountDownLatch started = new CountDownLatch(1);
+        scheduler.submit(blocker, ticket -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 3; i++) {
+            final int index = i;
+            scheduler.submit(owner, ticket -> {
+                ran.add(index);
+                done.countDown();
+            });
+        }
+        assertEquals(1, scheduler.getQueueDepth());
+        release.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        assertEquals(List.of(2), ran);
+    }
+
+    @Test
+    @DisplayName("Test that a running job sees when it has been superseded")
+    void testRunningSuperseded() throws InterruptedException {
+        final OcrScheduler scheduler = new OcrScheduler(2);
+        final Object owner = new Object();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch superseded = new CountDownLatch(1);
+        final CountDownLatch checked = new CountDownLatch(1);
+        final boolean[] current = new boolean[2];
+
+        scheduler.submit(owner, ticket -> {
+            current[0] = ticket.isCurrent();
+            started.countDown();
+            try {
+                superseded.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            current[1] = ticket.isCurrent();
+            checked.countDown();
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        scheduler.submit(owner, ticket -> {});
+        superseded.countDown();
+
+        assertTrue(checked.await(5, TimeUnit.SECONDS));
+        assertTrue(current[0]);
+        assertFalse(current[1]);
+    }
+
+    @Test
+    @DisplayName("Test that queued jobs start by priority, then in the order they were submitted")
+    void testPriorityOrder() throws InterruptedException {
+        final OcrScheduler scheduler = new OcrScheduler(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(5);
+        final List<String> ran = new CopyOnWriteArrayList<>();
+
+        final CountDownLatch started = new CountDownLatch(1);
+        scheduler.submit(new Object(), ticket -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        final String[] names = {"prefetch", "auto 1", "interactive 1", "auto 2", "interactive 2"};
+        final OcrPriority[] priorities = {OcrPriority.PREFETCH, OcrPriority.AUTO, OcrPriority.INTERACTIVE,
+                OcrPriority.AUTO, OcrPriority.INTERACTIVE};
+        for (int i = 0; i < names.length; i++) {
+            final String name = names[i];
+            scheduler.submit(new Object(), priorities[i], ticket -> {
+                ran.add(name);
+                done.countDown();
+            });
+        }
+        assertEquals(5, scheduler.getQueueDepth());
+        assertEquals(2, scheduler.getQueueDepth(OcrPriority.INTERACTIVE));
+        assertEquals(2, scheduler.getQueueDepth(OcrPriority.AUTO));
+        assertEquals(1, scheduler.getQueueDepth(OcrPriority.PREFETCH));
+        release.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("interactive 1", "interactive 2", "auto 1", "auto 2", "prefetch"), ran);
+        assertEquals(0, scheduler.getQueueDepth());
+    }
+
+    @Test
+    @DisplayName("Test that interactive jobs start right away, however many background jobs are running or queued")
+    void testInteractiveLatency() throws InterruptedException {
+        final OcrScheduler scheduler = new OcrScheduler(3);
+        final CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 20; i++) {
+            scheduler.submit(new Object(), OcrPriority.AUTO, ticket -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+        Thread.sleep(100);
+        assertEquals(18, scheduler.getQueueDepth(OcrPriority.AUTO));
+        for (int i = 0; i < 5; i++) {
+            final CountDownLatch ran = new CountDownLatch(1);
+            scheduler.submit(new Object(), OcrPriority.INTERACTIVE, ticket -> ran.countDown());
+            assertTrue(ran.await(1, TimeUnit.SECONDS));
+        }
+        release.countDown();
+    }
+}
@@ -0,0 +1,226 @@
+package org.threethan.universalreader.ocr;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OcrServerTest {
+    static final SocketAddress LOOPBACK = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+
+    /** Stands in for OCR, "recognizing" an image as its size and locale, in two parts */
+    static class StandInProcessor implements StreamingOcrProcessor {
+        @Override
+        public CompletableFuture<Result> submit(Request request, Consumer<Result> partialConsumer,
+                                                Duration timeout) {
+            final String size = request.image().getWidth() + "x" + request.image().getHeight();
+            final String rest = " " + request.locale().toLanguageTag() + " " + request.profile();
+            partialConsumer.accept(new Result(size));
+            partialConsumer.accept(new Result(rest));
+            return CompletableFuture.completedFuture(new Result(size + rest));
+        }
+    }
+
+    /** Creates an image resembling a screenshot, with lines of "text" in a few colors on a plain background */
+    static BufferedImage testImage(int type) {
+        final BufferedImage image = new BufferedImage(300, 200, type);
+        final Graphics2D g = image.createGraphics();
+        g.setColor(new Color(0xF0F4F8));
+        g.fillRect(0, 0, image.getWidth(), image.getHeight());
+        g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 14));
+        for (int line = 0; line < 8; line++) {
+            g.setColor(new Color(line * 0x251A0F));
+            g.drawString("Line " + line + " of some text to share", 10, 20 + line * 22);
+        }
+        g.dispose();
+        return image;
+    }
+
+    @Test
+    @DisplayName("Test that requests survive encoding unchanged, and are much smaller than raw pixels")
+    void testEncoding() throws IOException {
+        for (int type : new int[]{BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_BYTE_GRAY}) {
+            final BufferedImage image = testImage(type);
+            final OcrProcessor.Request request = new OcrProcessor.Request(image, Locale.GERMANY,
+                    EnumSet.of(ImagePreprocessor.Step.DESKEW, ImagePreprocessor.Step.BINARIZE), OcrProfile.FAST,
+                    OcrPriority.AUTO);
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(bytes);
+            OcrProtocol.writeRequest(out, request);
+            out.flush();
+            assertTrue(bytes.size() < image.getWidth() * image.getHeight() / 4, "Encoded as " + bytes.size());
+
+            final OcrProcessor.Request read =
+                    OcrProtocol.readRequest(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+            assertEquals(request.locale(), read.locale());
+            assertEquals(request.profile(), read.profile());
+            assertEquals(request.preprocessing(), read.preprocessing());
+            assertEquals(request.priority(), read.priority());
+            assertEquals(type, read.image().getType());
+            for (int y = 0; y < image.getHeight(); y++)
+                for (int x = 0; x < image.getWidth(); x++)
+                    assertEquals(image.getRGB(x, y), read.image().getRGB(x, y));
+        }
+    }
+
+    @Test
+    @DisplayName("Test that results keep their word boxes when sent")
+    void testResultEncoding() throws IOException {
+        final WordBoxes.Builder builder = new WordBoxes.Builder();
+        builder.addWord(new Rectangle(5, 6, 30, 12), 91.5f, 0, 5);
+        builder.addWord(new Rectangle(40, 6, 25, 12), 64f, 6, 11);
+        builder.addLine(new Rectangle(5, 6, 60, 12), 0, 11);
+        final OcrProcessor.Result result = new OcrProcessor.Result("Hello world", builder.build());
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        OcrProtocol.writeResult(out, result);
+        out.flush();
+        assertEquals(result,
+                OcrProtocol.readResult(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+    }
+
+    @Test
+    @DisplayName("Test that a corrupt image size is rejected before allocating it")
+    void testInvalidImage() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(3);
+        out.writeInt(100_000);
+        out.writeInt(100_000);
+        out.writeInt(0);
+        assertThrows(IOException.class,
+                () -> OcrProtocol.readImage(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+    }
+
+    @Test
+    @DisplayName("Test that a client receives partial and final results over loopback")
+    void testLoopback() throws Exception {
+        try (OcrServer server = new OcrServer(LOOPBACK, StandInProcessor::new)) {
+            server.start();
+            assertTrue(RemoteOcrProcessor.isServerRunning(server.getAddress()));
+            assertRoundTrip(new RemoteOcrProcessor(server.getAddress()));
+        }
+    }
+
+    @Test
+    @DisplayName("Test that a client receives results over a Unix domain socket, even if a stale socket file exists")
+    void testUnixSocket(@TempDir Path directory) throws Exception {
+        final UnixDomainSocketAddress address = UnixDomainSocketAddress.of(directory.resolve("ocr.sock"));
+        Files.createFile(address.getPath());
+        try (OcrServer server = new OcrServer(address, StandInProcessor::new)) {
+            server.start();
+            assertRoundTrip(new RemoteOcrProcessor(address));
+        }
+    }
+
+    @Test
+    @DisplayName("Test that a client reports a missing server as a result, then reconnects once it's back")
+    void testReconnect() throws Exception {
+        final SocketAddress address;
+        try (OcrServer server = new OcrServer(LOOPBACK, StandInProcessor::new)) {
+            address = server.getAddress();
+        }
+        assertFalse(RemoteOcrProcessor.isServerRunning(address));
+        final RemoteOcrProcessor processor = new RemoteOcrProcessor(address);
+        final CompletableFuture<String> failed = new CompletableFuture<>();
+        processor.submitRequest(new OcrProcessor.Request(testImage(BufferedImage.TYPE_INT_RGB), Locale.US),
+                result -> failed.complete(result.ocrText()));
+        assertEquals("OCR server is unavailable!", failed.get(5, TimeUnit.SECONDS));
+
+        try (OcrServer server = new OcrServer(address, StandInProcessor::new)) {
+            server.start();
+            assertRoundTrip(processor);
+        }
+    }
+
+    @Test
+    @DisplayName("Test that a server which accepts connections but never answers is reported as not running")
+    void testConnectTimeout() throws Exception {
+        try (ServerSocketChannel silent = ServerSocketChannel.open()) {
+            silent.bind(LOOPBACK);
+            final long start = System.nanoTime();
+            assertFalse(RemoteOcrProcessor.isServerRunning(silent.getLocalAddress()));
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        }
+    }
+
+    @Test
+    @DisplayName("Test that a client with a fallback recognizes images locally while the server is missing")
+    void testFallback() throws Exception {
+        final SocketAddress address;
+        try (OcrServer server = new OcrServer(LOOPBACK, StandInProcessor::new)) {
+            address = server.getAddress();
+        }
+        final RemoteOcrProcessor processor = new RemoteOcrProcessor(address, StandInProcessor::new);
+        assertRoundTrip(processor);
+        // Known to be unavailable now, so the next request goes straight to the fallback
+        assertRoundTrip(processor);
+    }
+
+    @Test
+    @DisplayName("Test that errors reach the client with their reason, and cancelling stops the request on the server")
+    void testErrorAndCancel() throws Exception {
+        final CompletableFuture<CompletableFuture<OcrProcessor.Result>> served = new CompletableFuture<>();
+        try (OcrServer server = new OcrServer(LOOPBACK, () -> (request, partialConsumer, timeout) -> {
+            if (request.locale().equals(Locale.US)) return CompletableFuture.failedFuture(new OcrException(
+                    OcrException.Reason.LANGUAGE_UNAVAILABLE, "No language data is available for OCR!"));
+            // Never completes by itself
+            final CompletableFuture<OcrProcessor.Result> future = new CompletableFuture<>();
+            served.complete(future);
+            return future;
+        })) {
+            server.start();
+            final RemoteOcrProcessor processor = new RemoteOcrProcessor(server.getAddress());
+            final ExecutionException error = assertThrows(ExecutionException.class, () -> processor.submit(
+                    new OcrProcessor.Request(testImage(BufferedImage.TYPE_INT_RGB), Locale.US), null)
+                    .get(5, TimeUnit.SECONDS));
+            final OcrException cause = assertInstanceOf(OcrException.class, error.getCause());
+            assertEquals(OcrException.Reason.LANGUAGE_UNAVAILABLE, cause.getReason());
+            assertEquals("No language data is available for OCR!", cause.getMessage());
+
+            final CompletableFuture<OcrProcessor.Result> slow = processor.submit(
+                    new OcrProcessor.Request(testImage(BufferedImage.TYPE_INT_RGB), Locale.UK), Duration.ofMillis(200));
+            final CompletableFuture<OcrProcessor.Result> onServer = served.get(5, TimeUnit.SECONDS);
+            assertInstanceOf(TimeoutException.class,
+                    assertThrows(ExecutionException.class, () -> slow.get(5, TimeUnit.SECONDS)).getCause());
+            assertThrows(CancellationException.class, () -> onServer.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    /** Submits an image, checking its partial results add up to its final result */
+    static void assertRoundTrip(RemoteOcrProcessor processor) throws Exception {
+        final List<String> partials = new CopyOnWriteArrayList<>();
+        final CompletableFuture<String> result = new CompletableFuture<>();
+        processor.submitRequest(new OcrProcessor.Request(testImage(BufferedImage.TYPE_INT_RGB), Locale.US),
+                partial -> partials.add(partial.ocrText()), response -> result.complete(response.ocrText()));
+        assertEquals("300x200 en-US Accurate", result.get(5, TimeUnit.SECONDS));
+        assertEquals(String.join("", partials), result.get());
+    }
+}
@@ -0,0 +1,268 @@
+package org.threethan.universalreader.ocr;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OcrTilerTest {
+    static final int LINE_HEIGHT = 40;
+
+    /** Draws lines of text in one or more columns */
+    static BufferedImage page(int width, int lines, int columns) {
+        final BufferedImage image = new BufferedImage(width, lines * LINE_HEIGHT + 80, BufferedImage.TYPE_BYTE_GRAY);
+        final Graphics2D g = image.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, image.getWidth(), image.getHeight());
+        g.setColor(Color.BLACK);
+        g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 28));
+        final int columnWidth = width / columns;
+        for (int c = 0; c < columns; c++)
+            for (int i = 0; i < lines; i++)
+                g.drawString("Line " + i + " of the quick brown fox", c * columnWidth + 40, 60 + i * LINE_HEIGHT);
+        g.dispose();
+        return image;
+    }
+
+    @Test
+    @DisplayName("Test that bands are cut at blank rows, never through a line")
+    void testBandsCutBetweenLines() {
+        final BufferedImage image = page(1200, 60, 1);
+        final List<OcrTiler.Tile> tiles = OcrTiler.split(image, 4);
+        assertTrue(tiles.size() >= 3);
+        int expectedY = 0;
+        for (OcrTiler.Tile tile : tiles) {
+            assertEquals(0, tile.column());
+            assertFalse(tile.overlapsPrevious());
+            assertEquals(expectedY, tile.bounds().y);
+            expectedY = tile.bounds().y + tile.bounds().height;
+            // The row at each cut must be blank
+            if (expectedY < image.getHeight()) {
+                for (int x = 0; x < image.getWidth(); x++)
+                    assertEquals(0xFF, image.getRaster().getSample(x, expectedY, 0));
+            }
+        }
+        assertEquals(image.getHeight(), expectedY);
+    }
+
+    @Test
+    @DisplayName("Test that columns are split at gutters and ordered column by column")
+    void testColumns() {
+        final BufferedImage image = page(1800, 30, 2);
+        final List<OcrTiler.Tile> tiles = OcrTiler.split(image, 2);
+        assertEquals(0, tiles.get(0).column());
+        assertEquals(1, tiles.get(tiles.size() - 1).column());
+        for (int i = 1; i < tiles.size(); i++)
+            assertTrue(tiles.get(i).column() >= tiles.get(i - 1).column());
+        assertTrue(tiles.stream().filter(t -> t.column() == 0).allMatch(t -> t.bounds().x == 0));
+    }
+
+    @Test
+    @DisplayName("Test that bands overlap where there is no blank row to cut at")
+    void testOverlap() {
+        final BufferedImage image = page(1200, 60, 1);
+        final Graphics2D g = image.createGraphics();
+        g.setColor(Color.GRAY);
+        g.fillRect(10, 0, 4, image.getHeight()); // A border running the full height
+        g.dispose();
+        final List<OcrTiler.Tile> tiles = OcrTiler.split(image, 4);
+        assertTrue(tiles.size() > 1);
+        for (int i = 1; i < tiles.size(); i++) {
+            final Rectangle above = tiles.get(i - 1).bounds();
+            assertTrue(tiles.get(i).overlapsPrevious());
+            assertTrue(tiles.get(i).bounds().y < above.y + above.height);
+        }
+    }
+
+    @Test
+    @DisplayName("Test that lines duplicated across overlapping tiles are removed when stitching")
+    void testStitch() {
+        final Rectangle r = new Rectangle();
+        final List<OcrTiler.Tile> tiles = List.of(
+                new OcrTiler.Tile(r, 0, false), new OcrTiler.Tile(r, 0, true),
+                new OcrTiler.Tile(r, 0, false), new OcrTiler.Tile(r, 1, false));
+        final String text = OcrTiler.stitch(tiles, List.of("one\ntwo ", "two\nthree", "four", "five"));
+        assertEquals("one\ntwo\nthree\nfour\n\nfive", text);
+    }
+
+    @Test
+    @DisplayName("Test that each line within an overlap is kept from only one band, going by the line boxes")
+    void testStitchOverlapBoxes() {
+        // Bands share rows 68 to 131: "three" & "four" are whole in both, "five" is cut off by the upper band,
+        // and "two" is cut off by the lower band
+        final List<OcrTiler.Tile> tiles = List.of(
+                new OcrTiler.Tile(new Rectangle(0, 0, 400, 132), 0, false),
+                new OcrTiler.Tile(new Rectangle(0, 68, 400, 132), 0, true));
+        final String upper = "one\ntwo\nthree\nfour\nfi";
+        final String lower = "tw\nthree\nfour\nfive\nsix";
+        final String text = OcrTiler.stitch(tiles, List.of(upper, lower), List.of(
+                lineBoxes(upper, 10, 50, 72, 100, 124),
+                lineBoxes(lower, -18, 4, 32, 56, 82)));
+        assertEquals("one\ntwo\nthree\nfour\nfive\nsix", text);
+    }
+
+    /** Creates boxes for each line of some text, given the top of each, where each line is 20 pixels tall */
+    private static WordBoxes lineBoxes(String text, int... tops) {
+        final WordBoxes.Builder boxes = new WordBoxes.Builder();
+        final String[] lines = text.split("\n");
+        int start = 0;
+        for (int i = 0; i < lines.length; i++) {
+            // Lines touching the top or bottom of a band are cut off by it
+            final int top = Math.max(0, tops[i]);
+            final int bottom = Math.min(132, tops[i] + 20);
+            boxes.addLine(new Rectangle(10, top, 200, bottom - top), start, start + lines[i].length());
+            start += lines[i].length() + 1;
+        }
+        return boxes.build();
+    }
+
+    @Test
+    @DisplayName("Test that small images are recognized with a single call, and large ones in order")
+    void testRecognize() throws Exception {
+        final OcrTiler tiler = new OcrTiler(4);
+        final AtomicInteger calls = new AtomicInteger();
+        final BufferedImage small = page(600, 5, 1);
+        assertEquals("whole", tiler.recognize(small, (tile, partials) -> {
+            calls.incrementAndGet();
+            assertSame(small, tile);
+            return "whole";
+        }));
+        assertEquals(1, calls.get());
+
+        tiler.setMinTiledArea(0);
+        final BufferedImage large = page(1200, 60, 1);
+        final List<OcrTiler.Tile> tiles = OcrTiler.split(large, 4);
+        final String text = tiler.recognize(large, (tile, partials) -> {
+            for (int i = 0; i < tiles.size(); i++)
+                if (tiles.get(i).bounds().height == tile.getHeight()
+                        && tile.getRaster().getSampleModelTranslateY() == -tiles.get(i).bounds().y)
+                    return "tile " + i;
+            return "?";
+        });
+        final StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < tiles.size(); i++) expected.append(i == 0 ? "" : "\n").append("tile ").append(i);
+        assertEquals(expected.toString(), text);
+    }
+
+    @Test
+    @DisplayName("Test that word boxes of each tile are moved to their place in the whole image and text")
+    void testBoxes() throws Exception {
+        final OcrTiler tiler = new OcrTiler(4);
+        tiler.setMinTiledArea(0);
+        final BufferedImage large = page(1200, 60, 1);
+        final OcrTiler.Layout layout = tiler.recognize(large, null, new OcrTiler.Recognizer() {
+            @Override
+            public String recognize(BufferedImage tile, Consumer<String> partialConsumer) {
+                throw new AssertionError("Boxes should be requested");
+            }
+
+            @Override
+            public String recognize(BufferedImage tile, Consumer<String> partialConsumer,
+                                    WordBoxes.Builder boxes) {
+                final String word = "y" + -tile.getRaster().getSampleModelTranslateY();
+                boxes.addWord(new Rectangle(1, 2, 3, 4), 50, 1, 1 + word.length());
+                boxes.addLine(new Rectangle(1, 2, 3, 4), 1, 1 + word.length());
+                return " " + word + " ";
+            }
+        }, partial -> {});
+        final WordBoxes boxes = layout.boxes();
+        assertEquals(layout.tiles().size(), boxes.getWordCount());
+        assertEquals(layout.tiles().size(), boxes.getLineCount());
+        for (int i = 0; i < boxes.getWordCount(); i++) {
+            final Rectangle tile = layout.tiles().get(i).bounds();
+            assertEquals(new Rectangle(tile.x + 1, tile.y + 2, 3, 4), boxes.getWordBounds(i));
+            assertEquals("y" + tile.y, layout.text().substring(boxes.getWordStart(i), boxes.getWordEnd(i)));
+        }
+    }
+
+    @Test
+    @DisplayName("Test that partial text arrives in reading order, even when tiles finish out of order")
+    void testPartials() throws Exception {
+        final OcrTiler tiler = new OcrTiler(4);
+        tiler.setMinTiledArea(0);
+        final BufferedImage large = page(1200, 60, 1);
+        final List<String> partials = new CopyOnWriteArrayList<>();
+        final String text = tiler.recognize(large, (tile, partialConsumer) -> {
+            final int y = -tile.getRaster().getSampleModelTranslateY();
+            // Later tiles finish first
+            Thread.sleep(Math.max(0, 400 - y / 10));
+            return "y" + y;
+        }, partials::add);
+        assertTrue(partials.size() > 1);
+        assertEquals(text, String.join("", partials));
+        assertTrue(partials.get(0).startsWith("y0"));
+    }
+
+    @Test
+    @DisplayName("Test that only tiles which changed since the previous image are recognized again")
+    void testIncremental() throws Exception {
+        final OcrTiler tiler = new OcrTiler(4);
+        tiler.setMinTiledArea(0);
+        final AtomicInteger calls = new AtomicInteger();
+        final OcrTiler.Recognizer recognizer = (tile, partialConsumer) -> {
+            calls.incrementAndGet();
+            final int y = -tile.getRaster().getSampleModelTranslateY();
+            final boolean marked = tile.getRaster().getSample(tile.getWidth() - 100, tile.getHeight() / 2, 0) == 0;
+            return "y" + y + (marked ? "*" : "");
+        };
+        final BufferedImage first = page(1200, 60, 1);
+        final OcrTiler.Layout layout = tiler.recognize(first, null, recognizer, text -> {});
+        assertEquals(layout.tiles().size(), calls.get());
+        assertTrue(calls.get() > 2);
+
+        // Mark the middle of the second tile, away from its edges
+        final BufferedImage second = copy(first);
+        final Rectangle changed = layout.tiles().get(1).bounds();
+        final Graphics2D g = second.createGraphics();
+        g.setColor(Color.BLACK);
+        g.fillRect(changed.x + changed.width - 110, changed.y + changed.height / 2 - 5, 20, 10);
+        g.dispose();
+
+        calls.set(0);
+        final List<String> partials = new CopyOnWriteArrayList<>();
+        final OcrTiler.Layout next = tiler.recognize(second, layout, recognizer, partials::add);
+        assertEquals(1, calls.get());
+        assertEquals(layout.tiles(), next.tiles());
+        assertEquals("y" + changed.y + "*", next.texts().get(1));
+        assertEquals(layout.text().replace("y" + changed.y, "y" + changed.y + "*"), next.text());
+        assertEquals(next.text(), String.join("", partials));
+
+        // Nothing changed at all
+        calls.set(0);
+        assertEquals(next.text(), tiler.recognize(copy(second), next, recognizer, text -> {}).text());
+        assertEquals(0, calls.get());
+    }
+
+    @Test
+    @DisplayName("Test that the previous layout isn't reused if text may cross a cut, or the size changed")
+    void testIncrementalRelayout() throws Exception {
+        final OcrTiler tiler = new OcrTiler(4);
+        tiler.setMinTiledArea(0);
+        final BufferedImage first = page(1200, 60, 1);
+        final OcrTiler.Layout layout = tiler.recognize(first, null, (tile, partialConsumer) -> "text", text -> {});
+
+        final BufferedImage crossing = copy(first);
+        final Graphics2D g = crossing.createGraphics();
+        g.setColor(Color.BLACK);
+        g.fillRect(600, layout.tiles().get(1).bounds().y - 5, 20, 10);
+        g.dispose();
+        assertNull(OcrTiler.dirtyTiles(layout, crossing));
+        assertNull(OcrTiler.dirtyTiles(layout, page(1200, 61, 1)));
+        assertNotNull(OcrTiler.dirtyTiles(layout, copy(first)));
+    }
+
+    private static BufferedImage copy(BufferedImage image) {
+        final BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), image.getType());
+        final Graphics2D g = copy.createGraphics();
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return copy;
+    }
+}
@@ -0,0 +1,69 @@
+package org.threethan.universalreader.ocr;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScriptDetectorTest {
+    private final ScriptDetector detector = new ScriptDetector();
+    private final Predicate<String> installed = Set.of("eng", "deu", "jpn", "rus", "chi_tra")::contains;
+
+    private static ScriptDetector.Detection detection(String script) {
+        return new ScriptDetector.Detection(script, 2.5f, 0);
+    }
+
+    @Test
+    @DisplayName("Test that the preferred language is kept for text in its own script")
+    void testPreferredKept() {
+        assertEquals("deu", detector.chooseLanguage(detection("Latin"), "deu", installed));
+        assertEquals("rus", detector.chooseLanguage(detection("Cyrillic"), "rus", installed));
+        assertEquals("jpn", detector.chooseLanguage(detection("Katakana"), "jpn", installed));
+        // Kanji alone may be Japanese
+        assertEquals("jpn", detector.chooseLanguage(detection("Han"), "jpn", installed));
+    }
+
+    @Test
+    @DisplayName("Test that text in another script uses an installed language of that script, combined with a Latin one")
+    void testOtherScript() {
+        assertEquals("jpn+eng", detector.chooseLanguage(detection("Japanese"), "eng", installed));
+        assertEquals("rus+deu", detector.chooseLanguage(detection("Cyrillic"), "deu", installed));
+        assertEquals("chi_tra+eng", detector.chooseLanguage(detection("Han"), "eng", installed));
+        assertEquals("jpn+eng", detector.chooseLanguage(detection("Japanese"), "rus", installed));
+        assertEquals("eng", detector.chooseLanguage(detection("Latin"), "jpn", installed));
+        assertEquals("jpn", detector.chooseLanguage(detection("Japanese"), "eng", Set.of("jpn")::contains));
+    }
+
+    @Test
+    @DisplayName("Test that the preferred language is kept if detection is unsure, fails or finds no installed language")
+    void testFallback() {
+        assertEquals("eng", detector.chooseLanguage(null, "eng", installed));
+        assertEquals("eng", detector.chooseLanguage(new ScriptDetector.Detection("Japanese", 0.3f, 0), "eng",
+                installed));
+        assertEquals("eng", detector.chooseLanguage(detection("Arabic"), "eng", installed));
+        assertEquals("eng", detector.chooseLanguage(detection("Common"), "eng", installed));
+        assertEquals("rus", detector.chooseLanguage(detection("Latin"), "rus", Set.of("rus")::contains));
+    }
+
+    @Test
+    @DisplayName("Test that large images are shrunk to gray for detection, but never below half size")
+    void testDownscale() {
+        final BufferedImage screen = ScriptDetector.downscale(
+                new BufferedImage(1920, 1080, BufferedImage.TYPE_INT_RGB));
+        assertEquals(BufferedImage.TYPE_BYTE_GRAY, screen.getType());
+        assertEquals(1280, screen.getWidth());
+        assertEquals(720, screen.getHeight());
+        final BufferedImage page = ScriptDetector.downscale(
+                new BufferedImage(5000, 7000, BufferedImage.TYPE_INT_RGB));
+        assertEquals(2500, page.getWidth());
+        assertEquals(3500, page.getHeight());
+        final BufferedImage small = ScriptDetector.downscale(
+                new BufferedImage(300, 200, BufferedImage.TYPE_3BYTE_BGR));
+        assertEquals(300, small.getWidth());
+        assertEquals(200, small.getHeight());
+    }
+}
@@ -0,0 +1,119 @@
+package org.threethan.universalreader.ocr;
+
+import net.sourceforge.tess4j.Tesseract;
+import org.threethan.universalreader.TestImage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TesseractEnginePoolTest {
+    TesseractEnginePool pool;
+    String language;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        pool = TesseractOcrProcessor.getEnginePool();
+        language = new TesseractOcrProcessor().getLanguage(Locale.ENGLISH);
+    }
+
+    @AfterEach
+    void tearDown() {
+        // Nothing to undo if setting up failed
+        if (pool == null) return;
+        if (language != null) pool.setMaxEngines(language, TesseractEnginePool.DEFAULT_MAX_ENGINES);
+        pool.clear();
+    }
+
+    @Test
+    @DisplayName("Test that engines are reused between leases")
+    void testReuse() throws Exception {
+        Tesseract first;
+        try (TesseractEnginePool.Lease lease = pool.acquire(language)) {
+            first = lease.engine();
+            assertEquals(TestImage.QUICK_BROWN_FOX_TEXT,
+                    first.doOCR(TestImage.get(TestImage.QUICK_BROWN_FOX_FILE)).strip());
+        }
+        try (TesseractEnginePool.Lease lease = pool.acquire(language)) {
+            assertSame(first, lease.engine());
+            assertEquals(TestImage.SPHINX_OF_BLACK_TEXT,
+                    lease.engine().doOCR(TestImage.get(TestImage.SPHINX_OF_BLACK_FILE)).strip());
+        }
+    }
+
+    @Test
+    @DisplayName("Test that acquiring blocks once the maximum number of engines are leased")
+    void testMaxEngines() throws Exception {
+        pool.setMaxEngines(language, 1);
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread thread;
+        try (TesseractEnginePool.Lease ignored = pool.acquire(language)) {
+            thread = new Thread(() -> {
+                try (TesseractEnginePool.Lease ignored2 = pool.acquire(language)) {
+                    acquired.countDown();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            thread.start();
+            assertFalse(acquired.await(500, TimeUnit.MILLISECONDS));
+        }
+        assertTrue(acquired.await(10, TimeUnit.SECONDS));
+        thread.join();
+        assertEquals(1, pool.getEngineCount(language));
+    }
+
+    @Test
+    @DisplayName("Test that variables set during a lease do not leak into the next one")
+    void testVariableReset() throws Exception {
+        try (TesseractEnginePool.Lease lease = pool.acquire(language)) {
+            lease.engine().setVariable("tessedit_char_whitelist", "0123456789");
+            assertNotEquals(TestImage.QUICK_BROWN_FOX_TEXT,
+                    lease.engine().doOCR(TestImage.get(TestImage.QUICK_BROWN_FOX_FILE)).strip());
+        }
+        try (TesseractEnginePool.Lease lease = pool.acquire(language)) {
+            assertEquals(TestImage.QUICK_BROWN_FOX_TEXT,
+                    lease.engine().doOCR(TestImage.get(TestImage.QUICK_BROWN_FOX_FILE)).strip());
+        }
+    }
+
+    @Test
+    @DisplayName("Test that each profile has its own engines, and switching between profiles reuses them")
+    void testProfiles() throws Exception {
+        final String fastLanguage = new TesseractOcrProcessor().getLanguage(Locale.ENGLISH, OcrProfile.FAST);
+        Tesseract accurate, fast;
+        try (TesseractEnginePool.Lease lease = pool.acquire(OcrProfile.ACCURATE, language)) {
+            accurate = lease.engine();
+        }
+        try (TesseractEnginePool.Lease lease = pool.acquire(OcrProfile.FAST, fastLanguage)) {
+            fast = lease.engine();
+            assertNotSame(accurate, fast);
+            assertEquals(TestImage.QUICK_BROWN_FOX_TEXT,
+                    fast.doOCR(TestImage.get(TestImage.QUICK_BROWN_FOX_FILE)).strip());
+        }
+        try (TesseractEnginePool.Lease lease = pool.acquire(OcrProfile.ACCURATE, language)) {
+            assertSame(accurate, lease.engine());
+        }
+        try (TesseractEnginePool.Lease lease = pool.acquire(OcrProfile.FAST, fastLanguage)) {
+            assertSame(fast, lease.engine());
+        }
+        assertEquals(1, pool.getEngineCount(OcrProfile.FAST, fastLanguage));
+        assertEquals(1, pool.getEngineCount(OcrProfile.ACCURATE, language));
+    }
+
+    @Test
+    @DisplayName("Test that idle engines are disposed of")
+    void testClear() throws Exception {
+        try (TesseractEnginePool.Lease ignored = pool.acquire(language)) {
+            assertTrue(pool.getEngineCount(language) >= 1);
+        }
+        pool.clear();
+        assertEquals(0, pool.getEngineCount(language));
+    }
+}
@@ -5,9 +5,14 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.Locale;
+import java.util.Set;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -55,6 +60,8 @@ class TesseractOcrProcessorTest {
     @DisplayName("Test Multiple Concurrent Images")
     void testMultiple() throws InterruptedException {
         latch = new CountDownLatch(2);
+        // Each processor only delivers its latest request, so use one per image (as separate windows would)
+        TesseractOcrProcessor otherOcrProcessor = new TesseractOcrProcessor();
 
         BufferedImage image1 = TestImage.get(TestImage.QUICK_BROWN_FOX_FILE);
         OcrProcessor.Request request1 = new OcrProcessor.Request(image1, Locale.ENGLISH);
@@ -67,7 +74,7 @@ class TesseractOcrProcessorTest {
         BufferedImage image2 = TestImage.get(TestImage.SPHINX_OF_BLACK_FILE);
         OcrProcessor.Request request2 = new OcrProcessor.Request(image2, Locale.ENGLISH);
         AtomicReference<OcrProcessor.Result> result2 = new AtomicReference<>();
-        ocrProcessor.submitRequest(request2, r -> {
+        otherOcrProcessor.submitRequest(request2, r -> {
             result2.set(r);
             latch.countDown();
         });
@@ -80,4 +87,85 @@ class TesseractOcrProcessorTest {
         assertEquals(TestImage.QUICK_BROWN_FOX_TEXT, result1.get().ocrText());
         assertEquals(TestImage.SPHINX_OF_BLACK_TEXT, result2.get().ocrText());
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Test that only the newest request of a processor delivers a result")
+    void testLatestWins() throws InterruptedException {
+        AtomicInteger deliveries = new AtomicInteger();
+        AtomicReference<OcrProcessor.Result> result = new AtomicReference<>();
+        for (int i = 0; i < 4; i++) {
+            final String file = i < 3 ? TestImage.QUICK_BROWN_FOX_FILE : TestImage.SPHINX_OF_BLACK_FILE;
+            ocrProcessor.submitRequest(new OcrProcessor.Request(TestImage.get(file), Locale.ENGLISH), r -> {
+                deliveries.incrementAndGet();
+                result.set(r);
+                latch.countDown();
+            });
+        }
+        latch.await();
+        // Give any stale requests which were already running a chance to (incorrectly) deliver
+        Thread.sleep(2000);
+        assertEquals(1, deliveries.get());
+        assertEquals(TestImage.SPHINX_OF_BLACK_TEXT, result.get().ocrText());
+    }
+
+    @Test
+    @DisplayName("Test that partial results join together to form the final result")
+    void testStreaming() throws InterruptedException {
+        // Cached results are only delivered as a final result
+        TesseractOcrProcessor.getResultCache().clear();
+        StringBuffer partials = new StringBuffer();
+        AtomicInteger partialCount = new AtomicInteger();
+        AtomicReference<OcrProcessor.Result> result = new AtomicReference<>();
+        OcrProcessor.Request request = new OcrProcessor.Request(TestImage.get(TestImage.SPHINX_OF_BLACK_FILE), Locale.ENGLISH);
+        ocrProcessor.submitRequest(request, partial -> {
+            partials.append(partial.ocrText());
+            partialCount.incrementAndGet();
+        }, r -> {
+            result.set(r);
+            latch.countDown();
+        });
+        latch.await();
+        assertTrue(partialCount.get() > 0);
+        assertEquals(TestImage.SPHINX_OF_BLACK_TEXT, result.get().ocrText());
+        assertEquals(result.get().ocrText(), partials.toString());
+    }
+
+    @Test
+    @DisplayName("Test that 1x, 2x and 3x versions of the same text are recognized, and scaled to their x-height")
+    void testScale() throws Exception {
+        final Set<ImagePreprocessor.Step> unscaled = EnumSet.of(ImagePreprocessor.Step.GRAYSCALE,
+                ImagePreprocessor.Step.CROP_BORDERS);
+        final Set<ImagePreprocessor.Step> scaled = EnumSet.copyOf(unscaled);
+        scaled.add(ImagePreprocessor.Step.NORMALIZE_SCALE);
+        TesseractOcrProcessor.getResultCache().clear();
+        for (int scale = 1; scale <= 3; scale++) {
+            final BufferedImage image = ImagePreprocessorTest.scaledText(scale);
+            // Text already within the range the engine reads well is left alone, and other text is scaled to the target
+            final double xHeight = ImagePreprocessor.estimateXHeight(image);
+            final double expectedFactor = xHeight >= ImagePreprocessor.MIN_X_HEIGHT
+                    && xHeight <= ImagePreprocessor.MAX_X_HEIGHT ? 1 : ImagePreprocessor.TARGET_X_HEIGHT / xHeight;
+            final Rectangle original = ImagePreprocessor.of(scaled).process(image).mapping()
+                    .toOriginal(new Rectangle(0, 0, 1000, 1000));
+            final double factor = 1000.0 / original.width;
+            // Cropping may change the estimate slightly
+            assertEquals(expectedFactor, factor, expectedFactor * 0.05, "scale " + scale);
+            // High-DPI text is shrunk rather than recognized at full size
+            if (scale == 3) assertTrue(factor < 1, "factor " + factor);
+            for (Set<ImagePreprocessor.Step> steps : List.of(unscaled, scaled)) {
+                final OcrProcessor.Result result = ocrProcessor.submit(new OcrProcessor.Request(image, Locale.ENGLISH,
+                        steps, OcrProfile.DEFAULT), null).get();
+                assertTrue(result.ocrText().contains("Sphinx of black quartz, judge my vow"), result.ocrText());
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Test that warming up leaves an initialized engine ready in the pool")
+    void testWarmUp() throws InterruptedException {
+        ocrProcessor.warmUp(Locale.ENGLISH, OcrProfile.DEFAULT);
+        final long deadline = System.currentTimeMillis() + 30_000;
+        while (TesseractOcrProcessor.getEnginePool().getEngineCount("eng") == 0
+                && System.currentTimeMillis() < deadline) Thread.sleep(50);
+        assertTrue(TesseractOcrProcessor.getEnginePool().getEngineCount("eng") > 0);
+    }
+}
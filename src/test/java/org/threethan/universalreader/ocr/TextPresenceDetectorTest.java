@@ -0,0 +1,105 @@
+package org.threethan.universalreader.ocr;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.threethan.universalreader.TestImage;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TextPresenceDetectorTest {
+    private final TextPresenceDetector detector = new TextPresenceDetector();
+
+    /** Draws a few lines of text in the given colors and size */
+    static BufferedImage text(int width, int height, int type, Color background, Color foreground, int size) {
+        final BufferedImage image = new BufferedImage(width, height, type);
+        final Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setColor(background);
+        g.fillRect(0, 0, width, height);
+        g.setColor(foreground);
+        g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, size));
+        for (int y = size + 10; y < height; y += size * 3 / 2)
+            g.drawString("Sphinx of black quartz, judge my vow", 10, y);
+        g.dispose();
+        return image;
+    }
+
+    @Test
+    @DisplayName("Test that images of text are detected, in any size, polarity and image type")
+    void testText() {
+        assertTrue(detector.mayContainText(TestImage.get(TestImage.QUICK_BROWN_FOX_FILE)));
+        assertTrue(detector.mayContainText(TestImage.get(TestImage.SPHINX_OF_BLACK_FILE)));
+        for (int type : new int[]{BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_BYTE_GRAY,
+                BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_INT_ARGB}) {
+            for (int size : new int[]{11, 16, 48}) {
+                assertTrue(detector.mayContainText(text(600, 200, type, Color.WHITE, Color.BLACK, size)),
+                        "Dark text of size " + size + " in image type " + type);
+                assertTrue(detector.mayContainText(text(600, 200, type, new Color(30, 30, 40), Color.LIGHT_GRAY, size)),
+                        "Light text of size " + size + " in image type " + type);
+            }
+        }
+        // A single small line in an otherwise empty full screenshot
+        final BufferedImage screen = new BufferedImage(1920, 1080, BufferedImage.TYPE_INT_RGB);
+        final Graphics2D g = screen.createGraphics();
+        g.setColor(new Color(0xE8F0FF));
+        g.fillRect(0, 0, 1920, 1080);
+        g.setColor(new Color(0x203060));
+        g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 14));
+        g.drawString("Saved 3 files to Documents", 800, 700);
+        g.dispose();
+        assertTrue(detector.mayContainText(screen));
+    }
+
+    @Test
+    @DisplayName("Test that photos, blank images, gradients and shapes are skipped")
+    void testNoText() {
+        assertFalse(detector.mayContainText(TestImage.get("baboon.png")));
+        assertFalse(detector.mayContainText(TestImage.get("fruits.png")));
+        assertFalse(detector.mayContainText(TestImage.get("white256.png")));
+
+        final BufferedImage image = new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB);
+        final Graphics2D g = image.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, Color.BLUE, 800, 600, Color.ORANGE));
+        g.fillRect(0, 0, 800, 600);
+        g.setColor(Color.WHITE);
+        g.fillOval(100, 100, 300, 300);
+        g.setColor(Color.BLACK);
+        g.fillRect(500, 200, 200, 120);
+        g.dispose();
+        assertFalse(detector.mayContainText(image));
+
+        final Random random = new Random(1);
+        final BufferedImage noise = new BufferedImage(800, 600, BufferedImage.TYPE_BYTE_GRAY);
+        for (int y = 0; y < noise.getHeight(); y++)
+            for (int x = 0; x < noise.getWidth(); x++)
+                noise.getRaster().setSample(x, y, 0, random.nextInt(256));
+        assertFalse(detector.mayContainText(noise));
+    }
+
+    @Test
+    @DisplayName("Test that every image is assumed to contain text when detection is disabled")
+    void testDisabled() {
+        detector.setEnabled(false);
+        assertTrue(detector.mayContainText(TestImage.get("baboon.png")));
+    }
+
+    /** Draws a photo stretched over a full 1080p screenshot, without any text */
+    static BufferedImage photoScreenshot() {
+        final BufferedImage photo = TestImage.get("fruits.png");
+        final BufferedImage screen = new BufferedImage(1920, 1080, BufferedImage.TYPE_3BYTE_BGR);
+        final Graphics2D g = screen.createGraphics();
+        g.drawImage(photo, 0, 0, 1920, 1080, null);
+        g.dispose();
+        return screen;
+    }
+
+    @Test
+    @DisplayName("Test that a full screenshot of a photo is skipped")
+    void testPhotoScreenshot() {
+        assertFalse(detector.mayContainText(photoScreenshot()));
+    }
+}
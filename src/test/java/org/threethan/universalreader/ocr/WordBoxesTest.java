@@ -0,0 +1,84 @@
+package org.threethan.universalreader.ocr;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WordBoxesTest {
+    /** Boxes for "one two\nthree", with each word 10 pixels wide and each line 10 pixels tall */
+    private static WordBoxes sample() {
+        final WordBoxes.Builder builder = new WordBoxes.Builder();
+        builder.addWord(new Rectangle(0, 0, 10, 10), 90, 0, 3);
+        builder.addWord(new Rectangle(20, 0, 10, 10), 80, 4, 7);
+        builder.addLine(new Rectangle(0, 0, 30, 10), 0, 7);
+        builder.addWord(new Rectangle(0, 20, 10, 10), 70, 8, 13);
+        builder.addLine(new Rectangle(0, 20, 10, 10), 8, 13);
+        return builder.build();
+    }
+
+    @Test
+    @DisplayName("Test that words are found by their position in the text")
+    void testFindWord() {
+        final WordBoxes boxes = sample();
+        assertEquals(3, boxes.getWordCount());
+        assertEquals(2, boxes.getLineCount());
+        assertEquals(0, boxes.findWord(0));
+        assertEquals(0, boxes.findWord(2));
+        assertEquals(-1, boxes.findWord(3));
+        assertEquals(1, boxes.findWord(4));
+        assertEquals(2, boxes.findWord(12));
+        assertEquals(-1, boxes.findWord(13));
+        assertEquals(80, boxes.getConfidence(1));
+    }
+
+    @Test
+    @DisplayName("Test that the bounds of a range of text cover all words it overlaps")
+    void testBounds() {
+        final WordBoxes boxes = sample();
+        assertEquals(new Rectangle(0, 0, 30, 10), boxes.getBounds(0, 7));
+        assertEquals(new Rectangle(0, 0, 30, 30), boxes.getBounds(5, 9));
+        assertNull(boxes.getBounds(3, 4));
+        assertNull(WordBoxes.EMPTY.getBounds(0, 10));
+    }
+
+    @Test
+    @DisplayName("Test that appended boxes are moved, and those outside the kept text are dropped")
+    void testAppend() {
+        final WordBoxes.Builder builder = new WordBoxes.Builder();
+        builder.append(sample(), 100, 50, 8, 13, 2);
+        final WordBoxes boxes = builder.build();
+        assertEquals(1, boxes.getWordCount());
+        assertEquals(1, boxes.getLineCount());
+        assertEquals(new Rectangle(100, 70, 10, 10), boxes.getWordBounds(0));
+        assertEquals(2, boxes.getWordStart(0));
+        assertEquals(7, boxes.getWordEnd(0));
+        assertEquals(2, boxes.getLineStart(0));
+        assertSame(WordBoxes.EMPTY, new WordBoxes.Builder().build());
+    }
+
+    @Test
+    @DisplayName("Test that the builder grows to hold many words")
+    void testGrowth() {
+        final WordBoxes.Builder builder = new WordBoxes.Builder();
+        for (int i = 0; i < 1000; i++) builder.addWord(new Rectangle(i, i, 5, 5), i % 100, i * 2, i * 2 + 1);
+        final WordBoxes boxes = builder.build();
+        assertEquals(1000, boxes.getWordCount());
+        assertEquals(new Rectangle(999, 999, 5, 5), boxes.getWordBounds(999));
+        assertEquals(777, boxes.findWord(1554));
+    }
+
+    @Test
+    @DisplayName("Test that boxes are mapped back through preprocessing")
+    void testMap() {
+        final ImagePreprocessor.Mapping mapping = new ImagePreprocessor.Mapping();
+        mapping.crop(10, 10);
+        mapping.scale(2);
+        final WordBoxes mapped = sample().map(mapping);
+        assertEquals(new Rectangle(10, 10, 5, 5), mapped.getWordBounds(0));
+        assertEquals(new Rectangle(10, 20, 5, 5), mapped.getLineBounds(1));
+        assertEquals(sample().getWordEnd(2), mapped.getWordEnd(2));
+    }
+}